@@ -0,0 +1,80 @@
+package com.jasonrharris.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jasonrharris.orders.Order;
+import com.jasonrharris.orders.OrderItem;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialises and deserialises Orders and Products as the controllers do, using an ObjectMapper built the way Spring Boot builds its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonMappingBenchmark {
+    @Param({"1", "10", "100"})
+    private int orderItems;
+
+    private ObjectWriter orderWriter;
+    private ObjectReader orderReader;
+    private ObjectWriter productWriter;
+    private ObjectReader productReader;
+    private Order order;
+    private Product product;
+    private byte[] orderJson;
+    private byte[] productJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        orderWriter = objectMapper.writerFor(Order.class);
+        orderReader = objectMapper.readerFor(Order.class);
+        productWriter = objectMapper.writerFor(Product.class);
+        productReader = objectMapper.readerFor(Product.class);
+
+        Product unpricedProduct = new Product(1L, "Nike Revolution", null);
+        product = new Product(1L, "Nike Revolution", Price.createPrice(unpricedProduct, "47.95", "GBP"));
+        order = new Order(1L, LocalDateTime.now(), "benchmark@buyer.com", new HashSet<>());
+        for (int i = 0; i < orderItems; i++) {
+            Product itemProduct = new Product(i + 1, "Product " + i, null);
+            order.getOrderItems().add(new OrderItem(i + 1, Price.createPrice(itemProduct, "19.99", "GBP"), itemProduct, 1 + i % 5, order));
+        }
+        order.updateTotalAmount();
+
+        orderJson = orderWriter.writeValueAsBytes(order);
+        productJson = productWriter.writeValueAsBytes(product);
+    }
+
+    @Benchmark
+    public byte[] serialiseOrder() throws IOException {
+        return orderWriter.writeValueAsBytes(order);
+    }
+
+    @Benchmark
+    public Order deserialiseOrder() throws IOException {
+        return orderReader.readValue(orderJson);
+    }
+
+    @Benchmark
+    public byte[] serialiseProduct() throws IOException {
+        return productWriter.writeValueAsBytes(product);
+    }
+
+    @Benchmark
+    public Product deserialiseProduct() throws IOException {
+        return productReader.readValue(productJson);
+    }
+}
@@ -0,0 +1,38 @@
+package com.jasonrharris.converters;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The converter runs for every LocalDateTime column of every row read or written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalDateTimeConverterBenchmark {
+    private final LocalDateTimeConverter converter = new LocalDateTimeConverter();
+    private LocalDateTime localDateTime;
+    private Date date;
+
+    @Setup
+    public void setUp() {
+        localDateTime = LocalDateTime.of(2019, 9, 17, 18, 47, 52, 690_000_000);
+        date = converter.convertToDatabaseColumn(localDateTime);
+    }
+
+    @Benchmark
+    public Date convertToDatabaseColumn() {
+        return converter.convertToDatabaseColumn(localDateTime);
+    }
+
+    @Benchmark
+    public LocalDateTime convertToEntityAttribute() {
+        return converter.convertToEntityAttribute(date);
+    }
+}
@@ -0,0 +1,83 @@
+package com.jasonrharris.orders;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Currency;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a segment of a year of archived Orders, three items each, straight from its mapped columns: totalling a month's revenue,
+ * as the sales report does, and finding one buyer's Orders, as a buyer's page of Orders does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderArchiveBenchmark {
+    private static final LocalDateTime FROM = LocalDateTime.of(2018, 1, 1, 0, 0);
+    private static final LocalDateTime UNTIL = LocalDateTime.of(2019, 1, 1, 0, 0);
+    private static final Currency GBP = Currency.getInstance("GBP");
+
+    @Param({"1000000"})
+    private int orders;
+
+    private Path directory;
+    private OrderArchiveSegment segment;
+    private long monthFromEpochMicros;
+    private long monthUntilEpochMicros;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        OrderArchiveSegment.Builder columns = new OrderArchiveSegment.Builder();
+        long secondsPerOrder = (UNTIL.toLocalDate().toEpochDay() - FROM.toLocalDate().toEpochDay()) * 24 * 60 * 60 / orders;
+        long itemId = 1;
+        for (int order = 0; order < orders; order++) {
+            columns.addOrder(order + 1, FROM.plusSeconds(order * secondsPerOrder), "buyer" + random.nextInt(50_000) + "@customer.com");
+            for (int item = 0; item < 3; item++) {
+                int product = random.nextInt(1000);
+                columns.addItem(itemId++, product + 1, product + 1, 100 + product, 1 + random.nextInt(3), GBP);
+            }
+        }
+        directory = Files.createTempDirectory("order-archive-benchmark");
+        segment = OrderArchiveSegment.write(directory.resolve("orders.segment"), FROM, UNTIL, columns);
+        monthFromEpochMicros = OrderArchiveSegment.toEpochMicros(LocalDateTime.of(2018, 6, 1, 0, 0));
+        monthUntilEpochMicros = OrderArchiveSegment.toEpochMicros(LocalDateTime.of(2018, 7, 1, 0, 0));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(segment.path());
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long monthsRevenue() {
+        long revenue = 0;
+        for (int order = segment.firstOrderFrom(monthFromEpochMicros); order < segment.orderCount() && segment.creationEpochMicros(order) < monthUntilEpochMicros; order++) {
+            for (int item = segment.itemStart(order); item < segment.itemEnd(order); item++) {
+                revenue += segment.priceMinorUnits(item) * segment.quantity(item);
+            }
+        }
+        return revenue;
+    }
+
+    @Benchmark
+    public int buyersOrders() {
+        boolean[] buyerCodes = segment.buyerCodesOf("buyer123@customer.com");
+        int found = 0;
+        for (int order = 0; order < segment.orderCount(); order++) {
+            if (buyerCodes[segment.buyerCode(order)]) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,78 @@
+package com.jasonrharris.orders;
+
+import com.jasonrharris.converters.MoneyListConverter;
+import com.jasonrharris.products.Money;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Order totals are calculated from every item when an Order is written, and each item multiplies its Price by its quantity. Loading an
+ * Order only reads the totals stored with it. Run with `-prof gc` to see the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderTotalBenchmark {
+    private static final String[] CURRENCIES = {"GBP", "EUR", "USD"};
+
+    @Param({"1", "10", "100", "1000"})
+    private int items;
+
+    @Param({"1", "3"})
+    private int currencies;
+
+    private Order order;
+    private OrderItem orderItem;
+    private MoneyListConverter totalsConverter;
+    private String storedTotals;
+
+    @Setup
+    public void setUp() {
+        order = new Order(1L, LocalDateTime.now(), "benchmark@buyer.com", new HashSet<>());
+        for (int i = 0; i < items; i++) {
+            Product product = new Product(i + 1, "Product " + i, null);
+            order.getOrderItems().add(new OrderItem(i + 1, Price.createPrice(product, "19.99", CURRENCIES[i % currencies]), product, 1 + i % 5, order));
+        }
+        orderItem = order.getOrderItems().iterator().next();
+        order.updateTotalAmount();
+        totalsConverter = new MoneyListConverter();
+        storedTotals = totalsConverter.convertToDatabaseColumn(order.getTotals());
+    }
+
+    @Benchmark
+    public BigDecimal updateTotalAmount() {
+        order.updateTotalAmount();
+        return order.getTotalAmount();
+    }
+
+    @Benchmark
+    public BigDecimal loadStoredTotals() {
+        List<Money> totals = totalsConverter.convertToEntityAttribute(storedTotals);
+        return Order.totalAmountOf(totals);
+    }
+
+    @Benchmark
+    public BigDecimal getTotalAmount() {
+        return order.getTotalAmount();
+    }
+
+    @Benchmark
+    public Money orderItemGetAmount() {
+        return orderItem.getAmount();
+    }
+
+    @Benchmark
+    public long orderItemGetAmountInMinorUnits() {
+        return orderItem.getAmountInMinorUnits();
+    }
+}
@@ -0,0 +1,57 @@
+package com.jasonrharris.products;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prices are compared when sorting a Product's Prices, and unsaved Prices are compared by amount, currency and Product.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceBenchmark {
+    private Price price;
+    private Price higherPrice;
+    private Price otherCurrencyPrice;
+    private Price otherProductPrice;
+    private Price equalPrice;
+
+    @Setup
+    public void setUp() {
+        Product product = new Product(1L, "Nike Revolution", null);
+        price = Price.createPrice(product, "47.95", "GBP");
+        higherPrice = Price.createPrice(product, "49.95", "GBP");
+        otherCurrencyPrice = Price.createPrice(product, "54.95", "EUR");
+        otherProductPrice = Price.createPrice(new Product(2L, "Reebok Club C 85 Vintage", null), "74.95", "GBP");
+        equalPrice = Price.createPrice(new Product(1L, "Nike Revolution", null), "47.95", "GBP");
+    }
+
+    @Benchmark
+    public int compareToSameCurrency() {
+        return price.compareTo(higherPrice);
+    }
+
+    @Benchmark
+    public int compareToOtherCurrency() {
+        return price.compareTo(otherCurrencyPrice);
+    }
+
+    @Benchmark
+    public int compareToOtherProduct() {
+        return price.compareTo(otherProductPrice);
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return price.equals(equalPrice);
+    }
+
+    @Benchmark
+    public boolean equalsNotEqual() {
+        return price.equals(higherPrice);
+    }
+}
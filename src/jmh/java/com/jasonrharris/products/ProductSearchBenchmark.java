@@ -0,0 +1,56 @@
+package com.jasonrharris.products;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches an index of a million Products with made up three word names, sampling each search's time so the percentiles
+ * (including p99) are reported. The names use a vocabulary of a few thousand words, so some prefixes match many Products.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ProductSearchBenchmark {
+    private static final String[] SYLLABLES = {"ka", "ro", "mi", "ne", "tu", "sa", "lo", "vi", "pe", "da", "gor", "lin", "tas", "ber", "qui"};
+
+    @Param({"1000000"})
+    private int products;
+
+    @Param({"k", "kami", "rone kami", "quiqui"})
+    private String query;
+
+    private ProductSearch productSearch;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long[] ids = new long[products];
+        String[] names = new String[products];
+        for (int i = 0; i < products; i++) {
+            ids[i] = i + 1;
+            names[i] = word(random) + " " + word(random) + " " + word(random) + " " + (i % 100);
+        }
+        productSearch = new ProductSearch(null);
+        productSearch.indexAll(ids, names);
+    }
+
+    private static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        int syllables = 2 + random.nextInt(2);
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return word.toString();
+    }
+
+    @Benchmark
+    public List<ProductMatch> search() {
+        return productSearch.search(query, 20);
+    }
+}
@@ -0,0 +1,59 @@
+package com.jasonrharris.reports;
+
+import com.jasonrharris.orders.Order;
+import com.jasonrharris.orders.OrderItem;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds a three line Order to the running sales totals from several threads at once, as concurrent requests do. Nothing is flushed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SalesRollupsBenchmark {
+    @Param({"1", "100"})
+    private int products;
+
+    private SalesRollups salesRollups;
+    private List<List<OrderItem>> orders;
+    private LocalDateTime creationDateTime;
+
+    @Setup
+    public void setUp() {
+        salesRollups = new SalesRollups(null, null, null, Duration.ofSeconds(10));
+        creationDateTime = LocalDateTime.now();
+        orders = new ArrayList<>();
+        Order order = new Order(0L, creationDateTime, "benchmark@buyer.com", new HashSet<>());
+        for (int i = 0; i < products; i++) {
+            List<OrderItem> orderItems = new ArrayList<>();
+            for (int line = 0; line < 3; line++) {
+                Product product = new Product((i + line) % products + 1, "Product " + i, null);
+                orderItems.add(new OrderItem(Price.createPrice(product, "19.99", "GBP"), product, line + 1, order));
+            }
+            orders.add(orderItems);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class NextOrder {
+        private int index;
+    }
+
+    @Benchmark
+    public void orderWritten(NextOrder nextOrder) {
+        salesRollups.orderWritten(creationDateTime, orders.get(nextOrder.index++ % orders.size()));
+    }
+}
@@ -1,12 +1,31 @@
 package com.jasonrharris;
 
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class Application {
 
+    /**
+     * With `--startup.exit-when-started=true` the application stops as soon as it has started, which is how the Docker build lists
+     * the classes loaded on start up for its class data sharing archive.
+     */
     public static void main(String[] args) {
-        SpringApplication.run(Application.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(Application.class, args);
+        if (context.getEnvironment().getProperty("startup.exit-when-started", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * Creating the EntityManagerFactory creates the schema and runs data.sql, so it is created on start up even with lazy
+     * initialization (the fast-start profile), as the services started then read their tables with JDBC.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerEntityManagerFactory() {
+        return (beanName, beanDefinition, beanType) -> "entityManagerFactory".equals(beanName);
     }
 }
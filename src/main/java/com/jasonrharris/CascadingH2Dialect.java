@@ -0,0 +1,26 @@
+package com.jasonrharris;
+
+import org.hibernate.dialect.H2Dialect;
+
+/**
+ * The H2 dialect, dropping tables with CASCADE. H2 1.4.200 drops tables with RESTRICT by default, and Hibernate 5.4.8 neither drops
+ * the foreign keys first nor asks for CASCADE, so the create-drop schema could not be dropped (Product and Price reference each
+ * other) and a file database still held the last run's tables on the next start.
+ */
+public class CascadingH2Dialect extends H2Dialect {
+
+    @Override
+    public boolean supportsIfExistsBeforeTableName() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsIfExistsAfterTableName() {
+        return false;
+    }
+
+    @Override
+    public String getCascadeConstraintsString() {
+        return " cascade";
+    }
+}
@@ -0,0 +1,73 @@
+package com.jasonrharris;
+
+import com.jasonrharris.controllers.ReactiveOrderHandler;
+import com.jasonrharris.controllers.ReactiveProductHandler;
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RequestPredicates.PUT;
+import static org.springframework.web.reactive.function.server.RequestPredicates.path;
+
+/**
+ * The reactive stack, used instead of Spring MVC when the application is started with `spring.main.web-application-type=reactive`
+ * (as the reactive profile does). The product and order endpoints are then served by non-blocking handlers on Netty, under the
+ * same paths, and orders are read from the database through the R2DBC driver for H2, which opens the same database as JDBC.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfig {
+    private static final String JDBC_H2_PREFIX = "jdbc:h2:";
+
+    /**
+     * Tomcat is also on the classpath, for the servlet stack, and would otherwise be used in preference to Netty
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool connectionFactory(@Value("${spring.datasource.url}") String url, @Value("${spring.datasource.username:sa}") String username,
+                                            @Value("${spring.datasource.password:}") String password, @Value("${reactive.r2dbc.pool.max-size:20}") int maxSize) {
+        if (!url.startsWith(JDBC_H2_PREFIX)) {
+            throw new IllegalArgumentException("The reactive stack only supports H2, not " + url);
+        }
+        H2ConnectionFactory h2ConnectionFactory = new H2ConnectionFactory(H2ConnectionConfiguration.builder()
+                .url(url.substring(JDBC_H2_PREFIX.length())).username(username).password(password).build());
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(h2ConnectionFactory).maxSize(maxSize).build());
+    }
+
+    @Bean
+    public DatabaseClient databaseClient(ConnectionPool connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+
+    /**
+     * Spring WebFlux has no context path, so the routes are nested under the servlet stack's instead
+     */
+    @Bean
+    public RouterFunction<ServerResponse> routes(@Value("${server.servlet.context-path:}") String contextPath, ReactiveProductHandler products, ReactiveOrderHandler orders) {
+        RouterFunction<ServerResponse> routes = RouterFunctions.route(GET("/products"), products::getProducts)
+                .andRoute(GET("/products/search"), products::searchProducts)
+                .andRoute(GET("/products/{id}/price"), products::getPriceAt)
+                .andRoute(POST("/products"), products::addProduct)
+                .andRoute(PUT("/products/{id}"), products::updateProduct)
+                .andRoute(GET("/orders"), orders::getOrders)
+                .andRoute(POST("/orders"), orders::addOrder)
+                .andRoute(GET("/orders/{id}/status"), orders::getOrderStatus);
+        return contextPath.isEmpty() ? routes : RouterFunctions.nest(path(contextPath), routes);
+    }
+}
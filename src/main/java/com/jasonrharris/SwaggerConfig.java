@@ -4,6 +4,8 @@ import com.fasterxml.classmate.TypeResolver;
 import com.jasonrharris.controllers.OrderController;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import springfox.documentation.builders.PathSelectors;
@@ -12,7 +14,13 @@ import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
+/**
+ * The Swagger docs, built from every controller on start up. Turned off with `swagger.enabled=false`, as the fast-start profile does,
+ * and left out of the reactive stack, which has no controllers.
+ */
 @Configuration
+@ConditionalOnProperty(name = "swagger.enabled", matchIfMissing = true)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableSwagger2
 public class SwaggerConfig {
     private final TypeResolver resolver;
@@ -1,23 +1,49 @@
 package com.jasonrharris.controllers;
 
-import com.jasonrharris.orders.Order;
-import com.jasonrharris.orders.OrderItem;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jasonrharris.orders.*;
 import com.jasonrharris.products.Price;
-import com.jasonrharris.repositories.OrderItemRepository;
+import com.jasonrharris.products.PriceManagement;
 import com.jasonrharris.repositories.OrderRepository;
-import com.jasonrharris.repositories.PriceRepository;
 import io.swagger.annotations.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.persistence.EntityManager;
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
-import java.util.HashSet;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @SwaggerDefinition(
         info = @Info(
                 description = "Used to create and retrieve Orders",
@@ -29,27 +55,263 @@ import java.util.stream.Collectors;
         schemes = {SwaggerDefinition.Scheme.HTTP}
 )
 public class OrderController {
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    static final String TEXT_CSV_VALUE = "text/csv;charset=UTF-8";
+    private static final int CSV_GZIP_BUFFER_SIZE = 64 * 1024;
+    static final int MAX_PAGE_SIZE = 1000;
+
     private final OrderRepository orderRepository;
-    private final OrderItemRepository orderItemRepository;
-    private final PriceRepository priceRepository;
+    private final PriceManagement priceManagement;
+    private final OrderManagement orderManagement;
+    private final OrderWriter orderWriter;
+    private final OrderRetention orderRetention;
+    private final OrderArchive orderArchive;
+    private final OrderCsvExport orderCsvExport;
+    private final Optional<OrderWriteBehind> orderWriteBehind;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ObjectWriter orderLineWriter;
+    private final ObjectReader orderReader;
 
-    public OrderController(@Autowired OrderRepository orderRepository, @Autowired OrderItemRepository orderItemRepository, @Autowired PriceRepository priceRepository) {
+    public OrderController(@Autowired OrderRepository orderRepository, @Autowired PriceManagement priceManagement, @Autowired OrderManagement orderManagement,
+                           @Autowired OrderWriter orderWriter, @Autowired Optional<OrderWriteBehind> orderWriteBehind, @Autowired EntityManager entityManager, @Autowired TransactionTemplate transactionTemplate,
+                           @Autowired ObjectMapper objectMapper, @Autowired OrderRetention orderRetention, @Autowired OrderArchive orderArchive, @Autowired OrderCsvExport orderCsvExport) {
         this.orderRepository = orderRepository;
-        this.orderItemRepository = orderItemRepository;
-        this.priceRepository = priceRepository;
+        this.priceManagement = priceManagement;
+        this.orderManagement = orderManagement;
+        this.orderWriter = orderWriter;
+        this.orderRetention = orderRetention;
+        this.orderArchive = orderArchive;
+        this.orderCsvExport = orderCsvExport;
+        this.orderWriteBehind = orderWriteBehind;
+        this.entityManager = entityManager;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.orderLineWriter = objectMapper.writerFor(Order.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.orderReader = objectMapper.readerFor(Order.class);
     }
 
     /**
-     * GET a list of all orders between 2 dates
+     * GET a list of all orders between 2 dates. Like every query of the orders, the archived months are read from the archive
+     * and the rest from the database, and the detached months not at all.
      *
      * @return all products are returned in a list
      */
     @ApiOperation(value = "Displays a list of all order made between the two dates", response = List.class)
     @GetMapping("/orders")
     public List<Order> getProducts(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime after, @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before) {
-        return orderRepository.findAllByCreationDateTimeAfterAndCreationDateTimeBefore(after, before);
+        OrderArchive.Tiers tiers = orderArchive.getTiers();
+        List<Order> orders = new ArrayList<>(tiers.findOrders(after, before, null, null, Integer.MAX_VALUE));
+        if (tiers.hasHotBefore(before)) {
+            orders.addAll(orderRepository.findAllByCreationDateTimeAfterAndCreationDateTimeBefore(tiers.hotAfter(after), before));
+        }
+        return orders;
+    }
+
+    /**
+     * GET the orders between 2 dates without their items, using the totals stored with each order, so only the orders' own rows are read
+     *
+     * @return the orders' headers, ordered by creation date time
+     */
+    @ApiOperation(value = "Displays the id, buyer and totals of all orders made between the two dates, without their items", response = List.class)
+    @GetMapping(value = "/orders", params = {"view=header", "!buyer"})
+    public List<OrderHeader> getOrderHeaders(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime after, @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before) {
+        OrderArchive.Tiers tiers = orderArchive.getTiers();
+        List<OrderHeader> orderHeaders = new ArrayList<>(tiers.findHeaders(after, before, null, null, Integer.MAX_VALUE));
+        if (tiers.hasHotBefore(before)) {
+            orderHeaders.addAll(orderRepository.findHeadersBetween(tiers.hotAfter(after), before));
+        }
+        return orderHeaders;
+    }
+
+    /**
+     * GET one page of the orders between 2 dates, using the cursor returned with the previous page (if any)
+     *
+     * @return up to `limit` orders, ordered by creation date time, and the cursor for the next page
+     */
+    @ApiOperation(value = "Displays a page of the orders made between the two dates", response = OrderPage.class)
+    @GetMapping(value = "/orders", params = {"limit", "!view", "!buyer"})
+    public OrderPage getOrderPage(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime after, @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+                                  @ApiParam(value = "The maximum number of orders in the page", example = "100") @RequestParam int limit,
+                                  @ApiParam(value = "The nextCursor from the previous page") @RequestParam(required = false) String cursor) {
+        checkLimit(limit);
+        OrderArchive.Tiers tiers = orderArchive.getTiers();
+        OrderCursor orderCursor = cursor == null ? null : OrderCursor.decode(cursor);
+        List<Order> orders = new ArrayList<>(tiers.findOrders(after, before, orderCursor, null, limit));
+        if (orders.size() < limit && tiers.hasHotBefore(before)) {
+            PageRequest remainingRows = PageRequest.of(0, limit - orders.size());
+            orders.addAll(orderCursor == null
+                    ? orderRepository.findAllByCreationDateTimeAfterAndCreationDateTimeBeforeOrderByCreationDateTimeAscIdAsc(tiers.hotAfter(after), before, remainingRows)
+                    : orderRepository.findPageAfterCursor(tiers.hotAfter(after), before, orderCursor.getCreationDateTime(), orderCursor.getId(), remainingRows));
+        }
+        return OrderPage.of(orders, limit);
+    }
+
+    /**
+     * GET one page of a buyer's orders, oldest first, using the cursor returned with the previous page (if any). The buyer's email
+     * address is matched ignoring case, through an index of the orders by buyer, so however many orders there are in total only the
+     * buyer's are read.
+     *
+     * @return up to `limit` orders and the cursor for the next page
+     */
+    @ApiOperation(value = "Displays a page of a buyer's orders", response = OrderPage.class)
+    @GetMapping(value = "/orders", params = {"buyer", "!view"})
+    public OrderPage getBuyersOrderPage(@ApiParam(value = "The buyer's email address", required = true, example = "buyer@customer.com") @RequestParam String buyer,
+                                        @ApiParam(value = "The maximum number of orders in the page", example = "100") @RequestParam(defaultValue = "100") int limit,
+                                        @ApiParam(value = "The nextCursor from the previous page") @RequestParam(required = false) String cursor) {
+        checkLimit(limit);
+        String normalisedBuyer = Order.normaliseEmail(buyer);
+        long buyerKey = Order.buyerKeyOf(normalisedBuyer);
+        OrderArchive.Tiers tiers = orderArchive.getTiers();
+        OrderCursor orderCursor = cursor == null ? null : OrderCursor.decode(cursor);
+        List<Order> orders = new ArrayList<>(tiers.findOrders(null, null, orderCursor, normalisedBuyer, limit));
+        if (orders.size() < limit) {
+            PageRequest remainingRows = PageRequest.of(0, limit - orders.size());
+            orders.addAll(orderCursor == null
+                    ? orderRepository.findPageByBuyer(buyerKey, normalisedBuyer, tiers.getHotFrom(), remainingRows)
+                    : orderRepository.findPageByBuyerAfterCursor(buyerKey, normalisedBuyer, orderCursor.getCreationDateTime(), orderCursor.getId(), tiers.getHotFrom(), remainingRows));
+        }
+        return OrderPage.of(orders, limit);
+    }
+
+    /**
+     * GET one page of a buyer's orders without their items, as for {@link #getBuyersOrderPage}, reading only the orders' own rows
+     *
+     * @return up to `limit` order headers and the cursor for the next page
+     */
+    @ApiOperation(value = "Displays a page of the id and totals of a buyer's orders, without their items", response = OrderHeaderPage.class)
+    @GetMapping(value = "/orders", params = {"buyer", "view=header"})
+    public OrderHeaderPage getBuyersOrderHeaderPage(@ApiParam(value = "The buyer's email address", required = true, example = "buyer@customer.com") @RequestParam String buyer,
+                                                    @ApiParam(value = "The maximum number of orders in the page", example = "100") @RequestParam(defaultValue = "100") int limit,
+                                                    @ApiParam(value = "The nextCursor from the previous page") @RequestParam(required = false) String cursor) {
+        checkLimit(limit);
+        String normalisedBuyer = Order.normaliseEmail(buyer);
+        long buyerKey = Order.buyerKeyOf(normalisedBuyer);
+        OrderArchive.Tiers tiers = orderArchive.getTiers();
+        OrderCursor orderCursor = cursor == null ? null : OrderCursor.decode(cursor);
+        List<OrderHeader> orderHeaders = new ArrayList<>(tiers.findHeaders(null, null, orderCursor, normalisedBuyer, limit));
+        if (orderHeaders.size() < limit) {
+            PageRequest remainingRows = PageRequest.of(0, limit - orderHeaders.size());
+            orderHeaders.addAll(orderCursor == null
+                    ? orderRepository.findHeaderPageByBuyer(buyerKey, normalisedBuyer, tiers.getHotFrom(), remainingRows)
+                    : orderRepository.findHeaderPageByBuyerAfterCursor(buyerKey, normalisedBuyer, orderCursor.getCreationDateTime(), orderCursor.getId(), tiers.getHotFrom(), remainingRows));
+        }
+        return OrderHeaderPage.of(orderHeaders, limit);
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * GET all orders between 2 dates as newline delimited JSON, writing each order as soon as it is read from the database
+     * and then dropping it from the persistence context, so memory use does not grow with the size of the date range.
+     */
+    @ApiOperation(value = "Streams all orders made between the two dates, one JSON order per line")
+    @GetMapping(value = "/orders", produces = APPLICATION_NDJSON_VALUE)
+    public void streamOrders(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime after, @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+                             HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        OutputStream outputStream = response.getOutputStream();
+        OrderArchive.Tiers tiers = orderArchive.getTiers();
+        tiers.forEachOrder(after, before, order -> writeOrderLine(order, outputStream));
+        if (!tiers.hasHotBefore(before)) {
+            return;
+        }
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Order> orders = orderRepository.streamAllBetween(tiers.hotAfter(after), before)) {
+                orders.forEach(order -> {
+                    writeOrderLine(order, outputStream);
+                    entityManager.clear();
+                });
+            }
+        });
+    }
+
+    private void writeOrderLine(Order order, OutputStream outputStream) {
+        try {
+            orderLineWriter.writeValue(outputStream, order);
+            outputStream.write('\n');
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * GET all order lines between 2 dates as CSV, one line per item, gzipped if the client accepts it. The lines are read through
+     * a forward only cursor and written as they are read, without creating any Orders, so the export can be any size.
+     */
+    @ApiOperation(value = "Exports the lines of all orders made between the two dates as CSV, one line per item")
+    @GetMapping("/orders/export.csv")
+    public void exportOrders(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime after, @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                             HttpServletResponse response) throws IOException {
+        response.setContentType(TEXT_CSV_VALUE);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!ProductController.acceptsGzip(acceptEncoding)) {
+            orderCsvExport.export(after, before, response.getOutputStream());
+            return;
+        }
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(response.getOutputStream(), CSV_GZIP_BUFFER_SIZE);
+        orderCsvExport.export(after, before, gzipOutputStream);
+        gzipOutputStream.finish();
+    }
+
+    /**
+     * GET the months that have orders, with how many each has
+     */
+    @ApiOperation(value = "Displays each month that has orders, with its number of orders and whether it has been detached", response = List.class)
+    @GetMapping("/orders/months")
+    public List<OrderMonth> getOrderMonths() {
+        return orderRetention.getMonths();
+    }
+
+    /**
+     * DELETE (detach) every month of orders before the given month. They are no longer read as soon as this returns, and their rows
+     * are then purged in the background.
+     *
+     * @return the months that have orders, with those detached but not yet purged
+     */
+    @ApiOperation(value = "Detaches all the orders made before the given month, which are then purged", response = List.class)
+    @DeleteMapping("/orders/months")
+    public ResponseEntity<List<OrderMonth>> detachOrderMonths(@ApiParam(value = "The oldest month to keep, as yyyy-MM", required = true, example = "2019-01")
+                                                              @RequestParam YearMonth before) {
+        orderRetention.detachBefore(before);
+        return ResponseEntity.accepted().body(orderRetention.getMonths());
+    }
+
+    /**
+     * GET the segments of the archive, oldest first
+     */
+    @ApiOperation(value = "Displays the segments of archived orders", response = List.class)
+    @GetMapping("/orders/archive")
+    public List<OrderArchiveSegment> getOrderArchive() {
+        return orderArchive.getSegments();
     }
 
+    /**
+     * POST (archive) every month of orders before the given month that is still in the database. The months are written to a new
+     * segment of the archive and then detached from the database, and are read from the archive from then on.
+     *
+     * @return all the segments of the archive
+     */
+    @ApiOperation(value = "Moves all the orders made before the given month from the database to the archive", response = List.class)
+    @PostMapping("/orders/archive")
+    public List<OrderArchiveSegment> archiveOrders(@ApiParam(value = "The oldest month to keep in the database, as yyyy-MM", required = true, example = "2019-01")
+                                                   @RequestParam YearMonth before) {
+        return orderArchive.archiveBefore(before);
+    }
+
+    /**
+     * Adds a new Order, committing it and its items in one transaction (shared with concurrent requests if group commit is enabled)
+     * before it is returned. With write-behind enabled the Order is validated and queued rather than saved, and 202 (Accepted) is
+     * returned with its id and where to check its status, or 503 if the queue is full. Either way the Order's totals are worked out
+     * from its Prices and stored with it.
+     */
     @ApiOperation(value = "Adds a new Order", response = Order.class)
     @ApiImplicitParams(
             @ApiImplicitParam(
@@ -58,21 +320,118 @@ public class OrderController {
             )
     )
     @PostMapping("/orders")
-    public Order addOrder(@RequestBody Order newOrder) {
-        Order savedOrder = orderRepository.save(new Order(0L, LocalDateTime.now(), newOrder.getBuyersEmail(), new HashSet<>()));
+    public ResponseEntity<?> addOrder(@RequestBody Order newOrder) {
+        if (orderWriteBehind.isPresent()) {
+            return submitOrder(newOrder, orderWriteBehind.get());
+        }
+        try {
+            return ResponseEntity.ok(orderWriter.addOrder(newOrder));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(OrderStatus.rejected(e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<OrderStatus> submitOrder(Order newOrder, OrderWriteBehind writeBehind) {
+        Optional<String> invalidReason = orderManagement.findInvalidReason(newOrder);
+        if (invalidReason.isPresent()) {
+            return ResponseEntity.badRequest().body(OrderStatus.rejected(invalidReason.get()));
+        }
+        Map<Long, Price> prices = priceManagement.getPricesById(newOrder.getOrderItems().stream().map(orderItem -> orderItem.getPrice().getId()).collect(Collectors.toList()));
+        Order pricedOrder = new Order(0L, null, newOrder.getBuyersEmail(), newOrder.getOrderItems().stream()
+                .map(orderItem -> new OrderItem(prices.get(orderItem.getPrice().getId()), orderItem.getProduct(), orderItem.getQuantity(), null))
+                .collect(Collectors.toSet()));
+        return writeBehind.submit(pricedOrder)
+                .map(status -> ResponseEntity.accepted()
+                        .location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}/status").buildAndExpand(status.getOrderId()).toUri())
+                        .body(status))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build());
+    }
+
+    /**
+     * GET whether an Order has been written. Orders are only ever QUEUED or FAILED when write-behind is enabled.
+     */
+    @ApiOperation(value = "Displays whether an Order is queued, written or failed to be written", response = OrderStatus.class)
+    @GetMapping("/orders/{id}/status")
+    public ResponseEntity<OrderStatus> getOrderStatus(@ApiParam(value = "The ID of the order", required = true, example = "1") @PathVariable long id) {
+        Optional<OrderStatus> status = orderWriteBehind.flatMap(writeBehind -> writeBehind.getStatus(id));
+        if (status.isEmpty() && orderRepository.existsById(id)) {
+            status = Optional.of(OrderStatus.written(id));
+        }
+        return ResponseEntity.of(status);
+    }
+
+    /**
+     * Adds a batch of new Orders, read from either a JSON array or newline delimited JSON (one Order per line).
+     * The Orders are read and added a chunk at a time rather than all being held in memory first.
+     * <p>
+     * Reading stops at the first Order that is not valid JSON or not an Order. The Orders before it are still added, as earlier
+     * chunks have already been committed, and it is rejected with a 400 so the rest of the batch can be sent again.
+     *
+     * @return the outcome of each Order read, including why any were rejected
+     */
+    @ApiOperation(value = "Adds a batch of new Orders, sent as a JSON array or as one JSON Order per line", response = List.class)
+    @PostMapping(value = "/orders/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<List<OrderBatchResult>> addOrders(@ApiParam(value = "The Orders, each in the same form as a single new Order", type = "body") InputStream newOrders) throws IOException {
+        ReadableOrders orders;
+        try {
+            orders = new ReadableOrders(orderReader.readValues(newOrders));
+        } catch (JsonProcessingException e) {
+            return ResponseEntity.badRequest().body(List.of(OrderBatchResult.rejected(0, "The Orders could not be read: " + e.getOriginalMessage())));
+        }
+        try (orders) {
+            List<OrderBatchResult> results = new ArrayList<>(orderManagement.addOrders(orders));
+            if (orders.unreadableReason == null) {
+                return ResponseEntity.ok(results);
+            }
+            results.add(OrderBatchResult.rejected(results.size(), "The Order could not be read, so no later Orders were: " + orders.unreadableReason));
+            return ResponseEntity.badRequest().body(results);
+        }
+    }
 
-        List<OrderItem> unsetOrderItems = newOrder.getOrderItems().stream().filter(OrderItem::isUnset).collect(Collectors.toList());
+    /*
+    Reads each Order ahead in hasNext, so one that cannot be read ends the Orders there, keeping why, rather than throwing.
+     */
+    private static final class ReadableOrders implements Iterator<Order>, Closeable {
+        private final MappingIterator<Order> orders;
+        private Order nextOrder;
+        private boolean nextRead;
+        private String unreadableReason;
 
-        Map<Long, Price> retrievedPrices = priceRepository.findAllById(unsetOrderItems.stream().map(orderItem -> orderItem.getPrice().getId()).collect(Collectors.toList())).stream().collect(Collectors.toMap(Price::getId, price -> price));
+        private ReadableOrders(MappingIterator<Order> orders) {
+            this.orders = orders;
+        }
 
-        List<OrderItem> newOrderItems = newOrder.getOrderItems().stream().map(orderItem -> new OrderItem(
-                orderItem.getPrice().isUnset() ? retrievedPrices.get(orderItem.getPrice().getId()) : orderItem.getPrice(),
-                orderItem.getProduct(),
-                orderItem.getQuantity(), savedOrder)).collect(Collectors.toList());
+        @Override
+        public boolean hasNext() {
+            if (!nextRead && unreadableReason == null) {
+                try {
+                    nextRead = orders.hasNextValue();
+                    nextOrder = nextRead ? orders.nextValue() : null;
+                } catch (IOException e) {
+                    nextRead = false;
+                    unreadableReason = reasonFor(e);
+                }
+            }
+            return nextRead;
+        }
 
-        List<OrderItem> savedOrderItems = orderItemRepository.saveAll(newOrderItems);
+        @Override
+        public Order next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            nextRead = false;
+            return nextOrder;
+        }
 
-        return new Order(savedOrder.getId(), savedOrder.getCreationDateTime(), savedOrder.getBuyersEmail(), new HashSet<>(savedOrderItems));
+        private static String reasonFor(IOException e) {
+            return e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage() : e.getMessage();
+        }
+
+        @Override
+        public void close() throws IOException {
+            orders.close();
+        }
     }
 
     /*
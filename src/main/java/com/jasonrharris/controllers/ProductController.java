@@ -1,8 +1,13 @@
 package com.jasonrharris.controllers;
 
+import com.jasonrharris.products.Catalog;
+import com.jasonrharris.products.CatalogLoadResult;
+import com.jasonrharris.products.CatalogLoader;
 import com.jasonrharris.products.Price;
 import com.jasonrharris.products.PriceManagement;
 import com.jasonrharris.products.Product;
+import com.jasonrharris.products.ProductMatch;
+import com.jasonrharris.products.ProductSearch;
 
 import com.jasonrharris.repositories.ProductRepository;
 import io.swagger.annotations.ApiOperation;
@@ -10,12 +15,22 @@ import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.Info;
 import io.swagger.annotations.SwaggerDefinition;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @SwaggerDefinition(
         info = @Info(
                 description = "Used to manage Available Products",
@@ -30,21 +45,64 @@ public class ProductController {
 
     private final ProductRepository productRepository;
     private final PriceManagement priceManagement;
+    private final Catalog catalog;
+    private final ProductSearch productSearch;
+    private final CatalogLoader catalogLoader;
 
-    public ProductController(@Autowired ProductRepository productRepository, @Autowired PriceManagement priceManagement) {
+    public ProductController(@Autowired ProductRepository productRepository, @Autowired PriceManagement priceManagement, @Autowired Catalog catalog,
+                             @Autowired ProductSearch productSearch, @Autowired CatalogLoader catalogLoader) {
         this.productRepository = productRepository;
         this.priceManagement = priceManagement;
+        this.catalog = catalog;
+        this.productSearch = productSearch;
+        this.catalogLoader = catalogLoader;
     }
 
     /**
-     * GET a list of all products
+     * GET a list of all products, from the already encoded catalog. It is gzipped for clients that accept that, and a request
+     * whose If-None-Match has the catalog's current ETag is answered with 304 (Not Modified).
      *
      * @return all products are returned in a list
      */
-    @ApiOperation(value = "Displays a list of all available products", response = List.class)
+    @ApiOperation(value = "Displays a list of all available products", response = Product.class, responseContainer = "List")
     @GetMapping("/products")
-    public List<Product> getProducts() {
-        return productRepository.findAll();
+    public ResponseEntity<byte[]> getProducts(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        Catalog.Snapshot snapshot = catalog.getSnapshot();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(acceptEncoding)) {
+            return response.eTag(snapshot.getGzippedETag()).header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzippedJson());
+        }
+        return response.eTag(snapshot.getETag()).body(snapshot.getJson());
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        return acceptEncoding != null && Arrays.stream(acceptEncoding.split(","))
+                .map(coding -> coding.replace(" ", ""))
+                .anyMatch(coding -> coding.equals("gzip") || coding.startsWith("gzip;") && !coding.matches("gzip;q=0(\\.0*)?"));
+    }
+
+    /**
+     * GET the products whose names match a query, from the in memory search index
+     *
+     * @return up to `limit` products: those whose names start with the query first, then those with a word starting with each of its words
+     */
+    @ApiOperation(value = "Finds products by name, for type-ahead as well as searches for several words", response = ProductMatch.class, responseContainer = "List")
+    @GetMapping("/products/search")
+    public List<ProductMatch> searchProducts(@ApiParam(value = "The start of the name, or of words in it", required = true, example = "nike") @RequestParam String q,
+                                             @ApiParam(value = "The maximum number of products found", example = "20") @RequestParam(defaultValue = "20") int limit) {
+        return productSearch.search(q, limit);
+    }
+
+    /**
+     * GET the price of a product that was in effect at a given time, or now if no time is given
+     *
+     * @return the price, or 404 if the product had no price then
+     */
+    @ApiOperation(value = "Displays the price a product had at a given time", response = Price.class)
+    @GetMapping("/products/{id}/price")
+    public ResponseEntity<Price> getPriceAt(@ApiParam(value = "The ID of the product", required = true, example = "1") @PathVariable long id,
+                                            @ApiParam(value = "When the price was in effect, defaulting to now") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        return ResponseEntity.of(priceManagement.getPriceAt(id, at == null ? LocalDateTime.now() : at));
     }
 
     /**
@@ -55,6 +113,7 @@ public class ProductController {
     public Product addProduct(@RequestBody Product newProduct) {
         Optional<Price> newPrice = newProduct.getCurrentPrice();
         Product savedProduct = productRepository.save(new Product(newProduct.getName()));
+        productSearch.index(savedProduct.getId(), savedProduct.getName());
         Optional<Price> price = priceManagement.saveNewProductPrice(new Product(savedProduct.getId(), savedProduct.getName(), newPrice.orElse(null)));
         if (price.isEmpty()) {
             return savedProduct;
@@ -63,6 +122,19 @@ public class ProductController {
         }
     }
 
+    /**
+     * Loads products with their price histories in bulk, one per line, from CSV or newline delimited JSON (see {@link CatalogLoader}).
+     *
+     * @return how many products and prices were loaded, with a 400 and the first invalid line if the load stopped at one
+     */
+    @ApiOperation(value = "Loads products with their price histories in bulk, one per line of CSV or newline delimited JSON", response = CatalogLoadResult.class)
+    @PostMapping(value = "/products/bulk", consumes = {OrderController.TEXT_CSV_VALUE, OrderController.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<CatalogLoadResult> loadProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) throws IOException {
+        boolean csv = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(OrderController.TEXT_CSV_VALUE));
+        CatalogLoadResult result = catalogLoader.load(body, csv ? CatalogLoader.Format.CSV : CatalogLoader.Format.NDJSON);
+        return result.getError() == null ? ResponseEntity.ok(result) : ResponseEntity.badRequest().body(result);
+    }
+
     /**
      * Updates an existing product
      */
@@ -71,9 +143,11 @@ public class ProductController {
     public Product updateProduct(@RequestBody Product updatedProduct, @ApiParam(value = "The ID of the product to be updated", required = true, example = "1") @PathVariable long id) {
         Product matchingProduct = productRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("No product has Id " + id));
 
-        final Price priceToAddToProduct = priceManagement.getExistingOrSaveUpdatedPrice(updatedProduct, matchingProduct);
+        priceManagement.getExistingOrSaveUpdatedPrice(updatedProduct, matchingProduct);
 
-        return productRepository.save(new Product(id, updatedProduct.getName(), priceToAddToProduct));
+        Product savedProduct = productRepository.save(new Product(id, updatedProduct.getName(), null));
+        productSearch.index(id, savedProduct.getName());
+        return new Product(id, savedProduct.getName(), priceManagement.getCurrentPrice(id).orElse(null));
     }
 
 }
@@ -0,0 +1,246 @@
+package com.jasonrharris.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jasonrharris.converters.MoneyListConverter;
+import com.jasonrharris.orders.Order;
+import com.jasonrharris.orders.OrderArchive;
+import com.jasonrharris.orders.OrderItem;
+import com.jasonrharris.orders.OrderManagement;
+import com.jasonrharris.orders.OrderStatus;
+import com.jasonrharris.orders.OrderWriteBehind;
+import com.jasonrharris.orders.OrderWriter;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The order endpoints of the reactive stack (see {@link com.jasonrharris.ReactiveConfig}), answering as {@link OrderController}
+ * does. GET /orders is a {@link Flux} of the archived orders followed by those in the database, which are read through R2DBC and
+ * written to the response as they are read, as a JSON array or as newline delimited JSON. Items are priced from the Price cache,
+ * Orders keep the totals stored with them, and adding an Order goes through JPA (or the write-behind queue), both on the bounded
+ * elastic scheduler.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveOrderHandler {
+    private static final String SELECT_ORDER_LINES = "SELECT o.id AS order_id, o.creation_date_time, o.buyers_email, o.totals, oi.id AS item_id, oi.price_id, oi.quantity " +
+            "FROM order_ o LEFT JOIN order_item oi ON oi.order_id = o.id " +
+            "WHERE o.creation_date_time > :after AND o.creation_date_time < :before ORDER BY o.creation_date_time, o.id, oi.id";
+    private static final String SELECT_ORDER_ID = "SELECT id FROM order_ WHERE id = :id";
+    private static final MoneyListConverter TOTALS_CONVERTER = new MoneyListConverter();
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(OrderController.APPLICATION_NDJSON_VALUE);
+    private static final byte[] ARRAY_START = {'['};
+    private static final byte[] ARRAY_SEPARATOR = {','};
+    private static final byte[] ARRAY_END = {']'};
+    private static final byte[] LINE_END = {'\n'};
+    // the Prices of this many Orders are looked up from the cache at once
+    static final int ORDERS_PER_PRICE_LOOKUP = 100;
+
+    private final DatabaseClient databaseClient;
+    private final OrderArchive orderArchive;
+    private final OrderManagement orderManagement;
+    private final OrderWriter orderWriter;
+    private final PriceManagement priceManagement;
+    private final Optional<OrderWriteBehind> orderWriteBehind;
+    private final ObjectWriter orderJsonWriter;
+
+    public ReactiveOrderHandler(@Autowired DatabaseClient databaseClient, @Autowired OrderArchive orderArchive, @Autowired OrderManagement orderManagement, @Autowired OrderWriter orderWriter,
+                                @Autowired PriceManagement priceManagement, @Autowired Optional<OrderWriteBehind> orderWriteBehind, @Autowired ObjectMapper objectMapper) {
+        this.databaseClient = databaseClient;
+        this.orderArchive = orderArchive;
+        this.orderManagement = orderManagement;
+        this.orderWriter = orderWriter;
+        this.priceManagement = priceManagement;
+        this.orderWriteBehind = orderWriteBehind;
+        this.orderJsonWriter = objectMapper.writerFor(Order.class);
+    }
+
+    /**
+     * GET /orders?after=...&before=...: every order between the 2 dates, streamed as a JSON array, or as one JSON order per line
+     * (flushed as each is written) to clients that accept newline delimited JSON
+     */
+    public Mono<ServerResponse> getOrders(ServerRequest request) {
+        LocalDateTime after = parseDateTime(request.queryParam("after").orElseThrow(() -> new ServerWebInputException("after is required")));
+        LocalDateTime before = parseDateTime(request.queryParam("before").orElseThrow(() -> new ServerWebInputException("before is required")));
+        Flux<byte[]> orders = findOrders(after, before).map(this::encode);
+        boolean ndjson = request.headers().accept().stream().anyMatch(type -> !type.isWildcardSubtype() && type.isCompatibleWith(APPLICATION_NDJSON));
+        if (ndjson) {
+            return ServerResponse.ok().contentType(APPLICATION_NDJSON).body((message, context) ->
+                    message.writeAndFlushWith(orders.map(order -> Flux.just(message.bufferFactory().wrap(order), message.bufferFactory().wrap(LINE_END)))));
+        }
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).body((message, context) ->
+                message.writeWith(asJsonArray(orders, message.bufferFactory())));
+    }
+
+    private static Flux<DataBuffer> asJsonArray(Flux<byte[]> elements, DataBufferFactory bufferFactory) {
+        Flux<byte[]> separatedElements = elements.index().concatMap(element -> element.getT1() == 0
+                ? Flux.just(element.getT2())
+                : Flux.just(ARRAY_SEPARATOR, element.getT2()));
+        return Flux.concat(Mono.just(ARRAY_START), separatedElements, Mono.just(ARRAY_END)).map(bufferFactory::wrap);
+    }
+
+    /*
+    As everywhere else, the archived months are read from the archive and the rest from the database.
+     */
+    Flux<Order> findOrders(LocalDateTime after, LocalDateTime before) {
+        return Mono.fromSupplier(orderArchive::getTiers).flatMapMany(tiers -> {
+            Flux<Order> archivedOrders = blocking(() -> tiers.findOrders(after, before, null, null, Integer.MAX_VALUE)).flatMapIterable(Function.identity());
+            return tiers.hasHotBefore(before) ? archivedOrders.concatWith(findDatabaseOrders(tiers.hotAfter(after), before)) : archivedOrders;
+        });
+    }
+
+    private Flux<Order> findDatabaseOrders(LocalDateTime after, LocalDateTime before) {
+        return databaseClient.execute(SELECT_ORDER_LINES).bind("after", after).bind("before", before)
+                .map(OrderLine::of).all()
+                .bufferUntilChanged(line -> line.orderId)
+                .buffer(ORDERS_PER_PRICE_LOOKUP)
+                .concatMap(orders -> blocking(() -> toOrders(orders)))
+                .flatMapIterable(Function.identity());
+    }
+
+    private List<Order> toOrders(List<List<OrderLine>> orders) {
+        Set<Long> priceIds = orders.stream().flatMap(List::stream).filter(line -> line.itemId != null).map(line -> line.priceId).collect(Collectors.toSet());
+        Map<Long, Price> prices = priceIds.isEmpty() ? Map.of() : priceManagement.getPricesById(priceIds);
+        List<Order> pricedOrders = new ArrayList<>(orders.size());
+        for (List<OrderLine> lines : orders) {
+            OrderLine firstLine = lines.get(0);
+            Set<OrderItem> orderItems = new HashSet<>();
+            Order order = new Order(firstLine.orderId, firstLine.creationDateTime, firstLine.buyersEmail, orderItems);
+            for (OrderLine line : lines) {
+                if (line.itemId != null) {
+                    Price price = prices.get(line.priceId);
+                    orderItems.add(new OrderItem(line.itemId, price, price.getProduct(), line.quantity, order));
+                }
+            }
+            order.loadTotals(TOTALS_CONVERTER.convertToEntityAttribute(firstLine.totals));
+            pricedOrders.add(order);
+        }
+        return pricedOrders;
+    }
+
+    private byte[] encode(Order order) {
+        try {
+            return orderJsonWriter.writeValueAsBytes(order);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * POST /orders: adds a new Order, or queues it with write-behind enabled, answering 200, 202, 400 or 503 as the servlet stack does
+     */
+    public Mono<ServerResponse> addOrder(ServerRequest request) {
+        return request.bodyToMono(Order.class)
+                .flatMap(newOrder -> blocking(() -> {
+                    if (orderWriteBehind.isPresent()) {
+                        return submitOrder(newOrder, orderWriteBehind.get(), request);
+                    }
+                    try {
+                        return ServerResponse.ok().bodyValue(orderWriter.addOrder(newOrder));
+                    } catch (IllegalArgumentException e) {
+                        return ServerResponse.badRequest().bodyValue(OrderStatus.rejected(e.getMessage()));
+                    }
+                }))
+                .flatMap(Function.identity());
+    }
+
+    private Mono<ServerResponse> submitOrder(Order newOrder, OrderWriteBehind writeBehind, ServerRequest request) {
+        Optional<String> invalidReason = orderManagement.findInvalidReason(newOrder);
+        if (invalidReason.isPresent()) {
+            return ServerResponse.badRequest().bodyValue(OrderStatus.rejected(invalidReason.get()));
+        }
+        Map<Long, Price> prices = priceManagement.getPricesById(newOrder.getOrderItems().stream().map(orderItem -> orderItem.getPrice().getId()).collect(Collectors.toList()));
+        Order pricedOrder = new Order(0L, null, newOrder.getBuyersEmail(), newOrder.getOrderItems().stream()
+                .map(orderItem -> new OrderItem(prices.get(orderItem.getPrice().getId()), orderItem.getProduct(), orderItem.getQuantity(), null))
+                .collect(Collectors.toSet()));
+        return writeBehind.submit(pricedOrder)
+                .map(status -> ServerResponse.accepted()
+                        .location(UriComponentsBuilder.fromUri(request.uri()).path("/{id}/status").buildAndExpand(status.getOrderId()).toUri())
+                        .bodyValue(status))
+                .orElseGet(() -> ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build());
+    }
+
+    /**
+     * GET /orders/{id}/status: whether an Order is queued, written or failed to be written
+     */
+    public Mono<ServerResponse> getOrderStatus(ServerRequest request) {
+        long id = ReactiveProductHandler.parseLong(request.pathVariable("id"));
+        Mono<OrderStatus> status = Mono.justOrEmpty(orderWriteBehind.flatMap(writeBehind -> writeBehind.getStatus(id)))
+                .switchIfEmpty(databaseClient.execute(SELECT_ORDER_ID).bind("id", id).map(row -> OrderStatus.written(id)).first());
+        return status.flatMap(written -> ServerResponse.ok().bodyValue(written)).switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    /**
+     * @return a Mono of the result of a call that may block, made on the bounded elastic scheduler rather than the event loop
+     */
+    static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    static LocalDateTime parseDateTime(String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new ServerWebInputException(e.getMessage());
+        }
+    }
+
+    /*
+    A row of an Order joined to one of its items, or to none if it has no items.
+     */
+    private static final class OrderLine {
+        private final long orderId;
+        private final LocalDateTime creationDateTime;
+        private final String buyersEmail;
+        private final String totals;
+        private final Long itemId;
+        private final Long priceId;
+        private final Integer quantity;
+
+        private OrderLine(long orderId, LocalDateTime creationDateTime, String buyersEmail, String totals, Long itemId, Long priceId, Integer quantity) {
+            this.orderId = orderId;
+            this.creationDateTime = creationDateTime;
+            this.buyersEmail = buyersEmail;
+            this.totals = totals;
+            this.itemId = itemId;
+            this.priceId = priceId;
+            this.quantity = quantity;
+        }
+
+        private static OrderLine of(Row row) {
+            return new OrderLine(row.get("order_id", Long.class), row.get("creation_date_time", LocalDateTime.class), row.get("buyers_email", String.class), row.get("totals", String.class),
+                    row.get("item_id", Long.class), row.get("price_id", Long.class), row.get("quantity", Integer.class));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.jasonrharris.controllers;
+
+import com.jasonrharris.products.Catalog;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
+import com.jasonrharris.products.Product;
+import com.jasonrharris.products.ProductSearch;
+import com.jasonrharris.repositories.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The product endpoints of the reactive stack (see {@link com.jasonrharris.ReactiveConfig}), answering as {@link ProductController}
+ * does. The catalog and the search index are read on the event loop; anything that may query the database through JPA, such as
+ * loading a Price history into the cache, runs on the bounded elastic scheduler instead.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductHandler {
+    private final ProductRepository productRepository;
+    private final PriceManagement priceManagement;
+    private final Catalog catalog;
+    private final ProductSearch productSearch;
+
+    public ReactiveProductHandler(@Autowired ProductRepository productRepository, @Autowired PriceManagement priceManagement, @Autowired Catalog catalog,
+                                  @Autowired ProductSearch productSearch) {
+        this.productRepository = productRepository;
+        this.priceManagement = priceManagement;
+        this.catalog = catalog;
+        this.productSearch = productSearch;
+    }
+
+    /**
+     * GET /products: the already encoded catalog, gzipped for clients that accept that, or 304 for a request whose If-None-Match
+     * has its ETag. Only waits, off the event loop, if the catalog is being rebuilt.
+     */
+    public Mono<ServerResponse> getProducts(ServerRequest request) {
+        Mono<Catalog.Snapshot> snapshot = catalog.getSnapshotIfCurrent().map(Mono::just).orElseGet(() -> ReactiveOrderHandler.blocking(catalog::getSnapshot));
+        boolean gzip = ProductController.acceptsGzip(request.headers().asHttpHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+        return snapshot.flatMap(current -> {
+            String eTag = gzip ? current.getGzippedETag() : current.getETag();
+            List<String> ifNoneMatch = request.headers().asHttpHeaders().getIfNoneMatch();
+            if (ifNoneMatch.contains(eTag) || ifNoneMatch.contains("*")) {
+                return ServerResponse.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+            }
+            ServerResponse.BodyBuilder response = ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).eTag(eTag).varyBy(HttpHeaders.ACCEPT_ENCODING);
+            return gzip ? response.header(HttpHeaders.CONTENT_ENCODING, "gzip").bodyValue(current.getGzippedJson()) : response.bodyValue(current.getJson());
+        });
+    }
+
+    /**
+     * GET /products/search?q=...&limit=...: the products whose names match the query, from the in memory search index
+     */
+    public Mono<ServerResponse> searchProducts(ServerRequest request) {
+        String query = request.queryParam("q").orElseThrow(() -> new ServerWebInputException("q is required"));
+        int limit = request.queryParam("limit").map(ReactiveProductHandler::parseInt).orElse(20);
+        return ServerResponse.ok().bodyValue(productSearch.search(query, limit));
+    }
+
+    /**
+     * GET /products/{id}/price?at=...: the price in effect at the given time, or now, or 404 if the product had no price then
+     */
+    public Mono<ServerResponse> getPriceAt(ServerRequest request) {
+        long id = parseLong(request.pathVariable("id"));
+        LocalDateTime at = request.queryParam("at").map(ReactiveOrderHandler::parseDateTime).orElseGet(LocalDateTime::now);
+        return ReactiveOrderHandler.blocking(() -> priceManagement.getPriceAt(id, at))
+                .flatMap(price -> price.isPresent() ? ServerResponse.ok().bodyValue(price.get()) : ServerResponse.notFound().build());
+    }
+
+    /**
+     * POST /products: creates a new product with its price, if it has one
+     */
+    public Mono<ServerResponse> addProduct(ServerRequest request) {
+        return request.bodyToMono(Product.class)
+                .flatMap(newProduct -> ReactiveOrderHandler.blocking(() -> {
+                    Optional<Price> newPrice = newProduct.getCurrentPrice();
+                    Product savedProduct = productRepository.save(new Product(newProduct.getName()));
+                    productSearch.index(savedProduct.getId(), savedProduct.getName());
+                    Optional<Price> price = priceManagement.saveNewProductPrice(new Product(savedProduct.getId(), savedProduct.getName(), newPrice.orElse(null)));
+                    return price.map(savedPrice -> new Product(savedProduct.getId(), savedProduct.getName(), savedPrice)).orElse(savedProduct);
+                }))
+                .flatMap(product -> ServerResponse.ok().bodyValue(product));
+    }
+
+    /**
+     * PUT /products/{id}: updates an existing product, adding a new price if its price has changed
+     */
+    public Mono<ServerResponse> updateProduct(ServerRequest request) {
+        long id = parseLong(request.pathVariable("id"));
+        return request.bodyToMono(Product.class)
+                .flatMap(updatedProduct -> ReactiveOrderHandler.blocking(() -> {
+                    Product matchingProduct = productRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("No product has Id " + id));
+                    priceManagement.getExistingOrSaveUpdatedPrice(updatedProduct, matchingProduct);
+                    Product savedProduct = productRepository.save(new Product(id, updatedProduct.getName(), null));
+                    productSearch.index(id, savedProduct.getName());
+                    return new Product(id, savedProduct.getName(), priceManagement.getCurrentPrice(id).orElse(null));
+                }))
+                .flatMap(product -> ServerResponse.ok().bodyValue(product));
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException(e.getMessage());
+        }
+    }
+
+    static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException(e.getMessage());
+        }
+    }
+}
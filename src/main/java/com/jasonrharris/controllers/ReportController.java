@@ -0,0 +1,117 @@
+package com.jasonrharris.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jasonrharris.reports.SalesReport;
+import com.jasonrharris.reports.SalesReportRow;
+import com.jasonrharris.reports.SalesRollups;
+import com.jasonrharris.reports.SalesSource;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.Info;
+import io.swagger.annotations.SwaggerDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.jasonrharris.controllers.OrderController.APPLICATION_NDJSON_VALUE;
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@SwaggerDefinition(
+        info = @Info(
+                description = "Used to report on Orders",
+                version = "1.0.0-SNAPSHOT",
+                title = "The Sales Reporter"
+        ),
+        produces = {"application/json"},
+        schemes = {SwaggerDefinition.Scheme.HTTP}
+)
+public class ReportController {
+    private final SalesReport salesReport;
+    private final SalesRollups salesRollups;
+    private final ObjectWriter rowWriter;
+
+    public ReportController(@Autowired SalesReport salesReport, @Autowired SalesRollups salesRollups, @Autowired ObjectMapper objectMapper) {
+        this.salesReport = salesReport;
+        this.salesRollups = salesRollups;
+        this.rowWriter = objectMapper.writerFor(SalesReportRow.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * GET the units sold and revenue per time bucket, for each Product or each Currency, as a JSON array written row by row as the
+     * database returns them
+     */
+    @ApiOperation(value = "Reports the units sold and revenue of the orders made from one date up to another, per hour, day or month", response = List.class)
+    @GetMapping(value = "/reports/sales", produces = MediaType.APPLICATION_JSON_VALUE)
+    public void getSales(@ApiParam(value = "The start of the report, inclusive") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                         @ApiParam(value = "The end of the report, exclusive") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                         @ApiParam(value = "hour, day or month", example = "day") @RequestParam(defaultValue = "day") String granularity,
+                         @ApiParam(value = "product or currency", example = "product") @RequestParam(defaultValue = "product") String groupBy,
+                         HttpServletResponse response) throws IOException {
+        SalesReport.Granularity reportGranularity = SalesReport.Granularity.parse(granularity);
+        SalesReport.GroupBy reportGroupBy = SalesReport.GroupBy.parse(groupBy);
+        SalesSource.checkRange(from, to);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        writeSales(salesReport, from, to, reportGranularity, reportGroupBy, rowWriter.writeValuesAsArray(response.getOutputStream()));
+    }
+
+    /**
+     * GET the same report from the hourly totals kept as Orders are written, reading one row per hour rather than every order line.
+     * Hours are whole, so `from` and `to` are in effect rounded up to the hour.
+     */
+    @ApiOperation(value = "Reports the units sold and revenue per hour, day or month from the running hourly totals", response = List.class)
+    @GetMapping(value = "/reports/sales/rollups", produces = MediaType.APPLICATION_JSON_VALUE)
+    public void getSalesRollups(@ApiParam(value = "The start of the report, inclusive") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                @ApiParam(value = "The end of the report, exclusive") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                @ApiParam(value = "hour, day or month", example = "day") @RequestParam(defaultValue = "day") String granularity,
+                                @ApiParam(value = "product or currency", example = "product") @RequestParam(defaultValue = "product") String groupBy,
+                                HttpServletResponse response) throws IOException {
+        SalesReport.Granularity reportGranularity = SalesReport.Granularity.parse(granularity);
+        SalesReport.GroupBy reportGroupBy = SalesReport.GroupBy.parse(groupBy);
+        SalesSource.checkRange(from, to);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        writeSales(salesRollups, from, to, reportGranularity, reportGroupBy, rowWriter.writeValuesAsArray(response.getOutputStream()));
+    }
+
+    /**
+     * GET the same report as newline delimited JSON, one row per line
+     */
+    @ApiOperation(value = "Reports the units sold and revenue of the orders made from one date up to another, one JSON row per line")
+    @GetMapping(value = "/reports/sales", produces = APPLICATION_NDJSON_VALUE)
+    public void streamSales(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                            @RequestParam(defaultValue = "day") String granularity,
+                            @RequestParam(defaultValue = "product") String groupBy,
+                            HttpServletResponse response) throws IOException {
+        SalesReport.Granularity reportGranularity = SalesReport.Granularity.parse(granularity);
+        SalesReport.GroupBy reportGroupBy = SalesReport.GroupBy.parse(groupBy);
+        SalesSource.checkRange(from, to);
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        writeSales(salesReport, from, to, reportGranularity, reportGroupBy, rowWriter.withRootValueSeparator("\n").writeValues(response.getOutputStream()));
+    }
+
+    private void writeSales(SalesSource salesSource, LocalDateTime from, LocalDateTime to, SalesReport.Granularity granularity, SalesReport.GroupBy groupBy, SequenceWriter rows) throws IOException {
+        try (rows) {
+            salesSource.streamSales(from, to, granularity, groupBy, row -> {
+                try {
+                    rows.write(row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
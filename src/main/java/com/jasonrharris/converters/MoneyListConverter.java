@@ -0,0 +1,56 @@
+package com.jasonrharris.converters;
+
+import com.jasonrharris.products.Money;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+/**
+ * Stores a list of Money in one column as currency code and minor units pairs, e.g. `EUR:3050;GBP:4600`, so whole numbers of
+ * minor units are stored exactly. An empty list is stored as an empty string.
+ */
+@Converter
+public class MoneyListConverter implements AttributeConverter<List<Money>, String> {
+    private static final char SEPARATOR = ';';
+    private static final char CURRENCY_SEPARATOR = ':';
+
+    @Override
+    public String convertToDatabaseColumn(List<Money> moneyList) {
+        if (moneyList == null) {
+            return null;
+        }
+        StringBuilder column = new StringBuilder(moneyList.size() * 12);
+        for (Money money : moneyList) {
+            if (column.length() > 0) {
+                column.append(SEPARATOR);
+            }
+            column.append(money.getCurrency().getCurrencyCode()).append(CURRENCY_SEPARATOR).append(money.getMinorUnits());
+        }
+        return column.toString();
+    }
+
+    @Override
+    public List<Money> convertToEntityAttribute(String column) {
+        if (column == null) {
+            return null;
+        }
+        List<Money> moneyList = new ArrayList<>(1);
+        int start = 0;
+        while (start < column.length()) {
+            int end = column.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = column.length();
+            }
+            int currencyEnd = column.indexOf(CURRENCY_SEPARATOR, start);
+            if (currencyEnd < 0 || currencyEnd > end) {
+                throw new IllegalArgumentException("Cannot read an amount of money from '" + column.substring(start, end) + "'");
+            }
+            moneyList.add(Money.ofMinorUnits(Long.parseLong(column, currencyEnd + 1, end, 10), Currency.getInstance(column.substring(start, currencyEnd))));
+            start = end + 1;
+        }
+        return moneyList;
+    }
+}
@@ -0,0 +1,36 @@
+package com.jasonrharris.metrics;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Feeds {@link HibernateRequestCounts}: registered as the StatementInspector, which Hibernate calls as it prepares each SQL statement,
+ * and as an Integrator adding listeners for entity loads and lazy collection fetches. The same events the Hibernate statistics count.
+ */
+public class HibernateRequestCounting implements StatementInspector, Integrator {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String inspect(String sql) {
+        HibernateRequestCounts.statementPrepared();
+        return sql;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        EventListenerRegistry listeners = serviceRegistry.getService(EventListenerRegistry.class);
+        listeners.appendListeners(EventType.POST_LOAD, (PostLoadEventListener) event -> HibernateRequestCounts.entityLoaded());
+        listeners.appendListeners(EventType.INIT_COLLECTION, (InitializeCollectionEventListener) event -> HibernateRequestCounts.collectionFetched());
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.jasonrharris.metrics;
+
+/**
+ * What Hibernate did on behalf of the request being handled by the current thread. Nothing is counted outside of a request,
+ * so work done on other threads (e.g. the Order write-behind) is not attributed to any request.
+ */
+public final class HibernateRequestCounts {
+    private static final ThreadLocal<HibernateRequestCounts> CURRENT = new ThreadLocal<>();
+
+    private int statements;
+    private int entitiesLoaded;
+    private int collectionsFetched;
+
+    private HibernateRequestCounts() {
+    }
+
+    static void start() {
+        CURRENT.set(new HibernateRequestCounts());
+    }
+
+    /**
+     * @return the counts since start was called on this thread, or null if it was not
+     */
+    static HibernateRequestCounts finish() {
+        HibernateRequestCounts counts = CURRENT.get();
+        CURRENT.remove();
+        return counts;
+    }
+
+    static void statementPrepared() {
+        HibernateRequestCounts counts = CURRENT.get();
+        if (counts != null) {
+            counts.statements++;
+        }
+    }
+
+    static void entityLoaded() {
+        HibernateRequestCounts counts = CURRENT.get();
+        if (counts != null) {
+            counts.entitiesLoaded++;
+        }
+    }
+
+    static void collectionFetched() {
+        HibernateRequestCounts counts = CURRENT.get();
+        if (counts != null) {
+            counts.collectionsFetched++;
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public int getEntitiesLoaded() {
+        return entitiesLoaded;
+    }
+
+    public int getCollectionsFetched() {
+        return collectionsFetched;
+    }
+}
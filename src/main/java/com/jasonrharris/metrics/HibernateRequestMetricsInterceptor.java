@@ -0,0 +1,63 @@
+package com.jasonrharris.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records, per controller method, the SQL statements prepared and the entities and collections loaded while handling each request,
+ * as the distribution summaries hibernate.request.statements, hibernate.request.entities.loaded and hibernate.request.collections.fetched.
+ * Counting finishes after the response has been written, so lazy loading during serialisation is included.
+ */
+public class HibernateRequestMetricsInterceptor implements HandlerInterceptor {
+    private final MeterRegistry meterRegistry;
+    private final Map<Method, HandlerSummaries> summariesByHandler = new ConcurrentHashMap<>();
+
+    public HibernateRequestMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            HibernateRequestCounts.start();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        HibernateRequestCounts counts = HibernateRequestCounts.finish();
+        if (counts != null && handler instanceof HandlerMethod) {
+            HandlerMethod handlerMethod = (HandlerMethod) handler;
+            summariesByHandler.computeIfAbsent(handlerMethod.getMethod(),
+                    method -> new HandlerSummaries(meterRegistry, handlerMethod.getBeanType().getSimpleName() + "." + method.getName()))
+                    .record(counts);
+        }
+    }
+
+    private static class HandlerSummaries {
+        private final DistributionSummary statements;
+        private final DistributionSummary entitiesLoaded;
+        private final DistributionSummary collectionsFetched;
+
+        private HandlerSummaries(MeterRegistry meterRegistry, String handler) {
+            statements = DistributionSummary.builder("hibernate.request.statements").tag("handler", handler).register(meterRegistry);
+            entitiesLoaded = DistributionSummary.builder("hibernate.request.entities.loaded").tag("handler", handler).register(meterRegistry);
+            collectionsFetched = DistributionSummary.builder("hibernate.request.collections.fetched").tag("handler", handler).register(meterRegistry);
+        }
+
+        private void record(HibernateRequestCounts counts) {
+            statements.record(counts.getStatements());
+            entitiesLoaded.record(counts.getEntitiesLoaded());
+            collectionsFetched.record(counts.getCollectionsFetched());
+        }
+    }
+}
@@ -4,17 +4,28 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import com.jasonrharris.converters.MoneyListConverter;
+import com.jasonrharris.products.Money;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.*;
 
 @Entity(name="Order_")
+@Table(indexes = {@Index(name = "order_creation_date_time_idx", columnList = "creationDateTime"),
+        @Index(name = "order_buyer_key_idx", columnList = "buyerKey, creationDateTime, id")})
 public class Order {
+    private static final int CURRENCY_SLOTS = 4;
+
     @Id
-    @SequenceGenerator(name= "ORDER_SEQUENCE", sequenceName = "ORDER_SEQUENCE_ID", initialValue=1, allocationSize = 1)
+    @SequenceGenerator(name= "ORDER_SEQUENCE", sequenceName = "ORDER_SEQUENCE_ID", initialValue=1, allocationSize = 50)
     @GeneratedValue(strategy= GenerationType.AUTO, generator="ORDER_SEQUENCE")
     private final long id;
 
@@ -26,32 +37,138 @@ public class Order {
     @Column
     private final String buyersEmail;
 
+    /**
+     * The buyer's email address hashed by {@link #buyerKeyOf(String)}, so a buyer's Orders can be found through a narrow index.
+     * Only worked out when the Order is persisted, as Orders read by Hibernate and Jackson are built far more often than written.
+     */
+    @Column
+    private long buyerKey;
+
     @OneToMany(mappedBy = "parentOrder")
+    @BatchSize(size = 100)
     private final Set<OrderItem> orderItems;
 
     @Transient
     private BigDecimal totalAmount;
 
+    @Column
+    @Convert(converter = MoneyListConverter.class)
+    private List<Money> totals;
+
     public Order(long id, LocalDateTime creationDateTime, String buyersEmail, Set<OrderItem> orderItems) {
         this.id = id;
         this.creationDateTime = creationDateTime;
         this.buyersEmail = buyersEmail;
         this.orderItems = orderItems;
-        this.totalAmount = getTotalAmount(orderItems);
+        updateTotalAmount();
     }
 
     Order() {
         this(0L, LocalDateTime.now(), "", new HashSet<>());
     }
 
-    @PostLoad
-    @PostUpdate
+    /**
+     * Totals the Order per Currency from its items. The totals are stored with the Order when it is written, so this is only
+     * needed when the items change.
+     */
     public void updateTotalAmount(){
-        totalAmount = getTotalAmount(orderItems);
+        updateTotalAmount(orderItems);
     }
 
-    private BigDecimal getTotalAmount(@NotNull Set<OrderItem> orderItems) {
-        return orderItems.stream().map(OrderItem::getAmount).reduce(BigDecimal::add).orElse(BigDecimal.ZERO);
+    /**
+     * Totals the Order from new items that have not been added to it yet. New items have no ids, so identical lines would not
+     * all be kept in a Set.
+     */
+    public void updateTotalAmount(Collection<OrderItem> newOrderItems) {
+        totals = totalsOf(newOrderItems);
+        totalAmount = totalAmountOf(totals);
+    }
+
+    @PrePersist
+    void updateBuyerKey() {
+        buyerKey = buyerKeyOf(buyersEmail);
+    }
+
+    /*
+    Loading uses the stored totals rather than the items, so the items are not fetched just to total them. Orders written
+    before totals were stored have none, and are totalled from their items instead.
+     */
+    @PostLoad
+    void loadTotalAmount() {
+        if (totals == null) {
+            updateTotalAmount();
+        } else {
+            totalAmount = totalAmountOf(totals);
+        }
+    }
+
+    /**
+     * Sets the totals stored with an Order read other than through JPA, once its items have been added, as loading it would
+     */
+    public void loadTotals(List<Money> storedTotals) {
+        totals = storedTotals;
+        loadTotalAmount();
+    }
+
+    /**
+     * @return the amount of the only total, zero if there are none or null if there is more than one, as a sum across Currencies is meaningless
+     */
+    static BigDecimal totalAmountOf(List<Money> totals) {
+        if (totals.size() > 1) {
+            return null;
+        }
+        return totals.isEmpty() ? BigDecimal.ZERO : totals.get(0).getAmount();
+    }
+
+    /*
+    Items are summed as longs in minor units, into one slot per Currency found so far, without allocating per item.
+     */
+    static List<Money> totalsOf(@NotNull Collection<OrderItem> orderItems) {
+        Currency[] currencies = new Currency[CURRENCY_SLOTS];
+        long[] minorUnitTotals = new long[CURRENCY_SLOTS];
+        int currencyCount = 0;
+        for (OrderItem orderItem : orderItems) {
+            Currency itemCurrency = orderItem.getPrice().getCurrency();
+            int slot = 0;
+            while (slot < currencyCount && !currencies[slot].equals(itemCurrency)) {
+                slot++;
+            }
+            if (slot == currencyCount) {
+                if (currencyCount == currencies.length) {
+                    currencies = Arrays.copyOf(currencies, currencyCount * 2);
+                    minorUnitTotals = Arrays.copyOf(minorUnitTotals, currencyCount * 2);
+                }
+                currencies[slot] = itemCurrency;
+                currencyCount++;
+            }
+            minorUnitTotals[slot] = Math.addExact(minorUnitTotals[slot], orderItem.getAmountInMinorUnits());
+        }
+        List<Money> totals = new ArrayList<>(currencyCount);
+        for (int slot = 0; slot < currencyCount; slot++) {
+            totals.add(Money.ofMinorUnits(minorUnitTotals[slot], currencies[slot]));
+        }
+        totals.sort(Comparator.comparing(total -> total.getCurrency().getCurrencyCode()));
+        return totals;
+    }
+
+    /**
+     * @return the email address lower cased and without surrounding spaces, so addresses that only differ in those are the same buyer
+     */
+    public static String normaliseEmail(String buyersEmail) {
+        return buyersEmail == null ? "" : buyersEmail.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the first 8 bytes of the SHA-256 of the normalised email address. Different addresses can share a key, so the
+     * addresses must still be compared.
+     */
+    public static long buyerKeyOf(String buyersEmail) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normaliseEmail(buyersEmail).getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform must support SHA-256", e);
+        }
     }
 
     public long getId() {
@@ -70,10 +187,20 @@ public class Order {
         return orderItems;
     }
 
+    /**
+     * @return the total of all the items, or null if they are in more than one Currency
+     */
     public BigDecimal getTotalAmount() {
         return totalAmount;
     }
 
+    /**
+     * @return the total of the items in each Currency, ordered by Currency code
+     */
+    public List<Money> getTotals() {
+        return totals;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
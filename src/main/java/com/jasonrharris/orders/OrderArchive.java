@@ -0,0 +1,502 @@
+package com.jasonrharris.orders;
+
+import com.jasonrharris.products.Money;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The cold tier of Orders: whole months moved out of the database into {@link OrderArchiveSegment} files, which are read-only
+ * and read through memory mapped buffers, so old Orders no longer add to the size of the database or its indexes.
+ * <p>
+ * Archiving writes the months after the last segment (or the last detached month) up to a given month to a new segment, and then
+ * detaches them from the database with {@link OrderRetention}, which purges them. Queries read the Orders from both tiers through
+ * {@link Tiers}, which says which months to read from each, so an Order is read from exactly one of them while months move between
+ * them. The archived Orders come first, as every archived month is older than every month in the database.
+ * <p>
+ * The date the Orders are retained from is created and dropped with the schema, so segments of months the database has not
+ * detached belong to an earlier, since recreated, database and are deleted. With `orders.archive.after-months` set, months older than that are archived as each new month starts.
+ */
+@Service
+public class OrderArchive implements OrderWrittenListener, SmartLifecycle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderArchive.class);
+    static final int FETCH_SIZE = 1000;
+    private static final int ORDERS_PER_PRICE_LOOKUP = 500;
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final String SELECT_ORDERS_TO_ARCHIVE = "SELECT o.id, o.creation_date_time, o.buyers_email, oi.id, oi.price_id, oi.product_id, oi.quantity, p.amount, p.currency " +
+            "FROM order_ o LEFT JOIN order_item oi ON oi.order_id = o.id LEFT JOIN price p ON p.id = oi.price_id " +
+            "WHERE o.creation_date_time >= ? AND o.creation_date_time < ? ORDER BY o.creation_date_time, o.id, oi.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OrderRetention orderRetention;
+    private final PriceManagement priceManagement;
+    private final Path directory;
+    private final int archiveAfterMonths;
+    private final ExecutorService archiver = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-archiver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile List<OrderArchiveSegment> segments = List.of();
+    private volatile YearMonth latestMonth = YearMonth.from(OrderRetention.BEGINNING);
+    private volatile boolean running;
+
+    @Autowired
+    public OrderArchive(DataSource dataSource, OrderRetention orderRetention, PriceManagement priceManagement,
+                        @Value("${orders.archive.directory:/tmp/productsAndOrders-archive}") String directory,
+                        @Value("${orders.archive.after-months:0}") int archiveAfterMonths) {
+        if (archiveAfterMonths < 0) {
+            throw new IllegalArgumentException("after-months must not be negative");
+        }
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.orderRetention = orderRetention;
+        this.priceManagement = priceManagement;
+        this.directory = Paths.get(directory);
+        this.archiveAfterMonths = archiveAfterMonths;
+    }
+
+    /**
+     * The database's retained from date is read before the segments, and archiving adds a segment before detaching its months, so
+     * whenever the two are read the archived months reach at least as far as the detached ones.
+     *
+     * @return which months to read from each tier
+     */
+    public Tiers getTiers() {
+        LocalDateTime retainedFrom = orderRetention.getRetainedFrom();
+        List<OrderArchiveSegment> currentSegments = segments;
+        LocalDateTime archivedUntil = currentSegments.isEmpty() ? OrderRetention.BEGINNING : currentSegments.get(currentSegments.size() - 1).until();
+        return new Tiers(currentSegments, archivedUntil.isAfter(retainedFrom) ? archivedUntil : retainedFrom);
+    }
+
+    public List<OrderArchiveSegment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Moves every month before `month` that is still in the database to a new segment, and then detaches them from the database.
+     *
+     * @return all the segments
+     */
+    public synchronized List<OrderArchiveSegment> archiveBefore(YearMonth month) {
+        if (!month.isBefore(YearMonth.now().plusMonths(1))) {
+            throw new IllegalArgumentException("Only months before the current month can be archived, not " + month);
+        }
+        LocalDateTime from = getTiers().getHotFrom();
+        LocalDateTime until = month.atDay(1).atStartOfDay();
+        if (!until.isAfter(from)) {
+            return segments;
+        }
+        OrderArchiveSegment.Builder columns = readOrders(from, until);
+        if (columns.orderCount() > 0) {
+            Path path = directory.resolve("orders-" + YearMonth.from(from) + "-to-" + month + SEGMENT_SUFFIX);
+            try {
+                Files.createDirectories(directory);
+                OrderArchiveSegment segment = OrderArchiveSegment.write(path, from, until, columns);
+                List<OrderArchiveSegment> withSegment = new ArrayList<>(segments);
+                withSegment.add(segment);
+                segments = List.copyOf(withSegment);
+                LOGGER.info("Archived {} Orders from before {} to {}", segment.getOrders(), month, path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write the archive segment " + path, e);
+            }
+        }
+        orderRetention.detachBefore(month);
+        return segments;
+    }
+
+    private OrderArchiveSegment.Builder readOrders(LocalDateTime from, LocalDateTime until) {
+        OrderArchiveSegment.Builder columns = new OrderArchiveSegment.Builder();
+        long[] lastOrderId = {Long.MIN_VALUE};
+        jdbcTemplate.query(SELECT_ORDERS_TO_ARCHIVE, resultSet -> {
+            long orderId = resultSet.getLong(1);
+            if (orderId != lastOrderId[0]) {
+                columns.addOrder(orderId, resultSet.getTimestamp(2).toLocalDateTime(), resultSet.getString(3));
+                lastOrderId[0] = orderId;
+            }
+            long itemId = resultSet.getLong(4);
+            if (!resultSet.wasNull()) {
+                Currency currency = Currency.getInstance(resultSet.getString(9));
+                columns.addItem(itemId, resultSet.getLong(5), resultSet.getLong(6), Money.toMinorUnits(resultSet.getBigDecimal(8), currency),
+                        resultSet.getInt(7), currency);
+            }
+        }, Timestamp.valueOf(from), Timestamp.valueOf(until));
+        return columns;
+    }
+
+    /**
+     * The first Order of a month archives, with after-months set, the months that are now old enough.
+     */
+    @Override
+    public void orderWritten(LocalDateTime creationDateTime, Collection<OrderItem> orderItems) {
+        YearMonth month = YearMonth.from(creationDateTime);
+        if (month.isAfter(latestMonth)) {
+            latestMonth = month;
+            if (archiveAfterMonths > 0) {
+                archiver.execute(() -> archiveOldMonths(month));
+            }
+        }
+    }
+
+    private void archiveOldMonths(YearMonth currentMonth) {
+        try {
+            archiveBefore(currentMonth.minusMonths(archiveAfterMonths));
+        } catch (DataAccessException | UncheckedIOException e) {
+            LOGGER.warn("Could not archive the months more than {} before {}", archiveAfterMonths, currentMonth, e);
+        }
+    }
+
+    /*
+    Segments are kept while each follows on from the one before and the database has detached all of their months.
+     */
+    @Override
+    public synchronized void start() {
+        LocalDateTime retainedFrom = orderRetention.getRetainedFrom();
+        List<OrderArchiveSegment> opened = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> paths = Files.list(directory)) {
+                for (Path path : paths.filter(path -> path.toString().endsWith(SEGMENT_SUFFIX)).collect(Collectors.toList())) {
+                    opened.add(OrderArchiveSegment.open(path));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open the archive in " + directory, e);
+            }
+        }
+        opened.sort(Comparator.comparing(OrderArchiveSegment::from));
+        List<OrderArchiveSegment> kept = new ArrayList<>();
+        for (OrderArchiveSegment segment : opened) {
+            boolean followsOn = kept.isEmpty() || kept.get(kept.size() - 1).until().equals(segment.from());
+            if (followsOn && !segment.until().isAfter(retainedFrom)) {
+                kept.add(segment);
+            } else {
+                LOGGER.warn("Deleting {}, as the database has not detached its Orders", segment.path());
+                deleteQuietly(segment.path());
+            }
+        }
+        segments = List.copyOf(kept);
+        latestMonth = YearMonth.now();
+        running = true;
+        if (archiveAfterMonths > 0) {
+            archiver.execute(() -> archiveOldMonths(latestMonth));
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete {}", path, e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        archiver.shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /*
+    Starts after the retention (Integer.MAX_VALUE - 5), to check the segments against their retained from date, and before the
+    sales rollups are rebuilt (Integer.MAX_VALUE - 3) from the sales report, which reads the archive.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 4;
+    }
+
+    /**
+     * Called with each archived item of an Order, the items of each Order one after another.
+     */
+    @FunctionalInterface
+    public interface ArchivedItemConsumer {
+        void accept(long orderId, LocalDateTime creationDateTime, long productId, int quantity, long priceMinorUnits, Currency currency);
+    }
+
+    /**
+     * Which months of Orders are read from the archive and which from the database: everything before {@link #getHotFrom()} is
+     * archived (or detached and gone), and the rest is in the database. The archived Orders are read by the methods here.
+     */
+    public final class Tiers {
+        private final List<OrderArchiveSegment> archivedSegments;
+        private final LocalDateTime hotFrom;
+
+        private Tiers(List<OrderArchiveSegment> archivedSegments, LocalDateTime hotFrom) {
+            this.archivedSegments = archivedSegments;
+            this.hotFrom = hotFrom;
+        }
+
+        public LocalDateTime getHotFrom() {
+            return hotFrom;
+        }
+
+        /**
+         * @return whether the database could have Orders before `before`, so whether a query up to it need be run at all
+         */
+        public boolean hasHotBefore(LocalDateTime before) {
+            return before.isAfter(hotFrom);
+        }
+
+        /**
+         * For database queries whose lower bound is exclusive. Creation date times are stored to the microsecond, so Orders after a
+         * microsecond before the start of the database's months are those from it onwards.
+         *
+         * @return `after`, moved up to just before the first month in the database if it is earlier
+         */
+        public LocalDateTime hotAfter(LocalDateTime after) {
+            LocalDateTime justBeforeHot = hotFrom.minus(1, ChronoUnit.MICROS);
+            return after.isBefore(justBeforeHot) ? justBeforeHot : after;
+        }
+
+        /**
+         * For database queries whose lower bound is inclusive.
+         *
+         * @return `from`, moved up to the first month in the database if it is earlier
+         */
+        public LocalDateTime hotFrom(LocalDateTime from) {
+            return from.isBefore(hotFrom) ? hotFrom : from;
+        }
+
+        /**
+         * @param cursor          if not null, only Orders after it are read
+         * @param normalisedBuyer if not null, only the buyer's Orders are read
+         * @return up to `limit` archived Orders created after `after` and before `before`, by creation date time and id
+         */
+        public List<Order> findOrders(LocalDateTime after, LocalDateTime before, OrderCursor cursor, String normalisedBuyer, int limit) {
+            List<OrderArchiveSegment> orderSegments = new ArrayList<>();
+            List<Integer> orders = new ArrayList<>();
+            scan(after, before, cursor, normalisedBuyer, limit, (segment, order) -> {
+                orderSegments.add(segment);
+                orders.add(order);
+            });
+            return toOrders(orderSegments, orders);
+        }
+
+        /**
+         * As {@link #findOrders}, without the items, totalled from the archived Price amounts
+         */
+        public List<OrderHeader> findHeaders(LocalDateTime after, LocalDateTime before, OrderCursor cursor, String normalisedBuyer, int limit) {
+            List<OrderHeader> headers = new ArrayList<>();
+            scan(after, before, cursor, normalisedBuyer, limit, (segment, order) -> headers.add(new OrderHeader(segment.orderId(order),
+                    segment.creationDateTime(order), segment.buyersEmail(order), totalsOf(segment, order))));
+            return headers;
+        }
+
+        /**
+         * Passes on the archived Orders between the two dates as they are read, a few hundred at a time, so however many there are
+         * only those few hundred are held at once.
+         */
+        public void forEachOrder(LocalDateTime after, LocalDateTime before, Consumer<Order> orderConsumer) {
+            List<OrderArchiveSegment> orderSegments = new ArrayList<>();
+            List<Integer> orders = new ArrayList<>();
+            scan(after, before, null, null, Integer.MAX_VALUE, (segment, order) -> {
+                orderSegments.add(segment);
+                orders.add(order);
+                if (orders.size() == ORDERS_PER_PRICE_LOOKUP) {
+                    toOrders(orderSegments, orders).forEach(orderConsumer);
+                    orderSegments.clear();
+                    orders.clear();
+                }
+            });
+            toOrders(orderSegments, orders).forEach(orderConsumer);
+        }
+
+        /**
+         * Passes on each item of the archived Orders created from `from` up to `to`, read straight from the columns.
+         */
+        public void forEachItem(LocalDateTime from, LocalDateTime to, ArchivedItemConsumer itemConsumer) {
+            scan(from.minus(1, ChronoUnit.MICROS), to, null, null, Integer.MAX_VALUE, (segment, order) -> {
+                long orderId = segment.orderId(order);
+                LocalDateTime creationDateTime = segment.creationDateTime(order);
+                for (int item = segment.itemStart(order); item < segment.itemEnd(order); item++) {
+                    itemConsumer.accept(orderId, creationDateTime, segment.productId(item), segment.quantity(item), segment.priceMinorUnits(item), segment.currency(item));
+                }
+            });
+        }
+
+        /**
+         * Passes on a line for each item of the archived Orders between the two dates, and one without an item for each Order that has
+         * none. The same line is reused for each call, so must not be kept.
+         */
+        public void forEachLine(LocalDateTime after, LocalDateTime before, Consumer<ArchivedLine> lineConsumer) {
+            ArchivedLine line = new ArchivedLine();
+            scan(after, before, null, null, Integer.MAX_VALUE, (segment, order) -> {
+                line.segment = segment;
+                line.order = order;
+                if (segment.itemStart(order) == segment.itemEnd(order)) {
+                    line.item = ArchivedLine.NO_ITEM;
+                    lineConsumer.accept(line);
+                }
+                for (int item = segment.itemStart(order); item < segment.itemEnd(order); item++) {
+                    line.item = item;
+                    lineConsumer.accept(line);
+                }
+            });
+        }
+
+        /*
+        Each segment covering part of the range is binary searched for the first Order in it, and then read in order until the
+        range ends or enough Orders have been found.
+         */
+        private void scan(LocalDateTime after, LocalDateTime before, OrderCursor cursor, String normalisedBuyer, int limit, OrderConsumer orderConsumer) {
+            long afterEpochMicros = after == null ? Long.MIN_VALUE : OrderArchiveSegment.toEpochMicros(after);
+            long afterId = Long.MAX_VALUE;
+            if (cursor != null) {
+                long cursorEpochMicros = OrderArchiveSegment.toEpochMicros(cursor.getCreationDateTime());
+                if (cursorEpochMicros >= afterEpochMicros) {
+                    afterEpochMicros = cursorEpochMicros;
+                    afterId = cursor.getId();
+                }
+            }
+            long beforeEpochMicros = before == null ? Long.MAX_VALUE : OrderArchiveSegment.toEpochMicros(before);
+            int found = 0;
+            for (OrderArchiveSegment segment : archivedSegments) {
+                if (OrderArchiveSegment.toEpochMicros(segment.until()) <= afterEpochMicros || OrderArchiveSegment.toEpochMicros(segment.from()) >= beforeEpochMicros) {
+                    continue;
+                }
+                boolean[] buyerCodes = normalisedBuyer == null ? null : segment.buyerCodesOf(normalisedBuyer);
+                if (normalisedBuyer != null && buyerCodes == null) {
+                    continue;
+                }
+                for (int order = segment.firstOrderAfter(afterEpochMicros, afterId); order < segment.orderCount() && segment.creationEpochMicros(order) < beforeEpochMicros; order++) {
+                    if (buyerCodes == null || buyerCodes[segment.buyerCode(order)]) {
+                        orderConsumer.accept(segment, order);
+                        if (++found == limit) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        /*
+        The Prices are looked up from the Price cache, once for all the Orders.
+         */
+        private List<Order> toOrders(List<OrderArchiveSegment> orderSegments, List<Integer> orders) {
+            Set<Long> priceIds = new HashSet<>();
+            for (int i = 0; i < orders.size(); i++) {
+                OrderArchiveSegment segment = orderSegments.get(i);
+                for (int item = segment.itemStart(orders.get(i)); item < segment.itemEnd(orders.get(i)); item++) {
+                    priceIds.add(segment.priceId(item));
+                }
+            }
+            Map<Long, Price> prices = priceIds.isEmpty() ? Map.of() : priceManagement.getPricesById(priceIds);
+            List<Order> archivedOrders = new ArrayList<>(orders.size());
+            for (int i = 0; i < orders.size(); i++) {
+                OrderArchiveSegment segment = orderSegments.get(i);
+                int order = orders.get(i);
+                Set<OrderItem> orderItems = new HashSet<>();
+                Order archivedOrder = new Order(segment.orderId(order), segment.creationDateTime(order), segment.buyersEmail(order), orderItems);
+                for (int item = segment.itemStart(order); item < segment.itemEnd(order); item++) {
+                    Price price = prices.get(segment.priceId(item));
+                    orderItems.add(new OrderItem(segment.itemId(item), price, price.getProduct(), segment.quantity(item), archivedOrder));
+                }
+                archivedOrder.updateTotalAmount();
+                archivedOrders.add(archivedOrder);
+            }
+            return archivedOrders;
+        }
+
+        private List<Money> totalsOf(OrderArchiveSegment segment, int order) {
+            SortedMap<String, long[]> totals = new TreeMap<>();
+            for (int item = segment.itemStart(order); item < segment.itemEnd(order); item++) {
+                long amount = Math.multiplyExact(segment.priceMinorUnits(item), segment.quantity(item));
+                totals.computeIfAbsent(segment.currency(item).getCurrencyCode(), code -> new long[1])[0] += amount;
+            }
+            List<Money> totalList = new ArrayList<>(totals.size());
+            totals.forEach((code, total) -> totalList.add(Money.ofMinorUnits(total[0], Currency.getInstance(code))));
+            return totalList;
+        }
+    }
+
+    /**
+     * An item of an archived Order, read from the segment's columns as each value is asked for.
+     */
+    public static final class ArchivedLine {
+        private static final int NO_ITEM = -1;
+
+        private OrderArchiveSegment segment;
+        private int order;
+        private int item;
+
+        private ArchivedLine() {
+        }
+
+        public long getOrderId() {
+            return segment.orderId(order);
+        }
+
+        public LocalDateTime getCreationDateTime() {
+            return segment.creationDateTime(order);
+        }
+
+        public String getBuyersEmail() {
+            return segment.buyersEmail(order);
+        }
+
+        /**
+         * @return false for the only line of an Order without items, whose item values must not be read
+         */
+        public boolean hasItem() {
+            return item != NO_ITEM;
+        }
+
+        public long getItemId() {
+            return segment.itemId(item);
+        }
+
+        public long getProductId() {
+            return segment.productId(item);
+        }
+
+        public int getQuantity() {
+            return segment.quantity(item);
+        }
+
+        public long getPriceId() {
+            return segment.priceId(item);
+        }
+
+        public long getPriceMinorUnits() {
+            return segment.priceMinorUnits(item);
+        }
+
+        public Currency getCurrency() {
+            return segment.currency(item);
+        }
+    }
+
+    @FunctionalInterface
+    private interface OrderConsumer {
+        void accept(OrderArchiveSegment segment, int order);
+    }
+}
@@ -0,0 +1,391 @@
+package com.jasonrharris.orders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * The Orders of a run of whole months, written once to a file of columns and then read through a memory mapped buffer, so only
+ * the pages of the columns a query reads are loaded, and they are held by the operating system rather than the heap.
+ * <p>
+ * The Orders are sorted by creation date time and id, and each column is an array of primitives: the Orders' ids, creation date
+ * times (in microseconds from the epoch) and buyers, and the index of each Order's first item, followed by the items' ids, Price
+ * ids, Product ids, Price amounts (in minor units), quantities and Currencies. Buyers' email addresses and Currencies are stored
+ * once each, in dictionaries at the end of the file, and referred to by their index.
+ */
+public final class OrderArchiveSegment {
+    private static final int MAGIC = 0x4f524441;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    private static final long MAX_BYTES = Integer.MAX_VALUE;
+
+    private final Path path;
+    private final LocalDateTime from;
+    private final LocalDateTime until;
+    private final int orderCount;
+    private final int itemCount;
+    private final long bytes;
+    private final LongBuffer orderIds;
+    private final LongBuffer creationEpochMicros;
+    private final IntBuffer buyerCodes;
+    private final IntBuffer itemStarts;
+    private final LongBuffer itemIds;
+    private final LongBuffer priceIds;
+    private final LongBuffer productIds;
+    private final LongBuffer priceMinorUnits;
+    private final IntBuffer quantities;
+    private final IntBuffer currencyCodes;
+    private final String[] buyers;
+    private final Currency[] currencies;
+    private final Map<String, List<Integer>> buyerCodesByNormalisedEmail = new HashMap<>();
+
+    private OrderArchiveSegment(Path path, MappedByteBuffer mapped) {
+        ByteBuffer header = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IllegalArgumentException(path + " is not an Order archive segment");
+        }
+        this.path = path;
+        this.from = fromEpochMicros(header.getLong());
+        this.until = fromEpochMicros(header.getLong());
+        this.orderCount = header.getInt();
+        this.itemCount = header.getInt();
+        int buyerCount = header.getInt();
+        int currencyCount = header.getInt();
+        this.bytes = mapped.capacity();
+
+        long[] offsets = offsets(orderCount, itemCount);
+        this.orderIds = slice(mapped, offsets[0]).asLongBuffer();
+        this.creationEpochMicros = slice(mapped, offsets[1]).asLongBuffer();
+        this.itemIds = slice(mapped, offsets[2]).asLongBuffer();
+        this.priceIds = slice(mapped, offsets[3]).asLongBuffer();
+        this.productIds = slice(mapped, offsets[4]).asLongBuffer();
+        this.priceMinorUnits = slice(mapped, offsets[5]).asLongBuffer();
+        this.buyerCodes = slice(mapped, offsets[6]).asIntBuffer();
+        this.itemStarts = slice(mapped, offsets[7]).asIntBuffer();
+        this.quantities = slice(mapped, offsets[8]).asIntBuffer();
+        this.currencyCodes = slice(mapped, offsets[9]).asIntBuffer();
+
+        ByteBuffer dictionaries = slice(mapped, offsets[10]);
+        this.buyers = new String[buyerCount];
+        for (int code = 0; code < buyerCount; code++) {
+            buyers[code] = readString(dictionaries);
+            buyerCodesByNormalisedEmail.computeIfAbsent(Order.normaliseEmail(buyers[code]), email -> new ArrayList<>(1)).add(code);
+        }
+        this.currencies = new Currency[currencyCount];
+        for (int code = 0; code < currencyCount; code++) {
+            currencies[code] = Currency.getInstance(readString(dictionaries));
+        }
+    }
+
+    /**
+     * Maps an existing segment file.
+     */
+    static OrderArchiveSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new OrderArchiveSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the columns to a temporary file which is then moved into place, so a segment file is only ever seen complete.
+     */
+    static OrderArchiveSegment write(Path path, LocalDateTime from, LocalDateTime until, Builder columns) throws IOException {
+        byte[][] buyerBytes = encode(columns.buyers.keySet());
+        byte[][] currencyBytes = encode(columns.currencies.keySet());
+        long[] offsets = offsets(columns.orderCount, columns.itemCount);
+        long size = offsets[10] + dictionaryBytes(buyerBytes) + dictionaryBytes(currencyBytes);
+        if (size > MAX_BYTES) {
+            throw new IllegalArgumentException("A segment must be smaller than 2GB, so archive fewer months at once");
+        }
+
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            ByteBuffer header = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(toEpochMicros(from)).putLong(toEpochMicros(until))
+                    .putInt(columns.orderCount).putInt(columns.itemCount).putInt(buyerBytes.length).putInt(currencyBytes.length);
+            slice(mapped, offsets[0]).asLongBuffer().put(columns.orderIds, 0, columns.orderCount);
+            slice(mapped, offsets[1]).asLongBuffer().put(columns.creationEpochMicros, 0, columns.orderCount);
+            slice(mapped, offsets[2]).asLongBuffer().put(columns.itemIds, 0, columns.itemCount);
+            slice(mapped, offsets[3]).asLongBuffer().put(columns.priceIds, 0, columns.itemCount);
+            slice(mapped, offsets[4]).asLongBuffer().put(columns.productIds, 0, columns.itemCount);
+            slice(mapped, offsets[5]).asLongBuffer().put(columns.priceMinorUnits, 0, columns.itemCount);
+            slice(mapped, offsets[6]).asIntBuffer().put(columns.buyerCodes, 0, columns.orderCount);
+            IntBuffer itemStarts = slice(mapped, offsets[7]).asIntBuffer().put(columns.itemStarts, 0, columns.orderCount);
+            itemStarts.put(columns.itemCount);
+            slice(mapped, offsets[8]).asIntBuffer().put(columns.quantities, 0, columns.itemCount);
+            slice(mapped, offsets[9]).asIntBuffer().put(columns.currencyCodes, 0, columns.itemCount);
+            ByteBuffer dictionaries = slice(mapped, offsets[10]);
+            for (byte[] buyer : buyerBytes) {
+                dictionaries.putInt(buyer.length).put(buyer);
+            }
+            for (byte[] currency : currencyBytes) {
+                dictionaries.putInt(currency.length).put(currency);
+            }
+            mapped.force();
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(path);
+    }
+
+    /*
+    The start of each column, in the order they are written: the long columns first and then the int columns, each rounded up to
+    a multiple of 8 bytes, and finally the dictionaries.
+     */
+    private static long[] offsets(int orderCount, int itemCount) {
+        long[] lengths = {8L * orderCount, 8L * orderCount, 8L * itemCount, 8L * itemCount, 8L * itemCount, 8L * itemCount,
+                4L * orderCount, 4L * (orderCount + 1), 4L * itemCount, 4L * itemCount};
+        long[] offsets = new long[lengths.length + 1];
+        offsets[0] = HEADER_BYTES;
+        for (int column = 0; column < lengths.length; column++) {
+            offsets[column + 1] = offsets[column] + (lengths[column] + 7) / 8 * 8;
+        }
+        return offsets;
+    }
+
+    private static ByteBuffer slice(ByteBuffer mapped, long offset) {
+        return mapped.duplicate().position((int) offset).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[][] encode(Collection<String> strings) {
+        return strings.stream().map(string -> string.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+    }
+
+    private static long dictionaryBytes(byte[][] strings) {
+        long bytes = 0;
+        for (byte[] string : strings) {
+            bytes += 4 + string.length;
+        }
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long toEpochMicros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1000;
+    }
+
+    static LocalDateTime fromEpochMicros(long epochMicros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMicros, 1_000_000), Math.floorMod(epochMicros, 1_000_000) * 1000, ZoneOffset.UTC);
+    }
+
+    /**
+     * @return the index of the first Order after the given creation date time and id, found by a binary search of the sorted columns
+     */
+    int firstOrderAfter(long epochMicros, long id) {
+        int low = 0;
+        int high = orderCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long middleEpochMicros = creationEpochMicros.get(middle);
+            if (middleEpochMicros < epochMicros || (middleEpochMicros == epochMicros && orderIds.get(middle) <= id)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first Order created at or after the given date time
+     */
+    int firstOrderFrom(long epochMicros) {
+        return firstOrderAfter(epochMicros - 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return which buyer codes are the normalised email address, or null if it has no Orders in this segment
+     */
+    boolean[] buyerCodesOf(String normalisedEmail) {
+        List<Integer> codes = buyerCodesByNormalisedEmail.get(normalisedEmail);
+        if (codes == null) {
+            return null;
+        }
+        boolean[] matches = new boolean[buyers.length];
+        codes.forEach(code -> matches[code] = true);
+        return matches;
+    }
+
+    int orderCount() {
+        return orderCount;
+    }
+
+    long orderId(int order) {
+        return orderIds.get(order);
+    }
+
+    long creationEpochMicros(int order) {
+        return creationEpochMicros.get(order);
+    }
+
+    LocalDateTime creationDateTime(int order) {
+        return fromEpochMicros(creationEpochMicros.get(order));
+    }
+
+    int buyerCode(int order) {
+        return buyerCodes.get(order);
+    }
+
+    String buyersEmail(int order) {
+        return buyers[buyerCodes.get(order)];
+    }
+
+    int itemStart(int order) {
+        return itemStarts.get(order);
+    }
+
+    int itemEnd(int order) {
+        return itemStarts.get(order + 1);
+    }
+
+    long itemId(int item) {
+        return itemIds.get(item);
+    }
+
+    long priceId(int item) {
+        return priceIds.get(item);
+    }
+
+    long productId(int item) {
+        return productIds.get(item);
+    }
+
+    long priceMinorUnits(int item) {
+        return priceMinorUnits.get(item);
+    }
+
+    int quantity(int item) {
+        return quantities.get(item);
+    }
+
+    Currency currency(int item) {
+        return currencies[currencyCodes.get(item)];
+    }
+
+    Path path() {
+        return path;
+    }
+
+    LocalDateTime from() {
+        return from;
+    }
+
+    LocalDateTime until() {
+        return until;
+    }
+
+    /**
+     * @return the first month in the segment, as yyyy-MM
+     */
+    public String getFrom() {
+        return YearMonth.from(from).toString();
+    }
+
+    /**
+     * @return the month after the last month in the segment, as yyyy-MM
+     */
+    public String getUntil() {
+        return YearMonth.from(until).toString();
+    }
+
+    public int getOrders() {
+        return orderCount;
+    }
+
+    public int getItems() {
+        return itemCount;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderArchiveSegment{" +
+                "path=" + path +
+                ", orders=" + orderCount +
+                ", items=" + itemCount +
+                '}';
+    }
+
+    /**
+     * Collects the columns of a segment as Orders and their items are added, in creation date time and id order.
+     */
+    static final class Builder {
+        private int orderCount;
+        private int itemCount;
+        private long[] orderIds = new long[1024];
+        private long[] creationEpochMicros = new long[1024];
+        private int[] buyerCodes = new int[1024];
+        private int[] itemStarts = new int[1024];
+        private long[] itemIds = new long[1024];
+        private long[] priceIds = new long[1024];
+        private long[] productIds = new long[1024];
+        private long[] priceMinorUnits = new long[1024];
+        private int[] quantities = new int[1024];
+        private int[] currencyCodes = new int[1024];
+        private final Map<String, Integer> buyers = new LinkedHashMap<>();
+        private final Map<String, Integer> currencies = new LinkedHashMap<>();
+
+        void addOrder(long id, LocalDateTime creationDateTime, String buyersEmail) {
+            if (orderCount == orderIds.length) {
+                int length = orderCount * 2;
+                orderIds = Arrays.copyOf(orderIds, length);
+                creationEpochMicros = Arrays.copyOf(creationEpochMicros, length);
+                buyerCodes = Arrays.copyOf(buyerCodes, length);
+                itemStarts = Arrays.copyOf(itemStarts, length);
+            }
+            orderIds[orderCount] = id;
+            creationEpochMicros[orderCount] = toEpochMicros(creationDateTime);
+            buyerCodes[orderCount] = buyers.computeIfAbsent(buyersEmail == null ? "" : buyersEmail, buyer -> buyers.size());
+            itemStarts[orderCount] = itemCount;
+            orderCount++;
+        }
+
+        /**
+         * Adds an item to the last Order added.
+         */
+        void addItem(long id, long priceId, long productId, long priceMinorUnits, int quantity, Currency currency) {
+            if (itemCount == itemIds.length) {
+                int length = itemCount * 2;
+                itemIds = Arrays.copyOf(itemIds, length);
+                priceIds = Arrays.copyOf(priceIds, length);
+                productIds = Arrays.copyOf(productIds, length);
+                this.priceMinorUnits = Arrays.copyOf(this.priceMinorUnits, length);
+                quantities = Arrays.copyOf(quantities, length);
+                currencyCodes = Arrays.copyOf(currencyCodes, length);
+            }
+            itemIds[itemCount] = id;
+            priceIds[itemCount] = priceId;
+            productIds[itemCount] = productId;
+            this.priceMinorUnits[itemCount] = priceMinorUnits;
+            quantities[itemCount] = quantity;
+            currencyCodes[itemCount] = currencies.computeIfAbsent(currency.getCurrencyCode(), code -> currencies.size());
+            itemCount++;
+        }
+
+        int orderCount() {
+            return orderCount;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.jasonrharris.orders;
+
+/**
+ * The outcome of one Order within a batch submission. Index is the position of the Order within the submitted batch,
+ * starting at 0. Rejected Orders have no id and give the reason they were rejected.
+ */
+public final class OrderBatchResult {
+    public enum Status {CREATED, REJECTED}
+
+    private final int index;
+    private final Status status;
+    private final Long orderId;
+    private final String error;
+
+    private OrderBatchResult(int index, Status status, Long orderId, String error) {
+        this.index = index;
+        this.status = status;
+        this.orderId = orderId;
+        this.error = error;
+    }
+
+    @SuppressWarnings("unused") // needed by Jackson
+    OrderBatchResult() {
+        this(0, Status.REJECTED, null, null);
+    }
+
+    public static OrderBatchResult created(int index, long orderId) {
+        return new OrderBatchResult(index, Status.CREATED, orderId, null);
+    }
+
+    public static OrderBatchResult rejected(int index, String error) {
+        return new OrderBatchResult(index, Status.REJECTED, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderBatchResult{" +
+                "index=" + index +
+                ", status=" + status +
+                ", orderId=" + orderId +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,313 @@
+package com.jasonrharris.orders;
+
+import com.jasonrharris.products.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Exports the Orders between two dates as CSV, one line per item (and one for each Order without items), oldest first.
+ * <p>
+ * The database's lines are read by one query over order_, order_item, price and product, pulled from the JDBC cursor a fetch at a
+ * time, and the archive's straight from its columns, so no entities are created and nothing is held per line. Each value is written
+ * into one reused buffer, which is written out whenever it fills, so memory use is the same however many lines are exported.
+ */
+@Service
+public class OrderCsvExport {
+    static final int FETCH_SIZE = 10_000;
+    static final String HEADER = "order_id,creation_date_time,buyers_email,item_id,product_id,product_name,quantity,price_id,unit_price,currency,line_total";
+    private static final int ITEM_COLUMNS = 8;
+    private static final int PRODUCT_IDS_PER_QUERY = 1000;
+
+    private static final String SELECT_LINES = "SELECT o.id, o.creation_date_time, o.buyers_email, oi.id, oi.product_id, pr.name, oi.quantity, oi.price_id, p.amount, p.currency " +
+            "FROM order_ o LEFT JOIN order_item oi ON oi.order_id = o.id LEFT JOIN price p ON p.id = oi.price_id LEFT JOIN product pr ON pr.id = oi.product_id " +
+            "WHERE o.creation_date_time > ? AND o.creation_date_time < ? ORDER BY o.creation_date_time, o.id, oi.id";
+    private static final String SELECT_PRODUCT_NAMES = "SELECT id, name FROM product WHERE id IN (:ids)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final OrderArchive orderArchive;
+
+    public OrderCsvExport(@Autowired DataSource dataSource, @Autowired OrderArchive orderArchive) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(new JdbcTemplate(dataSource));
+        this.orderArchive = orderArchive;
+    }
+
+    /**
+     * Writes the header and then the lines of the Orders created after `after` and before `before`. The output stream is flushed
+     * but not closed.
+     */
+    public void export(LocalDateTime after, LocalDateTime before, OutputStream outputStream) {
+        CsvWriter csv = new CsvWriter(outputStream);
+        csv.writeAscii(HEADER).endLine();
+
+        OrderArchive.Tiers tiers = orderArchive.getTiers();
+        Map<Long, String> archivedProductNames = findArchivedProductNames(tiers, after, before);
+        tiers.forEachLine(after, before, line -> writeArchivedLine(csv, line, archivedProductNames));
+        if (tiers.hasHotBefore(before)) {
+            jdbcTemplate.query(SELECT_LINES, resultSet -> {
+                writeLine(csv, resultSet);
+            }, Timestamp.valueOf(tiers.hotAfter(after)), Timestamp.valueOf(before));
+        }
+        csv.flush();
+    }
+
+    /*
+    The archive has no Product names, so the names of the Products in its lines are read first, a thousand at a time.
+     */
+    private Map<Long, String> findArchivedProductNames(OrderArchive.Tiers tiers, LocalDateTime after, LocalDateTime before) {
+        Set<Long> productIds = new HashSet<>();
+        tiers.forEachLine(after, before, line -> {
+            if (line.hasItem()) {
+                productIds.add(line.getProductId());
+            }
+        });
+        Map<Long, String> names = new HashMap<>(productIds.size() * 2);
+        List<Long> ids = new ArrayList<>(productIds);
+        for (int from = 0; from < ids.size(); from += PRODUCT_IDS_PER_QUERY) {
+            namedParameterJdbcTemplate.query(SELECT_PRODUCT_NAMES, Map.of("ids", ids.subList(from, Math.min(from + PRODUCT_IDS_PER_QUERY, ids.size()))),
+                    resultSet -> {
+                        names.put(resultSet.getLong(1), resultSet.getString(2));
+                    });
+        }
+        return names;
+    }
+
+    private static void writeArchivedLine(CsvWriter csv, OrderArchive.ArchivedLine line, Map<Long, String> productNames) {
+        csv.writeLong(line.getOrderId()).comma().writeDateTime(line.getCreationDateTime()).comma().writeText(line.getBuyersEmail()).comma();
+        if (!line.hasItem()) {
+            csv.writeEmptyColumns(ITEM_COLUMNS).endLine();
+            return;
+        }
+        writeItem(csv, line.getItemId(), line.getProductId(), productNames.get(line.getProductId()), line.getQuantity(), line.getPriceId(),
+                line.getPriceMinorUnits(), line.getCurrency());
+    }
+
+    private static void writeLine(CsvWriter csv, ResultSet resultSet) throws SQLException {
+        csv.writeLong(resultSet.getLong(1)).comma().writeDateTime(resultSet.getTimestamp(2).toLocalDateTime()).comma().writeText(resultSet.getString(3)).comma();
+        long itemId = resultSet.getLong(4);
+        if (resultSet.wasNull()) {
+            csv.writeEmptyColumns(ITEM_COLUMNS).endLine();
+            return;
+        }
+        Currency currency = Currency.getInstance(resultSet.getString(10));
+        writeItem(csv, itemId, resultSet.getLong(5), resultSet.getString(6), resultSet.getInt(7), resultSet.getLong(8),
+                Money.toMinorUnits(resultSet.getBigDecimal(9), currency), currency);
+    }
+
+    private static void writeItem(CsvWriter csv, long itemId, long productId, String productName, int quantity, long priceId, long priceMinorUnits, Currency currency) {
+        int fractionDigits = Math.max(0, currency.getDefaultFractionDigits());
+        csv.writeLong(itemId).comma().writeLong(productId).comma().writeText(productName).comma().writeLong(quantity).comma().writeLong(priceId).comma()
+                .writeAmount(priceMinorUnits, fractionDigits).comma().writeAscii(currency.getCurrencyCode()).comma()
+                .writeAmount(Math.multiplyExact(priceMinorUnits, quantity), fractionDigits).endLine();
+    }
+
+    /**
+     * Encodes CSV values straight into a byte buffer, as UTF-8, without creating a String per value. Text is quoted only when it
+     * contains a comma, quote or line break.
+     */
+    static final class CsvWriter {
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private static final int MAX_BYTES_PER_CHAR = 3;
+        private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L};
+
+        private final OutputStream outputStream;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final byte[] digits = new byte[20];
+        private int length;
+
+        CsvWriter(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        CsvWriter comma() {
+            ensureSpace(1);
+            buffer[length++] = ',';
+            return this;
+        }
+
+        CsvWriter endLine() {
+            ensureSpace(1);
+            buffer[length++] = '\n';
+            return this;
+        }
+
+        CsvWriter writeEmptyColumns(int columns) {
+            for (int column = 1; column < columns; column++) {
+                comma();
+            }
+            return this;
+        }
+
+        /**
+         * Only for text known to be ASCII without anything needing quotes, such as Currency codes
+         */
+        CsvWriter writeAscii(String text) {
+            ensureSpace(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                buffer[length++] = (byte) text.charAt(i);
+            }
+            return this;
+        }
+
+        CsvWriter writeLong(long value) {
+            ensureSpace(20);
+            if (value == Long.MIN_VALUE) {
+                return writeAscii(Long.toString(value));
+            }
+            if (value < 0) {
+                buffer[length++] = '-';
+                value = -value;
+            }
+            int digitCount = 0;
+            do {
+                digits[digitCount++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            while (digitCount > 0) {
+                buffer[length++] = digits[--digitCount];
+            }
+            return this;
+        }
+
+        /**
+         * Writes an amount held in minor units as a decimal with the Currency's number of fraction digits, such as 1999 as 19.99
+         */
+        CsvWriter writeAmount(long minorUnits, int fractionDigits) {
+            if (fractionDigits == 0) {
+                return writeLong(minorUnits);
+            }
+            long scale = POWERS_OF_TEN[fractionDigits];
+            if (minorUnits < 0) {
+                ensureSpace(1);
+                buffer[length++] = '-';
+            }
+            long fraction = Math.abs(minorUnits % scale);
+            writeLong(Math.abs(minorUnits / scale));
+            ensureSpace(1 + fractionDigits);
+            buffer[length++] = '.';
+            for (int digit = fractionDigits - 1; digit >= 0; digit--) {
+                buffer[length++] = (byte) ('0' + fraction / POWERS_OF_TEN[digit] % 10);
+            }
+            return this;
+        }
+
+        /**
+         * Writes the date time as ISO yyyy-MM-ddTHH:mm:ss, with six fraction digits if it has any
+         */
+        CsvWriter writeDateTime(LocalDateTime dateTime) {
+            ensureSpace(26);
+            writeDigits(dateTime.getYear(), 4);
+            buffer[length++] = '-';
+            writeDigits(dateTime.getMonthValue(), 2);
+            buffer[length++] = '-';
+            writeDigits(dateTime.getDayOfMonth(), 2);
+            buffer[length++] = 'T';
+            writeDigits(dateTime.getHour(), 2);
+            buffer[length++] = ':';
+            writeDigits(dateTime.getMinute(), 2);
+            buffer[length++] = ':';
+            writeDigits(dateTime.getSecond(), 2);
+            if (dateTime.getNano() != 0) {
+                buffer[length++] = '.';
+                writeDigits(dateTime.getNano() / 1000, 6);
+            }
+            return this;
+        }
+
+        private void writeDigits(int value, int width) {
+            for (int digit = width - 1; digit >= 0; digit--) {
+                buffer[length++] = (byte) ('0' + value / (int) POWERS_OF_TEN[digit] % 10);
+            }
+        }
+
+        /**
+         * Writes nothing for null, so null and empty text are both an empty value
+         */
+        CsvWriter writeText(String text) {
+            if (text == null) {
+                return this;
+            }
+            boolean quoted = needsQuotes(text);
+            if (quoted) {
+                ensureSpace(1);
+                buffer[length++] = '"';
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char character = text.charAt(i);
+                ensureSpace(MAX_BYTES_PER_CHAR + 1);
+                if (character < 0x80) {
+                    if (character == '"') {
+                        buffer[length++] = '"';
+                    }
+                    buffer[length++] = (byte) character;
+                } else if (character < 0x800) {
+                    buffer[length++] = (byte) (0xc0 | character >> 6);
+                    buffer[length++] = (byte) (0x80 | character & 0x3f);
+                } else if (Character.isHighSurrogate(character) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(character, text.charAt(++i));
+                    buffer[length++] = (byte) (0xf0 | codePoint >> 18);
+                    buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    buffer[length++] = (byte) (0x80 | codePoint & 0x3f);
+                } else {
+                    buffer[length++] = (byte) (0xe0 | character >> 12);
+                    buffer[length++] = (byte) (0x80 | character >> 6 & 0x3f);
+                    buffer[length++] = (byte) (0x80 | character & 0x3f);
+                }
+            }
+            if (quoted) {
+                ensureSpace(1);
+                buffer[length++] = '"';
+            }
+            return this;
+        }
+
+        private static boolean needsQuotes(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                char character = text.charAt(i);
+                if (character == ',' || character == '"' || character == '\n' || character == '\r') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void ensureSpace(int bytes) {
+            if (length + bytes > buffer.length) {
+                writeBuffer();
+            }
+        }
+
+        private void writeBuffer() {
+            try {
+                outputStream.write(buffer, 0, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            length = 0;
+        }
+
+        void flush() {
+            writeBuffer();
+            try {
+                outputStream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jasonrharris.orders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * A keyset position within a list of Orders sorted by creationDateTime then id. It is handed to clients as an opaque,
+ * URL safe token so that the next page can carry on from the last Order returned, rather than using an offset.
+ */
+public final class OrderCursor {
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime creationDateTime;
+    private final long id;
+
+    public OrderCursor(LocalDateTime creationDateTime, long id) {
+        this.creationDateTime = creationDateTime;
+        this.id = id;
+    }
+
+    public static OrderCursor after(Order order) {
+        return new OrderCursor(order.getCreationDateTime(), order.getId());
+    }
+
+    public static OrderCursor after(OrderHeader orderHeader) {
+        return new OrderCursor(orderHeader.getCreationDateTime(), orderHeader.getId());
+    }
+
+    public static OrderCursor decode(String token) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separatorIndex = decoded.indexOf(SEPARATOR);
+            return new OrderCursor(LocalDateTime.parse(decoded.substring(0, separatorIndex)), Long.parseLong(decoded.substring(separatorIndex + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid order cursor " + token, e);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((creationDateTime + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public LocalDateTime getCreationDateTime() {
+        return creationDateTime;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OrderCursor that = (OrderCursor) o;
+        return id == that.id &&
+                creationDateTime.equals(that.creationDateTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(creationDateTime, id);
+    }
+
+    @Override
+    public String toString() {
+        return "OrderCursor{" +
+                "creationDateTime=" + creationDateTime +
+                ", id=" + id +
+                '}';
+    }
+}
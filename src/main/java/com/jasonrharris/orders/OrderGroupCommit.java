@@ -0,0 +1,219 @@
+package com.jasonrharris.orders;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.incrementer.H2SequenceMaxValueIncrementer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Group commit for new Orders, enabled with `orders.group-commit.enabled=true`. Unlike write-behind, each request still waits for
+ * its Order to be committed, but the Orders of concurrent requests are committed together: a single committer thread takes every
+ * Order that arrived while it was committing the last group (up to `max-orders`), optionally waits up to `max-wait` for more, and
+ * inserts them with one JDBC batch per table in a single transaction.
+ * <p>
+ * On shutdown no more Orders are accepted, and those already accepted are committed before the database is closed.
+ */
+@Service
+@ConditionalOnProperty(name = "orders.group-commit.enabled", havingValue = "true")
+public class OrderGroupCommit implements SmartLifecycle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderGroupCommit.class);
+    private static final int ID_BLOCK_SIZE = 50;
+    private static final long POLL_MILLIS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SequenceIdAllocator orderIds;
+    private final SequenceIdAllocator orderItemIds;
+    private final BlockingQueue<PendingOrder> queue = new LinkedBlockingQueue<>();
+    private final int maxOrders;
+    private final long maxWaitNanos;
+    private final List<OrderWrittenListener> orderWrittenListeners;
+
+    private final ReadWriteLock acceptingLock = new ReentrantReadWriteLock();
+    private volatile boolean accepting;
+    private volatile boolean running;
+    private Thread committer;
+
+    @Autowired
+    public OrderGroupCommit(JdbcTemplate jdbcTemplate, DataSource dataSource, TransactionTemplate transactionTemplate,
+                            @Value("${orders.group-commit.max-orders:200}") int maxOrders,
+                            @Value("${orders.group-commit.max-wait:0ms}") Duration maxWait,
+                            List<OrderWrittenListener> orderWrittenListeners) {
+        this(jdbcTemplate, transactionTemplate,
+                new SequenceIdAllocator(new H2SequenceMaxValueIncrementer(dataSource, "ORDER_SEQUENCE_ID"), ID_BLOCK_SIZE),
+                new SequenceIdAllocator(new H2SequenceMaxValueIncrementer(dataSource, "ORDER_ITEM_SEQUENCE_ID"), ID_BLOCK_SIZE),
+                maxOrders, maxWait, orderWrittenListeners);
+    }
+
+    OrderGroupCommit(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, SequenceIdAllocator orderIds, SequenceIdAllocator orderItemIds,
+                     int maxOrders, Duration maxWait, List<OrderWrittenListener> orderWrittenListeners) {
+        if (maxOrders < 1 || maxWait.isNegative()) {
+            throw new IllegalArgumentException("max-orders must be positive and max-wait must not be negative");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.orderIds = orderIds;
+        this.orderItemIds = orderItemIds;
+        this.maxOrders = maxOrders;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.orderWrittenListeners = orderWrittenListeners;
+    }
+
+    /**
+     * Hands an Order that has already been validated and priced to the committer.
+     *
+     * @return the Order as it will be written, with its ids, completed once it has been committed (or exceptionally if it could not
+     * be), or empty if the application is shutting down
+     */
+    public Optional<CompletableFuture<Order>> submit(Order validOrder) {
+        acceptingLock.readLock().lock();
+        try {
+            if (!accepting) {
+                return Optional.empty();
+            }
+            PendingOrder pendingOrder = new PendingOrder(OrderRows.of(validOrder, orderIds, orderItemIds));
+            queue.add(pendingOrder);
+            return Optional.of(pendingOrder.committed);
+        } finally {
+            acceptingLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+        accepting = true;
+        committer = new Thread(this::commitUntilStoppedAndDrained, "order-group-commit");
+        committer.start();
+    }
+
+    /**
+     * Refuses new Orders, waiting for any submissions in progress, then waits for every accepted Order to be committed.
+     */
+    @Override
+    public synchronized void stop() {
+        acceptingLock.writeLock().lock();
+        try {
+            accepting = false;
+        } finally {
+            acceptingLock.writeLock().unlock();
+        }
+        running = false;
+        if (committer == null) {
+            return;
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /*
+    Stops, and so commits the Orders still waiting, before the sales rollups (Integer.MAX_VALUE - 3) stop and flush, so those Orders
+    are in their last flush. The web server only stops once every lifecycle bean has, so OrderWriter commits any Order posted after
+    this has stopped on its own.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 2;
+    }
+
+    private void commitUntilStoppedAndDrained() {
+        List<PendingOrder> group = new ArrayList<>(maxOrders);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                fill(group);
+                commit(group);
+                group.clear();
+            } catch (InterruptedException e) {
+                LOGGER.warn("Order group commit interrupted with {} orders still queued", queue.size());
+                group.addAll(queue);
+                group.forEach(pendingOrder -> pendingOrder.committed.completeExceptionally(e));
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /*
+    Takes everything queued while the last group was committed, then waits up to max-wait for the group to fill.
+     */
+    private void fill(List<PendingOrder> group) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        queue.drainTo(group, maxOrders - group.size());
+        while (group.size() < maxOrders) {
+            long remainingNanos = deadline - System.nanoTime();
+            PendingOrder next = remainingNanos > 0 ? queue.poll(remainingNanos, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                return;
+            }
+            group.add(next);
+            queue.drainTo(group, maxOrders - group.size());
+        }
+    }
+
+    /*
+    A group that breaks a constraint is split up so only the offending Orders fail. Any other failure fails the whole group, as
+    its requests are waiting for an answer.
+     */
+    private void commit(List<PendingOrder> group) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> OrderRows.insert(jdbcTemplate,
+                    group.stream().map(pendingOrder -> pendingOrder.rows).collect(Collectors.toList())));
+        } catch (DataIntegrityViolationException e) {
+            if (group.size() == 1) {
+                group.get(0).committed.completeExceptionally(e);
+            } else {
+                group.forEach(pendingOrder -> commit(List.of(pendingOrder)));
+            }
+            return;
+        } catch (RuntimeException e) {
+            group.forEach(pendingOrder -> pendingOrder.committed.completeExceptionally(e));
+            return;
+        }
+        for (PendingOrder pendingOrder : group) {
+            orderWrittenListeners.forEach(listener -> listener.orderWritten(pendingOrder.rows.creationDateTime, pendingOrder.rows.pricedItems));
+            pendingOrder.committed.complete(pendingOrder.rows.toOrder());
+        }
+    }
+
+    private static class PendingOrder {
+        private final OrderRows rows;
+        private final CompletableFuture<Order> committed = new CompletableFuture<>();
+
+        private PendingOrder(OrderRows rows) {
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.jasonrharris.orders;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import com.jasonrharris.products.Money;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * An Order without its items, read from the Order's own row including its stored totals.
+ */
+public class OrderHeader {
+    private final long id;
+    private final LocalDateTime creationDateTime;
+    private final String buyersEmail;
+    private final List<Money> totals;
+
+    public OrderHeader(long id, LocalDateTime creationDateTime, String buyersEmail, List<Money> totals) {
+        this.id = id;
+        this.creationDateTime = creationDateTime;
+        this.buyersEmail = buyersEmail;
+        this.totals = totals == null ? List.of() : totals;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    public LocalDateTime getCreationDateTime() {
+        return creationDateTime;
+    }
+
+    public String getBuyersEmail() {
+        return buyersEmail;
+    }
+
+    /**
+     * @return the total of all the items, or null if they are in more than one Currency
+     */
+    public BigDecimal getTotalAmount() {
+        return Order.totalAmountOf(totals);
+    }
+
+    /**
+     * @return the total of the items in each Currency, ordered by Currency code
+     */
+    public List<Money> getTotals() {
+        return totals;
+    }
+}
@@ -0,0 +1,31 @@
+package com.jasonrharris.orders;
+
+import java.util.List;
+
+/**
+ * One page of Order headers, plus the cursor needed to fetch the next page. The cursor is null on the last page.
+ */
+public final class OrderHeaderPage {
+    private final List<OrderHeader> orderHeaders;
+    private final String nextCursor;
+
+    public OrderHeaderPage(List<OrderHeader> orderHeaders, String nextCursor) {
+        this.orderHeaders = orderHeaders;
+        this.nextCursor = nextCursor;
+    }
+
+    public static OrderHeaderPage of(List<OrderHeader> orderHeaders, int limit) {
+        if (orderHeaders.size() < limit) {
+            return new OrderHeaderPage(orderHeaders, null);
+        }
+        return new OrderHeaderPage(orderHeaders, OrderCursor.after(orderHeaders.get(orderHeaders.size() - 1)).encode());
+    }
+
+    public List<OrderHeader> getOrderHeaders() {
+        return orderHeaders;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -2,12 +2,12 @@ package com.jasonrharris.orders;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.jasonrharris.products.Money;
 import com.jasonrharris.products.Price;
 import com.jasonrharris.products.Product;
 import org.aspectj.weaver.ast.Or;
 
 import javax.persistence.*;
-import java.math.BigDecimal;
 import java.util.Objects;
 
 @Entity
@@ -15,7 +15,7 @@ public class OrderItem {
     private static final int UNSET_QUANTITY = -1;
 
     @Id
-    @SequenceGenerator(name= "ORDER_ITEM_SEQUENCE", sequenceName = "ORDER_ITEM_SEQUENCE_ID", initialValue=1, allocationSize = 1)
+    @SequenceGenerator(name= "ORDER_ITEM_SEQUENCE", sequenceName = "ORDER_ITEM_SEQUENCE_ID", initialValue=1, allocationSize = 50)
     @GeneratedValue(strategy=GenerationType.AUTO, generator="ORDER_ITEM_SEQUENCE")
     private final long id;
 
@@ -54,8 +54,16 @@ public class OrderItem {
         return parentOrder;
     }
 
-    BigDecimal getAmount() {
-        return price.getAmount().multiply(new BigDecimal(quantity));
+    Money getAmount() {
+        return Money.ofMinorUnits(getAmountInMinorUnits(), price.getCurrency());
+    }
+
+    /**
+     * @return the Price times the quantity, in the minor units of the Price's Currency
+     */
+    @JsonIgnore
+    public long getAmountInMinorUnits() {
+        return Math.multiplyExact(price.getAmountInMinorUnits(), quantity);
     }
 
     @Override
@@ -0,0 +1,209 @@
+package com.jasonrharris.orders;
+
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
+import com.jasonrharris.products.Product;
+import com.jasonrharris.repositories.OrderItemRepository;
+import com.jasonrharris.repositories.OrderRepository;
+import com.jasonrharris.repositories.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Adds Orders in bulk. Orders are taken in chunks: the Prices and Products referenced by a chunk are looked up once,
+ * and the chunk's Orders and Order Items are inserted as JDBC batches in a single transaction.
+ */
+@Service
+public class OrderManagement {
+    static final int CHUNK_SIZE = 500;
+
+    private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final ProductRepository productRepository;
+    private final PriceManagement priceManagement;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final List<OrderWrittenListener> orderWrittenListeners;
+
+    public OrderManagement(@Autowired OrderRepository orderRepository, @Autowired OrderItemRepository orderItemRepository, @Autowired ProductRepository productRepository,
+                           @Autowired PriceManagement priceManagement, @Autowired TransactionTemplate transactionTemplate, @Autowired EntityManager entityManager,
+                           @Autowired List<OrderWrittenListener> orderWrittenListeners) {
+        this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.productRepository = productRepository;
+        this.priceManagement = priceManagement;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.orderWrittenListeners = orderWrittenListeners;
+    }
+
+    /**
+     * Adds each of the requested Orders, reading them a chunk at a time. Items are priced by the id of their Price only,
+     * any other Price details sent are ignored. An Order that cannot be added is rejected without affecting the others.
+     *
+     * @return a result for every requested Order, in the order they were requested
+     */
+    public List<OrderBatchResult> addOrders(Iterator<Order> requestedOrders) {
+        List<OrderBatchResult> results = new ArrayList<>();
+        List<Order> chunk = new ArrayList<>(CHUNK_SIZE);
+        while (requestedOrders.hasNext()) {
+            chunk.add(requestedOrders.next());
+            if (chunk.size() == CHUNK_SIZE) {
+                results.addAll(addChunk(chunk, results.size()));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(addChunk(chunk, results.size()));
+        }
+        return results;
+    }
+
+    /**
+     * Checks a single requested Order using only the cached Prices: a Product exists if it is the Product of one of its Prices,
+     * and each Price must be the one in effect for its Product now.
+     *
+     * @return why the Order cannot be added, if it cannot
+     */
+    public Optional<String> findInvalidReason(Order requestedOrder) {
+        if (requestedOrder == null || requestedOrder.getOrderItems() == null) {
+            return findInvalidReason(requestedOrder, Map.of(), Map.of());
+        }
+        Map<Long, Price> prices = priceManagement.getPricesById(requestedOrder.getOrderItems().stream()
+                .filter(item -> item != null && item.getPrice() != null).map(item -> item.getPrice().getId()).collect(Collectors.toSet()));
+        return findInvalidReason(requestedOrder, prices, productsOf(prices));
+    }
+
+    private static Map<Long, Product> productsOf(Map<Long, Price> prices) {
+        return prices.values().stream().map(Price::getProduct)
+                .collect(Collectors.toMap(Product::getId, Function.identity(), (product, sameProduct) -> product));
+    }
+
+    private List<OrderBatchResult> addChunk(List<Order> requestedOrders, int firstIndex) {
+        List<OrderItem> requestedItems = requestedOrders.stream()
+                .filter(order -> order != null && order.getOrderItems() != null)
+                .flatMap(order -> order.getOrderItems().stream())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        Map<Long, Price> prices = priceManagement.getPricesById(requestedItems.stream()
+                .filter(item -> item.getPrice() != null).map(item -> item.getPrice().getId()).collect(Collectors.toSet()));
+        Map<Long, Product> products = productRepository.findAllById(requestedItems.stream()
+                .filter(item -> item.getProduct() != null).map(item -> item.getProduct().getId()).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        OrderBatchResult[] results = new OrderBatchResult[requestedOrders.size()];
+        List<ValidOrder> validOrders = new ArrayList<>();
+        for (int i = 0; i < requestedOrders.size(); i++) {
+            Order requestedOrder = requestedOrders.get(i);
+            Optional<String> invalidReason = findInvalidReason(requestedOrder, prices, products);
+            if (invalidReason.isPresent()) {
+                results[i] = OrderBatchResult.rejected(firstIndex + i, invalidReason.get());
+            } else {
+                validOrders.add(new ValidOrder(i, requestedOrder));
+            }
+        }
+
+        try {
+            if (!validOrders.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> insert(validOrders, prices, products));
+            }
+        } catch (DataAccessException | TransactionException | PersistenceException e) {
+            // retry one at a time so that a single failing Order does not reject the rest of the chunk
+            entityManager.clear();
+            for (ValidOrder validOrder : validOrders) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(List.of(validOrder), prices, products));
+                } catch (DataAccessException | TransactionException | PersistenceException orderException) {
+                    entityManager.clear();
+                    validOrder.savedOrder = null;
+                    results[validOrder.index] = OrderBatchResult.rejected(firstIndex + validOrder.index, orderException.getMessage());
+                }
+            }
+        }
+
+        for (ValidOrder validOrder : validOrders) {
+            if (validOrder.savedOrder != null) {
+                results[validOrder.index] = OrderBatchResult.created(firstIndex + validOrder.index, validOrder.savedOrder.getId());
+                orderWrittenListeners.forEach(listener -> listener.orderWritten(validOrder.savedOrder.getCreationDateTime(), validOrder.savedItems));
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private Optional<String> findInvalidReason(Order requestedOrder, Map<Long, Price> prices, Map<Long, Product> products) {
+        LocalDateTime orderTime = LocalDateTime.now();
+        if (requestedOrder == null || requestedOrder.getOrderItems() == null || requestedOrder.getOrderItems().isEmpty()) {
+            return Optional.of("An Order must have at least one Order Item");
+        }
+        for (OrderItem item : requestedOrder.getOrderItems()) {
+            if (item == null || item.getPrice() == null || item.getProduct() == null) {
+                return Optional.of("Every Order Item needs a Price and a Product");
+            }
+            if (item.getQuantity() < 1) {
+                return Optional.of("Order Item quantities must be at least 1");
+            }
+            Price price = prices.get(item.getPrice().getId());
+            if (price == null) {
+                return Optional.of("No price has Id " + item.getPrice().getId());
+            }
+            if (!products.containsKey(item.getProduct().getId())) {
+                return Optional.of("No product has Id " + item.getProduct().getId());
+            }
+            if (price.getProduct().getId() != item.getProduct().getId()) {
+                return Optional.of("Price " + price.getId() + " is not a price of product " + item.getProduct().getId());
+            }
+            if (!priceManagement.isPriceEffectiveAt(price.getProduct().getId(), price.getId(), orderTime)) {
+                return Optional.of("Price " + price.getId() + " was not the price of product " + item.getProduct().getId() + " at " + orderTime);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /*
+    New entities are created on each attempt, as a failed attempt leaves ids on the entities it tried to persist.
+    The persistence context is flushed and cleared at the end, so memory does not grow with the number of chunks.
+     */
+    private void insert(List<ValidOrder> validOrders, Map<Long, Price> prices, Map<Long, Product> products) {
+        List<Order> newOrders = new ArrayList<>(validOrders.size());
+        List<OrderItem> newOrderItems = new ArrayList<>();
+        for (ValidOrder validOrder : validOrders) {
+            Order newOrder = new Order(0L, LocalDateTime.now(), validOrder.requestedOrder.getBuyersEmail(), new HashSet<>());
+            List<OrderItem> orderItems = new ArrayList<>(validOrder.requestedOrder.getOrderItems().size());
+            for (OrderItem item : validOrder.requestedOrder.getOrderItems()) {
+                orderItems.add(new OrderItem(prices.get(item.getPrice().getId()), products.get(item.getProduct().getId()), item.getQuantity(), newOrder));
+            }
+            newOrder.updateTotalAmount(orderItems);
+            newOrders.add(newOrder);
+            newOrderItems.addAll(orderItems);
+            validOrder.savedOrder = newOrder;
+            validOrder.savedItems = orderItems;
+        }
+        orderRepository.saveAll(newOrders);
+        orderItemRepository.saveAll(newOrderItems);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private static class ValidOrder {
+        private final int index;
+        private final Order requestedOrder;
+        private Order savedOrder;
+        private List<OrderItem> savedItems;
+
+        private ValidOrder(int index, Order requestedOrder) {
+            this.index = index;
+            this.requestedOrder = requestedOrder;
+        }
+    }
+}
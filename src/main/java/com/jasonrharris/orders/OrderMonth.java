@@ -0,0 +1,42 @@
+package com.jasonrharris.orders;
+
+import java.time.YearMonth;
+
+/**
+ * One month of Orders. A detached month is no longer read by any query, and its rows are waiting to be purged.
+ */
+public final class OrderMonth {
+    private final YearMonth month;
+    private final long orders;
+    private final boolean detached;
+
+    OrderMonth(YearMonth month, long orders, boolean detached) {
+        this.month = month;
+        this.orders = orders;
+        this.detached = detached;
+    }
+
+    /**
+     * @return the month as yyyy-MM
+     */
+    public String getMonth() {
+        return month.toString();
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+
+    public boolean isDetached() {
+        return detached;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderMonth{" +
+                "month=" + month +
+                ", orders=" + orders +
+                ", detached=" + detached +
+                '}';
+    }
+}
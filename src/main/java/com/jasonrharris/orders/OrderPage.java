@@ -0,0 +1,36 @@
+package com.jasonrharris.orders;
+
+import java.util.List;
+
+/**
+ * One page of Orders, plus the cursor needed to fetch the next page. The cursor is null on the last page.
+ */
+public final class OrderPage {
+    private final List<Order> orders;
+    private final String nextCursor;
+
+    public OrderPage(List<Order> orders, String nextCursor) {
+        this.orders = orders;
+        this.nextCursor = nextCursor;
+    }
+
+    @SuppressWarnings("unused") // needed by Jackson
+    OrderPage() {
+        this(List.of(), null);
+    }
+
+    public static OrderPage of(List<Order> orders, int limit) {
+        if (orders.size() < limit) {
+            return new OrderPage(orders, null);
+        }
+        return new OrderPage(orders, OrderCursor.after(orders.get(orders.size() - 1)).encode());
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,191 @@
+package com.jasonrharris.orders;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the date from which Orders are retained. Every query of the Orders by date or buyer starts from that date (see
+ * {@link OrderArchive.Tiers}), so the months before it are detached by moving it, which is one row, so takes the same time however
+ * many Orders there are. The detached Orders and their items are then purged in the background a batch per transaction, rather than
+ * by one DELETE holding locks on all of them. With `orders.retention.months` set, months older than that are detached as each new
+ * month starts.
+ * <p>
+ * Every Order is in order_ and every item in order_item whatever its month, so a detached month's space is only freed by deleting
+ * its rows.
+ */
+@Service
+public class OrderRetention implements OrderWrittenListener, SmartLifecycle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderRetention.class);
+    static final LocalDateTime BEGINNING = LocalDateTime.of(1, 1, 1, 0, 0);
+
+    private static final String SELECT_RETAINED_FROM = "SELECT retained_from FROM order_retention WHERE id = 1";
+    private static final String MERGE_RETAINED_FROM = "MERGE INTO order_retention (id, retained_from) KEY (id) VALUES (1, ?)";
+    private static final String SELECT_MONTHS = "SELECT DATE_TRUNC('MONTH', creation_date_time), COUNT(*) FROM order_ " +
+            "GROUP BY DATE_TRUNC('MONTH', creation_date_time) ORDER BY DATE_TRUNC('MONTH', creation_date_time)";
+    private static final String SELECT_DETACHED_IDS = "SELECT id FROM order_ WHERE creation_date_time < ? LIMIT ?";
+    private static final String DELETE_ORDER_ITEMS = "DELETE FROM order_item WHERE order_id = ?";
+    private static final String DELETE_ORDER = "DELETE FROM order_ WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int retainMonths;
+    private final int purgeBatchSize;
+    private final ExecutorService purger = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-purger");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile LocalDateTime retainedFrom = BEGINNING;
+    private volatile YearMonth latestMonth = YearMonth.from(BEGINNING);
+    private volatile boolean running;
+
+    @Autowired
+    public OrderRetention(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                           @Value("${orders.retention.months:0}") int retainMonths,
+                           @Value("${orders.retention.purge-batch-size:500}") int purgeBatchSize) {
+        if (retainMonths < 0 || purgeBatchSize < 1) {
+            throw new IllegalArgumentException("months must not be negative and purge-batch-size must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.retainMonths = retainMonths;
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    /**
+     * @return the start of the oldest month still attached, or the year 1 if none have been detached
+     */
+    public LocalDateTime getRetainedFrom() {
+        return retainedFrom;
+    }
+
+    /**
+     * Counts the Orders in every month, which reads the whole creation date time index.
+     *
+     * @return the months that have Orders, oldest first, including detached months not yet purged
+     */
+    public List<OrderMonth> getMonths() {
+        LocalDateTime currentRetainedFrom = retainedFrom;
+        return jdbcTemplate.query(SELECT_MONTHS, (resultSet, row) -> {
+            LocalDateTime monthStart = resultSet.getTimestamp(1).toLocalDateTime();
+            return new OrderMonth(YearMonth.from(monthStart), resultSet.getLong(2), monthStart.isBefore(currentRetainedFrom));
+        });
+    }
+
+    /**
+     * Detaches every month before `month`, at once, and starts purging their Orders. Months that are already detached stay so.
+     *
+     * @return the start of the oldest month still attached
+     */
+    public synchronized LocalDateTime detachBefore(YearMonth month) {
+        if (!month.isBefore(YearMonth.now().plusMonths(1))) {
+            throw new IllegalArgumentException("Only months before the current month can be detached, not " + month);
+        }
+        LocalDateTime monthStart = month.atDay(1).atStartOfDay();
+        if (monthStart.isAfter(retainedFrom)) {
+            jdbcTemplate.update(MERGE_RETAINED_FROM, Timestamp.valueOf(monthStart));
+            retainedFrom = monthStart;
+            LOGGER.info("Detached the Orders before {}", month);
+            purger.execute(this::purgeDetached);
+        }
+        return retainedFrom;
+    }
+
+    /*
+    Orders are purged in batches, oldest first, each in its own transaction, until none are left before the retained from date.
+     */
+    private void purgeDetached() {
+        Timestamp purgeBefore = Timestamp.valueOf(retainedFrom);
+        long purged = 0;
+        try {
+            List<Long> ids;
+            do {
+                ids = jdbcTemplate.queryForList(SELECT_DETACHED_IDS, Long.class, purgeBefore, purgeBatchSize);
+                List<Object[]> idArgs = ids.stream().map(id -> new Object[]{id}).collect(Collectors.toList());
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(DELETE_ORDER_ITEMS, idArgs);
+                    jdbcTemplate.batchUpdate(DELETE_ORDER, idArgs);
+                });
+                purged += ids.size();
+            } while (ids.size() == purgeBatchSize && running);
+            LOGGER.info("Purged {} detached Orders from before {}", purged, purgeBefore);
+        } catch (DataAccessException | TransactionException e) {
+            LOGGER.warn("Could not purge the detached Orders after purging {}, the rest will be purged on restart", purged, e);
+        }
+    }
+
+    /**
+     * With a number of months to retain, the first Order of a month detaches the months that are now too old.
+     */
+    @Override
+    public void orderWritten(LocalDateTime creationDateTime, Collection<OrderItem> orderItems) {
+        YearMonth month = YearMonth.from(creationDateTime);
+        if (month.isAfter(latestMonth)) {
+            latestMonth = month;
+            if (retainMonths > 0) {
+                purger.execute(() -> detachTooOld(month));
+            }
+        }
+    }
+
+    private void detachTooOld(YearMonth currentMonth) {
+        try {
+            detachBefore(currentMonth.minusMonths(retainMonths));
+        } catch (DataAccessException e) {
+            LOGGER.warn("Could not detach the months more than {} before {}", retainMonths, currentMonth, e);
+        }
+    }
+
+    /*
+    Any Orders left from a purge that did not finish are purged again.
+     */
+    @Override
+    public synchronized void start() {
+        List<LocalDateTime> retained = jdbcTemplate.query(SELECT_RETAINED_FROM, (resultSet, row) -> resultSet.getTimestamp(1).toLocalDateTime());
+        retainedFrom = retained.isEmpty() ? BEGINNING : retained.get(0);
+        latestMonth = YearMonth.now();
+        running = true;
+        if (retainMonths > 0) {
+            purger.execute(() -> detachTooOld(latestMonth));
+        }
+        if (retainedFrom.isAfter(BEGINNING)) {
+            purger.execute(this::purgeDetached);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        purger.shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /*
+    Starts before the archive (Integer.MAX_VALUE - 4), which checks its segments against the retained from date.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 5;
+    }
+}
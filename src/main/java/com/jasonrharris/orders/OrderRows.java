@@ -0,0 +1,73 @@
+package com.jasonrharris.orders;
+
+import com.jasonrharris.converters.MoneyListConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The rows of a validated and priced Order, with ids already allocated from the sequences, ready to be inserted by JDBC alongside
+ * other Orders rather than through JPA.
+ */
+final class OrderRows {
+    private static final MoneyListConverter TOTALS_CONVERTER = new MoneyListConverter();
+
+    static final String INSERT_ORDER = "INSERT INTO order_ (id, creation_date_time, buyers_email, totals, buyer_key) VALUES (?, ?, ?, ?, ?)";
+    static final String INSERT_ORDER_ITEM = "INSERT INTO order_item (id, price_id, product_id, quantity, order_id) VALUES (?, ?, ?, ?, ?)";
+
+    final long id;
+    final LocalDateTime creationDateTime;
+    private final String buyersEmail;
+    private final String totals;
+    private final List<Object[]> items;
+    final Collection<OrderItem> pricedItems;
+
+    private OrderRows(long id, LocalDateTime creationDateTime, String buyersEmail, String totals, List<Object[]> items, Collection<OrderItem> pricedItems) {
+        this.id = id;
+        this.creationDateTime = creationDateTime;
+        this.buyersEmail = buyersEmail;
+        this.totals = totals;
+        this.items = items;
+        this.pricedItems = pricedItems;
+    }
+
+    /**
+     * The ids of each item's Price and Product are written, along with the Order's totals from the Prices.
+     */
+    static OrderRows of(Order pricedOrder, SequenceIdAllocator orderIds, SequenceIdAllocator orderItemIds) {
+        long orderId = orderIds.nextId();
+        List<Object[]> items = pricedOrder.getOrderItems().stream()
+                .map(item -> new Object[]{orderItemIds.nextId(), item.getPrice().getId(), item.getProduct().getId(), item.getQuantity(), orderId})
+                .collect(Collectors.toList());
+        String totals = TOTALS_CONVERTER.convertToDatabaseColumn(Order.totalsOf(pricedOrder.getOrderItems()));
+        return new OrderRows(orderId, LocalDateTime.now(), pricedOrder.getBuyersEmail(), totals, items, pricedOrder.getOrderItems());
+    }
+
+    /**
+     * @return the Order as written, with the ids of its items
+     */
+    Order toOrder() {
+        Order order = new Order(id, creationDateTime, buyersEmail, new HashSet<>());
+        int i = 0;
+        for (OrderItem pricedItem : pricedItems) {
+            order.getOrderItems().add(new OrderItem((long) items.get(i++)[0], pricedItem.getPrice(), pricedItem.getProduct(), pricedItem.getQuantity(), order));
+        }
+        order.updateTotalAmount();
+        return order;
+    }
+
+    /**
+     * Inserts the Orders with one JDBC batch per table, in whatever transaction is current
+     */
+    static void insert(JdbcTemplate jdbcTemplate, List<OrderRows> orders) {
+        jdbcTemplate.batchUpdate(INSERT_ORDER, orders.stream()
+                .map(order -> new Object[]{order.id, Timestamp.valueOf(order.creationDateTime), order.buyersEmail, order.totals, Order.buyerKeyOf(order.buyersEmail)})
+                .collect(Collectors.toList()));
+        jdbcTemplate.batchUpdate(INSERT_ORDER_ITEM, orders.stream().flatMap(order -> order.items.stream()).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,61 @@
+package com.jasonrharris.orders;
+
+/**
+ * Where a submitted Order is in being written. QUEUED Orders have been accepted and will be written, WRITTEN Orders can be read,
+ * FAILED Orders were accepted but could not be written, and REJECTED Orders were never accepted and have no id.
+ */
+public final class OrderStatus {
+    public enum Status {QUEUED, WRITTEN, FAILED, REJECTED}
+
+    private final Long orderId;
+    private final Status status;
+    private final String error;
+
+    private OrderStatus(Long orderId, Status status, String error) {
+        this.orderId = orderId;
+        this.status = status;
+        this.error = error;
+    }
+
+    @SuppressWarnings("unused") // needed by Jackson
+    OrderStatus() {
+        this(null, Status.REJECTED, null);
+    }
+
+    public static OrderStatus queued(long orderId) {
+        return new OrderStatus(orderId, Status.QUEUED, null);
+    }
+
+    public static OrderStatus written(long orderId) {
+        return new OrderStatus(orderId, Status.WRITTEN, null);
+    }
+
+    public static OrderStatus failed(long orderId, String error) {
+        return new OrderStatus(orderId, Status.FAILED, error);
+    }
+
+    public static OrderStatus rejected(String error) {
+        return new OrderStatus(null, Status.REJECTED, error);
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderStatus{" +
+                "orderId=" + orderId +
+                ", status=" + status +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,232 @@
+package com.jasonrharris.orders;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.incrementer.H2SequenceMaxValueIncrementer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind for new Orders, enabled with `orders.write-behind.enabled=true`. Submitted Orders are given their ids straight away
+ * and put on a bounded queue; a single writer thread takes whatever has queued up (up to `batch-size` Orders) and inserts it with
+ * one JDBC batch per table in a single transaction, so many Orders share each commit.
+ * <p>
+ * Submissions are refused once the queue is full. On shutdown no more Orders are accepted, and the queue is drained before the
+ * application context goes on to close the database. A group that still cannot be written after `max-attempts` tries fails, so an
+ * unavailable database cannot hold up shutdown for ever.
+ */
+@Service
+@ConditionalOnProperty(name = "orders.write-behind.enabled", havingValue = "true")
+public class OrderWriteBehind implements SmartLifecycle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderWriteBehind.class);
+    private static final int ID_BLOCK_SIZE = 50;
+    private static final long POLL_MILLIS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SequenceIdAllocator orderIds;
+    private final SequenceIdAllocator orderItemIds;
+    private final BlockingQueue<OrderRows> queue;
+    private final Map<Long, OrderRows> queuedOrdersById = new ConcurrentHashMap<>();
+    private final Cache<Long, String> failuresByOrderId = Caffeine.newBuilder().maximumSize(10_000).expireAfterWrite(Duration.ofHours(1)).build();
+    private final int batchSize;
+    private final Duration retryDelay;
+    private final int maxAttempts;
+    private final List<OrderWrittenListener> orderWrittenListeners;
+
+    private final ReadWriteLock acceptingLock = new ReentrantReadWriteLock();
+    private volatile boolean accepting;
+    private volatile boolean running;
+    private Thread writer;
+
+    @Autowired
+    public OrderWriteBehind(JdbcTemplate jdbcTemplate, DataSource dataSource, TransactionTemplate transactionTemplate,
+                            @Value("${orders.write-behind.queue-capacity:10000}") int queueCapacity,
+                            @Value("${orders.write-behind.batch-size:500}") int batchSize,
+                            @Value("${orders.write-behind.retry-delay:1s}") Duration retryDelay,
+                            @Value("${orders.write-behind.max-attempts:10}") int maxAttempts,
+                            List<OrderWrittenListener> orderWrittenListeners) {
+        this(jdbcTemplate, transactionTemplate,
+                new SequenceIdAllocator(new H2SequenceMaxValueIncrementer(dataSource, "ORDER_SEQUENCE_ID"), ID_BLOCK_SIZE),
+                new SequenceIdAllocator(new H2SequenceMaxValueIncrementer(dataSource, "ORDER_ITEM_SEQUENCE_ID"), ID_BLOCK_SIZE),
+                queueCapacity, batchSize, retryDelay, maxAttempts, orderWrittenListeners);
+    }
+
+    OrderWriteBehind(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                     SequenceIdAllocator orderIds, SequenceIdAllocator orderItemIds, int queueCapacity, int batchSize, Duration retryDelay,
+                     int maxAttempts, List<OrderWrittenListener> orderWrittenListeners) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.orderIds = orderIds;
+        this.orderItemIds = orderItemIds;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.retryDelay = retryDelay;
+        this.maxAttempts = maxAttempts;
+        this.orderWrittenListeners = orderWrittenListeners;
+    }
+
+    /**
+     * Queues an Order that has already been validated and priced. The ids of each item's Price and Product are written, along with
+     * the Order's totals from the Prices.
+     *
+     * @return the QUEUED status, with the Order's id, or empty if the queue is full or the application is shutting down
+     */
+    public Optional<OrderStatus> submit(Order validOrder) {
+        acceptingLock.readLock().lock();
+        try {
+            return accepting ? enqueue(validOrder) : Optional.empty();
+        } finally {
+            acceptingLock.readLock().unlock();
+        }
+    }
+
+    private Optional<OrderStatus> enqueue(Order validOrder) {
+        OrderRows queuedOrder = OrderRows.of(validOrder, orderIds, orderItemIds);
+        queuedOrdersById.put(queuedOrder.id, queuedOrder);
+        if (!queue.offer(queuedOrder)) {
+            queuedOrdersById.remove(queuedOrder.id);
+            return Optional.empty();
+        }
+        return Optional.of(OrderStatus.queued(queuedOrder.id));
+    }
+
+    /**
+     * @return the status of an Order that is still queued or failed to be written, or empty for any other id
+     */
+    public Optional<OrderStatus> getStatus(long orderId) {
+        if (queuedOrdersById.containsKey(orderId)) {
+            return Optional.of(OrderStatus.queued(orderId));
+        }
+        return Optional.ofNullable(failuresByOrderId.getIfPresent(orderId)).map(error -> OrderStatus.failed(orderId, error));
+    }
+
+    int getQueuedCount() {
+        return queue.size();
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+        accepting = true;
+        writer = new Thread(this::writeUntilStoppedAndDrained, "order-write-behind");
+        writer.start();
+    }
+
+    /**
+     * Refuses new Orders, waiting for any submissions in progress, then waits for every accepted Order to be written.
+     */
+    @Override
+    public synchronized void stop() {
+        acceptingLock.writeLock().lock();
+        try {
+            accepting = false;
+        } finally {
+            acceptingLock.writeLock().unlock();
+        }
+        running = false;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Order write-behind stopped with {} orders still queued", queue.size());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /*
+    Stops, and so drains the queue, before the sales rollups (Integer.MAX_VALUE - 3) stop and flush, so the drained Orders are in
+    their last flush. The web server only stops once every lifecycle bean has, so Orders posted while the queue drains are refused
+    with a 503 and Retry-After rather than accepted and lost.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 2;
+    }
+
+    private void writeUntilStoppedAndDrained() {
+        List<OrderRows> group = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                OrderRows first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                queue.drainTo(group, batchSize - 1);
+                write(group);
+                group.clear();
+            } catch (InterruptedException e) {
+                LOGGER.warn("Order write-behind interrupted with {} orders still queued", queue.size());
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /*
+    A group that breaks a constraint is split up so only the offending Orders fail. Any other failure (e.g. the database being
+    unavailable) is retried after a delay, as the Orders have already been accepted, until the group has had maxAttempts tries.
+     */
+    private void write(List<OrderRows> group) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> OrderRows.insert(jdbcTemplate, group));
+                for (OrderRows queuedOrder : group) {
+                    queuedOrdersById.remove(queuedOrder.id);
+                    orderWrittenListeners.forEach(listener -> listener.orderWritten(queuedOrder.creationDateTime, queuedOrder.pricedItems));
+                }
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (group.size() == 1) {
+                    OrderRows failedOrder = group.get(0);
+                    failuresByOrderId.put(failedOrder.id, e.getMostSpecificCause().getMessage());
+                    queuedOrdersById.remove(failedOrder.id);
+                    return;
+                }
+                for (OrderRows queuedOrder : group) {
+                    write(List.of(queuedOrder));
+                }
+                return;
+            } catch (DataAccessException | TransactionException e) {
+                if (attempt >= maxAttempts) {
+                    LOGGER.error("Could not write {} orders in {} attempts, they have failed", group.size(), attempt, e);
+                    for (OrderRows failedOrder : group) {
+                        failuresByOrderId.put(failedOrder.id, "Not written after " + attempt + " attempts: " + e.getMostSpecificCause().getMessage());
+                        queuedOrdersById.remove(failedOrder.id);
+                    }
+                    return;
+                }
+                LOGGER.warn("Could not write {} orders, retrying in {}", group.size(), retryDelay, e);
+                Thread.sleep(retryDelay.toMillis());
+            }
+        }
+    }
+}
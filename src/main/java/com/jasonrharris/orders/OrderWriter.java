@@ -0,0 +1,124 @@
+package com.jasonrharris.orders;
+
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
+import com.jasonrharris.repositories.OrderItemRepository;
+import com.jasonrharris.repositories.OrderRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+/**
+ * Adds single Orders, each committed before it is returned. An Order's Prices are resolved, and it and its items are inserted,
+ * in one transaction, so an Order is never written without its items. With group commit enabled (see {@link OrderGroupCommit})
+ * the Orders of concurrent requests share a transaction instead.
+ */
+@Service
+public class OrderWriter {
+    public static final String ADD_ORDER_PHASE_TIMER = "orders.add.phase";
+
+    private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final PriceManagement priceManagement;
+    private final OrderManagement orderManagement;
+    private final Optional<OrderGroupCommit> orderGroupCommit;
+    private final TransactionTemplate transactionTemplate;
+    private final List<OrderWrittenListener> orderWrittenListeners;
+    private final Timer priceResolutionTimer;
+    private final Timer orderSaveTimer;
+    private final Timer itemSaveTimer;
+    private final Timer groupCommitTimer;
+
+    public OrderWriter(@Autowired OrderRepository orderRepository, @Autowired OrderItemRepository orderItemRepository, @Autowired PriceManagement priceManagement,
+                       @Autowired OrderManagement orderManagement, @Autowired Optional<OrderGroupCommit> orderGroupCommit, @Autowired TransactionTemplate transactionTemplate,
+                       @Autowired List<OrderWrittenListener> orderWrittenListeners, @Autowired MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.priceManagement = priceManagement;
+        this.orderManagement = orderManagement;
+        this.orderGroupCommit = orderGroupCommit;
+        this.transactionTemplate = transactionTemplate;
+        this.orderWrittenListeners = orderWrittenListeners;
+        this.priceResolutionTimer = Timer.builder(ADD_ORDER_PHASE_TIMER).tag("phase", "price-resolution").register(meterRegistry);
+        this.orderSaveTimer = Timer.builder(ADD_ORDER_PHASE_TIMER).tag("phase", "order-save").register(meterRegistry);
+        this.itemSaveTimer = Timer.builder(ADD_ORDER_PHASE_TIMER).tag("phase", "item-save").register(meterRegistry);
+        this.groupCommitTimer = Timer.builder(ADD_ORDER_PHASE_TIMER).tag("phase", "group-commit").register(meterRegistry);
+    }
+
+    /**
+     * Adds a new Order, working out its totals from its Prices and storing them with it.
+     *
+     * @return the committed Order with its items
+     * @throws IllegalArgumentException if the Order cannot be added, e.g. it is at a Price that is no longer in effect
+     */
+    public Order addOrder(Order newOrder) {
+        Optional<String> invalidReason = orderManagement.findInvalidReason(newOrder);
+        if (invalidReason.isPresent()) {
+            throw new IllegalArgumentException(invalidReason.get());
+        }
+        if (orderGroupCommit.isPresent()) {
+            Optional<Order> committedOrder = commitWithOthers(newOrder, orderGroupCommit.get());
+            if (committedOrder.isPresent()) {
+                return committedOrder.get();
+            }
+        }
+        Order savedOrder = transactionTemplate.execute(status -> insert(newOrder));
+        orderWrittenListeners.forEach(listener -> listener.orderWritten(savedOrder.getCreationDateTime(), savedOrder.getOrderItems()));
+        return savedOrder;
+    }
+
+    /*
+    The Order has already been checked by OrderManagement. Every item is priced by the id of its Price only, so an amount sent
+    with the Order never reaches its totals.
+     */
+    private Order insert(Order validOrder) {
+        Map<Long, Price> retrievedPrices = priceResolutionTimer.record(() ->
+                priceManagement.getPricesById(validOrder.getOrderItems().stream().map(orderItem -> orderItem.getPrice().getId()).collect(Collectors.toSet())));
+
+        Order pricedOrder = new Order(0L, LocalDateTime.now(), validOrder.getBuyersEmail(), new HashSet<>());
+        List<OrderItem> newOrderItems = validOrder.getOrderItems().stream().map(orderItem -> new OrderItem(
+                retrievedPrices.get(orderItem.getPrice().getId()),
+                orderItem.getProduct(),
+                orderItem.getQuantity(), pricedOrder)).collect(Collectors.toList());
+        pricedOrder.updateTotalAmount(newOrderItems);
+
+        Order savedOrder = orderSaveTimer.record(() -> orderRepository.save(pricedOrder));
+        List<OrderItem> savedOrderItems = itemSaveTimer.record(() -> orderItemRepository.saveAll(newOrderItems));
+        return new Order(savedOrder.getId(), savedOrder.getCreationDateTime(), savedOrder.getBuyersEmail(), new HashSet<>(savedOrderItems));
+    }
+
+    /*
+    The Order is priced from the cache, as for write-behind, as its rows are inserted by JDBC.
+    Empty if group commit has stopped accepting Orders, during shutdown.
+     */
+    private Optional<Order> commitWithOthers(Order newOrder, OrderGroupCommit groupCommit) {
+        Map<Long, Price> prices = priceResolutionTimer.record(() ->
+                priceManagement.getPricesById(newOrder.getOrderItems().stream().map(orderItem -> orderItem.getPrice().getId()).collect(Collectors.toList())));
+        Order pricedOrder = new Order(0L, null, newOrder.getBuyersEmail(), newOrder.getOrderItems().stream()
+                .map(orderItem -> new OrderItem(prices.get(orderItem.getPrice().getId()), orderItem.getProduct(), orderItem.getQuantity(), null))
+                .collect(Collectors.toSet()));
+        return groupCommit.submit(pricedOrder).map(committed -> groupCommitTimer.record(() -> awaitCommit(committed)));
+    }
+
+    private static Order awaitCommit(CompletableFuture<Order> committed) {
+        try {
+            return committed.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.jasonrharris.orders;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Told about each new Order once it and its items have been committed, whichever way it was added.
+ */
+public interface OrderWrittenListener {
+
+    /**
+     * Called on the thread that wrote the Order, so must be quick and must not throw.
+     *
+     * @param orderItems the Order's items, each with its full Price
+     */
+    void orderWritten(LocalDateTime creationDateTime, Collection<OrderItem> orderItems);
+}
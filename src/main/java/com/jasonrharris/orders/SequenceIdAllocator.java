@@ -0,0 +1,27 @@
+package com.jasonrharris.orders;
+
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+
+/**
+ * Hands out ids the same way as Hibernate's pooled-lo optimizer: each value read from the sequence is the first of a block of
+ * `blockSize` ids, the sequence's INCREMENT BY. Ids allocated here therefore never clash with those Hibernate allocates itself.
+ */
+class SequenceIdAllocator {
+    private final DataFieldMaxValueIncrementer sequence;
+    private final int blockSize;
+    private long next;
+    private long blockEnd;
+
+    SequenceIdAllocator(DataFieldMaxValueIncrementer sequence, int blockSize) {
+        this.sequence = sequence;
+        this.blockSize = blockSize;
+    }
+
+    synchronized long nextId() {
+        if (next == blockEnd) {
+            next = sequence.nextLongValue();
+            blockEnd = next + blockSize;
+        }
+        return next++;
+    }
+}
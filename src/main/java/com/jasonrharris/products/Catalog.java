@@ -0,0 +1,242 @@
+package com.jasonrharris.products;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jasonrharris.repositories.ProductRepository;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The catalog served by GET /products: every Product with its current Price, encoded as JSON (and gzipped) once per change
+ * rather than once per request. Each {@link Snapshot} is immutable and replaced whole.
+ * <p>
+ * Hibernate tells the Catalog whenever a committed transaction has inserted, updated or deleted a Product or a Price, and a new
+ * Snapshot is then built on the Catalog's own thread. A read that finds the Snapshot older than the last change waits for that
+ * rebuild, so the catalog served is never older than the last committed write.
+ */
+@Service
+public class Catalog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Catalog.class);
+    private static final long STOP_TIMEOUT_SECONDS = 10;
+
+    private final ProductRepository productRepository;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ObjectWriter productsWriter;
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalog-rebuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // starts ahead of the empty Snapshot, so the first read builds one if the rebuilder has not yet
+    private final AtomicLong changes = new AtomicLong(1);
+    private volatile Snapshot snapshot = new Snapshot(0, new byte[0], new byte[0], "");
+
+    public Catalog(@Autowired ProductRepository productRepository, @Autowired EntityManagerFactory entityManagerFactory,
+                   @Autowired TransactionTemplate transactionTemplate, @Autowired ObjectMapper objectMapper) {
+        this.productRepository = productRepository;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.productsWriter = objectMapper.writer();
+
+        ChangeListener changeListener = new ChangeListener();
+        EventListenerRegistry listeners = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry().getService(EventListenerRegistry.class);
+        listeners.appendListeners(EventType.POST_COMMIT_INSERT, changeListener);
+        listeners.appendListeners(EventType.POST_COMMIT_UPDATE, changeListener);
+        listeners.appendListeners(EventType.POST_COMMIT_DELETE, changeListener);
+    }
+
+    /**
+     * @return the catalog as of the last committed change to a Product or Price
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        return current.change >= changes.get() ? current : rebuildIfStale();
+    }
+
+    /**
+     * @return the catalog if it is as of the last committed change, without waiting for a rebuild if it is not
+     */
+    public Optional<Snapshot> getSnapshotIfCurrent() {
+        Snapshot current = snapshot;
+        return current.change >= changes.get() ? Optional.of(current) : Optional.empty();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        rebuilder.execute(this::rebuildInBackground);
+    }
+
+    /**
+     * Waits for a rebuild in progress rather than interrupting it, as an interrupt during H2's file I/O closes the database file
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        rebuilder.shutdown();
+        if (!rebuilder.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            LOGGER.warn("The catalog was still being rebuilt {}s after stopping", STOP_TIMEOUT_SECONDS);
+        }
+    }
+
+    /**
+     * Rebuilds the catalog after a change made without Hibernate, such as a bulk load
+     */
+    void changed() {
+        changes.incrementAndGet();
+        rebuilder.execute(this::rebuildInBackground);
+    }
+
+    private void rebuildInBackground() {
+        try {
+            rebuildIfStale();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not rebuild the catalog, it will be rebuilt when next read", e);
+        }
+    }
+
+    /*
+    Changes committed while the Products are being read are not counted as included, so are picked up by the next rebuild.
+     */
+    private synchronized Snapshot rebuildIfStale() {
+        long change = changes.get();
+        Snapshot current = snapshot;
+        if (current.change >= change) {
+            return current;
+        }
+        byte[] json = readOnlyTransactionTemplate.execute(status -> {
+            try {
+                return productsWriter.writeValueAsBytes(productRepository.findAll());
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Snapshot rebuilt = new Snapshot(change, json, gzip(json), DigestUtils.md5DigestAsHex(json));
+        snapshot = rebuilt;
+        return rebuilt;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzipped)) {
+            gzipOutputStream.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return gzipped.toByteArray();
+    }
+
+    /**
+     * The encoded catalog. Its ETags are the MD5 of the JSON, so they only change when the catalog does, even across restarts.
+     */
+    public static final class Snapshot {
+        private final long change;
+        private final byte[] json;
+        private final byte[] gzippedJson;
+        private final String eTag;
+
+        private Snapshot(long change, byte[] json, byte[] gzippedJson, String eTag) {
+            this.change = change;
+            this.json = json;
+            this.gzippedJson = gzippedJson;
+            this.eTag = eTag;
+        }
+
+        /**
+         * @return the JSON array of Products, which must not be modified
+         */
+        public byte[] getJson() {
+            return json;
+        }
+
+        /**
+         * @return the JSON gzipped, which must not be modified
+         */
+        public byte[] getGzippedJson() {
+            return gzippedJson;
+        }
+
+        public String getETag() {
+            return "\"" + eTag + "\"";
+        }
+
+        public String getGzippedETag() {
+            return "\"" + eTag + "-gzip\"";
+        }
+    }
+
+    /*
+    Hibernate calls post commit listeners for every entity once any listener requires them, so each event is checked too.
+     */
+    private class ChangeListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return persister.getMappedClass() == Product.class || persister.getMappedClass() == Price.class;
+        }
+
+        /*
+        Still abstract in this version of Hibernate, though only requiresPostCommitHandling is called
+         */
+        @Override
+        @Deprecated
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return requiresPostCommitHandling(persister);
+        }
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (requiresPostCommitHandling(event.getPersister())) {
+                changed();
+            }
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            if (requiresPostCommitHandling(event.getPersister())) {
+                changed();
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            if (requiresPostCommitHandling(event.getPersister())) {
+                changed();
+            }
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.jasonrharris.products;
+
+/**
+ * How many Products and Prices a {@link CatalogLoader} load inserted, and how long it took. A load that stopped at a line that is not
+ * a valid Product gives why, and counts only the chunks committed anyway.
+ */
+public final class CatalogLoadResult {
+    private final int products;
+    private final long prices;
+    private final long millis;
+    private final String error;
+
+    CatalogLoadResult(int products, long prices, long millis, String error) {
+        this.products = products;
+        this.prices = prices;
+        this.millis = millis;
+        this.error = error;
+    }
+
+    public int getProducts() {
+        return products;
+    }
+
+    public long getPrices() {
+        return prices;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogLoadResult{" +
+                "products=" + products +
+                ", prices=" + prices +
+                ", millis=" + millis +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
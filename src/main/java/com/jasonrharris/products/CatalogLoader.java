@@ -0,0 +1,408 @@
+package com.jasonrharris.products;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads Products with their Price histories in bulk, from CSV or newline delimited JSON, with JDBC rather than through Hibernate.
+ * <p>
+ * The input is read a line at a time and handed out in chunks of lines, which are parsed and inserted in parallel, each chunk in
+ * its own transaction with its rows inserted in JDBC batches. The ids for a chunk are reserved from the Product and Price sequences
+ * with one query each, a block of the sequence's INCREMENT BY per value read, as Hibernate's pooled-lo optimizer uses them, so they
+ * never clash with the ids Hibernate hands out while a load is running. Each Product's newest Price becomes its current Price.
+ * <p>
+ * A CSV line is a Product's name followed by an amount, currency and (optionally empty) ISO creation date time for each of its
+ * Prices, e.g. `Nike Revolution,47.95,GBP,2019-09-17T18:47:52,45.95,GBP,2019-09-18T10:47:52`, and a first line starting with
+ * `name,` is taken as a header. A JSON line is e.g. `{"name":"Nike Revolution","prices":[{"amount":47.95,"currency":"GBP","creationDateTime":"2019-09-17T18:47:52"}]}`.
+ * Prices without a creation date time are created at the start of the load.
+ * <p>
+ * With `catalog.loader.file` set, that file (CSV if it ends in .csv, otherwise JSON) is loaded on start up, before the web server starts.
+ */
+@Service
+public class CatalogLoader implements SmartLifecycle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogLoader.class);
+    private static final int ID_BLOCK_SIZE = 50;
+    private static final int JDBC_BATCH_SIZE = 500;
+    private static final String CSV_HEADER_START = "name,";
+
+    private static final String RESERVE_PRODUCT_IDS = "SELECT NEXT VALUE FOR PROD_SEQUENCE_ID FROM SYSTEM_RANGE(1, ?)";
+    private static final String RESERVE_PRICE_IDS = "SELECT NEXT VALUE FOR PRICE_SEQUENCE_ID FROM SYSTEM_RANGE(1, ?)";
+    private static final String INSERT_PRODUCT = "INSERT INTO product (id, name) VALUES (?, ?)";
+    private static final String INSERT_PRICE = "INSERT INTO price (id, amount, creation_date_time, currency, product_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String UPDATE_CURRENT_PRICE = "UPDATE product SET current_price_id = ? WHERE id = ?";
+
+    public enum Format {
+        CSV, NDJSON;
+
+        public static Format of(Path file) {
+            return file.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : NDJSON;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader productReader;
+    private final Catalog catalog;
+    private final ProductSearch productSearch;
+    private final PriceManagement priceManagement;
+    private final int threads;
+    private final int chunkSize;
+    private final String startUpFile;
+    private volatile boolean running;
+
+    @Autowired
+    public CatalogLoader(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, ObjectMapper objectMapper, Catalog catalog, ProductSearch productSearch,
+                         PriceManagement priceManagement,
+                         @Value("${catalog.loader.threads:0}") int threads,
+                         @Value("${catalog.loader.chunk-size:1000}") int chunkSize,
+                         @Value("${catalog.loader.file:}") String startUpFile) {
+        if (threads < 0 || chunkSize < 1) {
+            throw new IllegalArgumentException("threads must not be negative and chunk-size must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.productReader = objectMapper.readerFor(LoadedProduct.class);
+        this.catalog = catalog;
+        this.productSearch = productSearch;
+        this.priceManagement = priceManagement;
+        this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        this.chunkSize = chunkSize;
+        this.startUpFile = startUpFile;
+    }
+
+    public CatalogLoadResult load(Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return load(inputStream, Format.of(file));
+        }
+    }
+
+    /**
+     * Loads every line of the UTF-8 input. Chunks are committed as they are loaded, so if a line cannot be parsed, the load stops
+     * with a result giving its line number, and the chunks already committed stay loaded and are counted.
+     */
+    public CatalogLoadResult load(InputStream inputStream, Format format) throws IOException {
+        long start = System.nanoTime();
+        LocalDateTime loadDateTime = LocalDateTime.now();
+        AtomicInteger products = new AtomicInteger();
+        AtomicLong prices = new AtomicLong();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        // at most two chunks per thread are read ahead, so memory use does not depend on the size of the input
+        Semaphore chunksInFlight = new Semaphore(threads * 2);
+        ExecutorService loaders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "catalog-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 1 << 16);
+            List<String> chunk = new ArrayList<>(chunkSize);
+            int chunkFirstLine = 1;
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null && failure.get() == null) {
+                lineNumber++;
+                if (lineNumber == 1 && format == Format.CSV && line.startsWith(CSV_HEADER_START)) {
+                    line = "";
+                }
+                chunk.add(line);
+                if (chunk.size() == chunkSize) {
+                    submit(loaders, chunksInFlight, chunk, chunkFirstLine, format, loadDateTime, products, prices, failure);
+                    chunk = new ArrayList<>(chunkSize);
+                    chunkFirstLine = lineNumber + 1;
+                }
+            }
+            if (!chunk.isEmpty() && failure.get() == null) {
+                submit(loaders, chunksInFlight, chunk, chunkFirstLine, format, loadDateTime, products, prices, failure);
+            }
+        } finally {
+            // even if reading fails, the chunks already handed out are waited for, as interrupting H2 mid insert closes the database
+            chunksInFlight.acquireUninterruptibly(threads * 2);
+            loaders.shutdown();
+            if (products.get() > 0) {
+                catalog.changed();
+            }
+        }
+        if (failure.get() != null && !(failure.get() instanceof IllegalArgumentException)) {
+            throw failure.get();
+        }
+        CatalogLoadResult result = new CatalogLoadResult(products.get(), prices.get(), (System.nanoTime() - start) / 1_000_000,
+                failure.get() == null ? null : failure.get().getMessage());
+        if (result.getError() != null) {
+            LOGGER.warn("Loaded {} Products with {} Prices in {}ms before stopping: {}", result.getProducts(), result.getPrices(), result.getMillis(), result.getError());
+        } else {
+            LOGGER.info("Loaded {} Products with {} Prices in {}ms", result.getProducts(), result.getPrices(), result.getMillis());
+        }
+        return result;
+    }
+
+    private void submit(ExecutorService loaders, Semaphore chunksInFlight, List<String> lines, int firstLine, Format format, LocalDateTime loadDateTime,
+                        AtomicInteger products, AtomicLong prices, AtomicReference<RuntimeException> failure) {
+        chunksInFlight.acquireUninterruptibly();
+        try {
+            loaders.execute(() -> {
+                try {
+                    List<LoadedProduct> chunk = parse(lines, firstLine, format, loadDateTime);
+                    prices.addAndGet(insert(chunk));
+                    products.addAndGet(chunk.size());
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    chunksInFlight.release();
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            // a chunk that was never handed out must not keep the permit the load waits for
+            chunksInFlight.release();
+            throw e;
+        }
+    }
+
+    private List<LoadedProduct> parse(List<String> lines, int firstLine, Format format, LocalDateTime loadDateTime) {
+        List<LoadedProduct> chunk = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                LoadedProduct product = format == Format.CSV ? parseCsvLine(line, loadDateTime) : parseJsonLine(line, loadDateTime);
+                if (product.name == null || product.name.isBlank()) {
+                    throw new IllegalArgumentException("a Product needs a name");
+                }
+                chunk.add(product);
+            } catch (IllegalArgumentException | IOException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Line " + (firstLine + i) + " is not a valid Product: " + e.getMessage(), e);
+            }
+        }
+        return chunk;
+    }
+
+    static LoadedProduct parseCsvLine(String line, LocalDateTime loadDateTime) {
+        List<String> fields = splitCsvLine(line);
+        if ((fields.size() - 1) % 3 != 0) {
+            throw new IllegalArgumentException("each Price needs an amount, currency and creation date time, which may be empty");
+        }
+        LoadedProduct product = new LoadedProduct();
+        product.name = fields.get(0);
+        product.prices = new ArrayList<>((fields.size() - 1) / 3);
+        for (int field = 1; field < fields.size(); field += 3) {
+            LoadedPrice price = new LoadedPrice();
+            price.amount = new BigDecimal(fields.get(field));
+            price.currency = Currency.getInstance(fields.get(field + 1));
+            price.creationDateTime = fields.get(field + 2).isEmpty() ? loadDateTime : LocalDateTime.parse(fields.get(field + 2));
+            product.prices.add(price);
+        }
+        return product;
+    }
+
+    private LoadedProduct parseJsonLine(String line, LocalDateTime loadDateTime) throws IOException {
+        LoadedProduct product = productReader.readValue(line);
+        if (product.prices == null) {
+            product.prices = Collections.emptyList();
+        }
+        for (LoadedPrice price : product.prices) {
+            if (price.amount == null || price.currency == null) {
+                throw new IllegalArgumentException("each Price needs an amount and currency");
+            }
+            if (price.creationDateTime == null) {
+                price.creationDateTime = loadDateTime;
+            }
+        }
+        return product;
+    }
+
+    /*
+    Fields may be quoted, with any quotes in them doubled, but may not span lines.
+     */
+    static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char character = line.charAt(i);
+            if (quoted) {
+                if (character != '"') {
+                    field.append(character);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (character == '"') {
+                quoted = true;
+            } else if (character == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(character);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("a quoted field is not closed");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /*
+    Products are inserted without their current Price, which has to be inserted after them, and then pointed at it.
+     */
+    private long insert(List<LoadedProduct> chunk) {
+        List<LoadedPrice> prices = new ArrayList<>();
+        List<LoadedProduct> productsWithPrices = new ArrayList<>(chunk.size());
+        List<Long> pricedProductIds = new ArrayList<>(chunk.size());
+        long[] productIds = reserveIds(RESERVE_PRODUCT_IDS, chunk.size());
+        for (int productIndex = 0; productIndex < chunk.size(); productIndex++) {
+            LoadedProduct product = chunk.get(productIndex);
+            product.id = productIds[productIndex];
+            for (LoadedPrice price : product.prices) {
+                price.productId = product.id;
+                prices.add(price);
+            }
+            if (!product.prices.isEmpty()) {
+                productsWithPrices.add(product);
+                pricedProductIds.add(product.id);
+            }
+        }
+        long[] priceIds = reserveIds(RESERVE_PRICE_IDS, prices.size());
+        for (int priceIndex = 0; priceIndex < prices.size(); priceIndex++) {
+            prices.get(priceIndex).id = priceIds[priceIndex];
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_PRODUCT, chunk, JDBC_BATCH_SIZE, (statement, product) -> {
+                statement.setLong(1, product.id);
+                statement.setString(2, product.name);
+            });
+            jdbcTemplate.batchUpdate(INSERT_PRICE, prices, JDBC_BATCH_SIZE, (statement, price) -> {
+                statement.setLong(1, price.id);
+                statement.setBigDecimal(2, price.amount.setScale(2, RoundingMode.HALF_UP));
+                statement.setTimestamp(3, Timestamp.valueOf(price.creationDateTime));
+                statement.setString(4, price.currency.getCurrencyCode());
+                statement.setLong(5, price.productId);
+            });
+            jdbcTemplate.batchUpdate(UPDATE_CURRENT_PRICE, productsWithPrices, JDBC_BATCH_SIZE, (statement, product) -> {
+                statement.setLong(1, product.newestPrice().id);
+                statement.setLong(2, product.id);
+            });
+        });
+        // a lookup of these Products' ids before they were committed may have cached that they have no Prices
+        priceManagement.forgetPricesOf(pricedProductIds);
+        // a search index still being built on start up reads these Products from the table itself
+        if (productSearch.isRunning()) {
+            for (LoadedProduct product : chunk) {
+                productSearch.index(product.id, product.name);
+            }
+        }
+        return prices.size();
+    }
+
+    private long[] reserveIds(String reserveQuery, int count) {
+        long[] ids = new long[count];
+        if (count == 0) {
+            return ids;
+        }
+        List<Long> blockStarts = jdbcTemplate.queryForList(reserveQuery, Long.class, (count + ID_BLOCK_SIZE - 1) / ID_BLOCK_SIZE);
+        for (int i = 0; i < count; i++) {
+            ids[i] = blockStarts.get(i / ID_BLOCK_SIZE) + i % ID_BLOCK_SIZE;
+        }
+        return ids;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!startUpFile.isEmpty()) {
+            try {
+                CatalogLoadResult result = load(Path.of(startUpFile));
+                if (result.getError() != null) {
+                    throw new IllegalArgumentException("Could not load all of the catalog file " + startUpFile + ": " + result.getError());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the catalog file " + startUpFile, e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /*
+    Starts before the search index (Integer.MAX_VALUE - 2), which is then built from the loaded Products. Like every lifecycle bean, it
+    starts before the web server does.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 3;
+    }
+
+    /*
+    The public fields are those read from JSON, the others are set once the ids are reserved.
+     */
+    static final class LoadedProduct {
+        public String name;
+        public List<LoadedPrice> prices;
+        long id;
+
+        /**
+         * @return the Price created last, or listed last of those created at the same time
+         */
+        LoadedPrice newestPrice() {
+            LoadedPrice newest = null;
+            for (LoadedPrice price : prices) {
+                if (newest == null || !price.creationDateTime.isBefore(newest.creationDateTime)) {
+                    newest = price;
+                }
+            }
+            return newest;
+        }
+    }
+
+    static final class LoadedPrice {
+        public BigDecimal amount;
+        public Currency currency;
+        public LocalDateTime creationDateTime;
+        long id;
+        long productId;
+    }
+}
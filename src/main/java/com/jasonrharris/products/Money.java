@@ -0,0 +1,87 @@
+package com.jasonrharris.products;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Objects;
+
+/**
+ * An amount of one Currency, held as a whole number of the Currency's minor units (e.g. pence), so that adding and multiplying
+ * amounts is long arithmetic. Arithmetic that overflows a long throws rather than wrapping, and amounts in different
+ * Currencies cannot be added.
+ */
+public final class Money {
+    private final long minorUnits;
+    private final Currency currency;
+
+    private Money(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
+        this.currency = Objects.requireNonNull(currency);
+    }
+
+    public static Money ofMinorUnits(long minorUnits, Currency currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    @JsonCreator
+    public static Money of(@JsonProperty("amount") BigDecimal amount, @JsonProperty("currency") Currency currency) {
+        return new Money(toMinorUnits(amount, currency), currency);
+    }
+
+    /**
+     * @return the amount as a whole number of the Currency's minor units, rounding half up any fraction of a minor unit
+     */
+    public static long toMinorUnits(BigDecimal amount, Currency currency) {
+        return amount.setScale(fractionDigits(currency), RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static int fractionDigits(Currency currency) {
+        return Math.max(0, currency.getDefaultFractionDigits());
+    }
+
+    public Money plus(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Cannot add " + other.currency + " to " + currency);
+        }
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money times(int quantity) {
+        return new Money(Math.multiplyExact(minorUnits, quantity), currency);
+    }
+
+    @JsonIgnore
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public BigDecimal getAmount() {
+        return BigDecimal.valueOf(minorUnits, fractionDigits(currency));
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits && currency.equals(money.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(minorUnits, currency);
+    }
+
+    @Override
+    public String toString() {
+        return getAmount() + " " + currency;
+    }
+}
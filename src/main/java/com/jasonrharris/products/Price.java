@@ -10,6 +10,7 @@ import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateSerializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
 import com.jasonrharris.converters.LocalDateTimeConverter;
 import com.jasonrharris.orders.OrderItem;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
@@ -20,11 +21,14 @@ import java.util.Locale;
 import java.util.Objects;
 
 @Entity
+@Table(indexes = @Index(name = "price_product_creation_idx", columnList = "product_id, creationDateTime"))
+@BatchSize(size = 100)
 public final class Price implements Comparable<Price> {
     static final BigDecimal UNSET_AMOUNT = new BigDecimal("-1");
+    private static final long UNCONVERTED = Long.MIN_VALUE;
 
     @Id
-    @SequenceGenerator(name= "PRICE_SEQUENCE", sequenceName = "PRICE_SEQUENCE_ID", initialValue=1, allocationSize = 1)
+    @SequenceGenerator(name= "PRICE_SEQUENCE", sequenceName = "PRICE_SEQUENCE_ID", initialValue=1, allocationSize = 50)
     @GeneratedValue(strategy=GenerationType.AUTO, generator="PRICE_SEQUENCE")
     private final long id;
 
@@ -41,6 +45,9 @@ public final class Price implements Comparable<Price> {
     @JsonSerialize(using = LocalDateTimeSerializer.class)
     private final LocalDateTime creationDateTime;
 
+    @Transient
+    private long amountInMinorUnits = UNCONVERTED;
+
     private Price(long id,Product product, BigDecimal amount, Currency currency) {
         this.id = id;
         this.product = product;
@@ -72,6 +79,17 @@ public final class Price implements Comparable<Price> {
         return amount;
     }
 
+    /**
+     * @return the amount in the Currency's minor units, converted once and then kept, as Prices are never modified
+     */
+    @JsonIgnore
+    public long getAmountInMinorUnits() {
+        if (amountInMinorUnits == UNCONVERTED) {
+            amountInMinorUnits = Money.toMinorUnits(amount, currency);
+        }
+        return amountInMinorUnits;
+    }
+
     public Currency getCurrency() {
         return currency;
     }
@@ -1,24 +1,117 @@
 package com.jasonrharris.products;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.jasonrharris.repositories.PriceRepository;
+import com.jasonrharris.repositories.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.lang.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.validation.constraints.NotNull;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * PriceManagement is currently fairly rudimentary and will need fleshing out (e.g. PriceBooks, rules about how many prices a Product can have per Ccy etc.)
+ * <p>
+ * As Prices are never modified once saved, it caches them by id, along with the newest Price of each Product. Both caches are
+ * bounded by size and time since the entry was written, and are written through whenever a Price is saved. Their statistics
+ * are published as the cache.* metrics of the caches `prices.by-id` and `prices.current-by-product-id`.
+ * <p>
+ * Each Product's Prices are also kept by creation date time (the `prices.history-by-product-id` cache), so the Price that was in
+ * effect at any time is found without a query once the Product's Prices have been read. Saved Prices are added to any history
+ * that is already cached. Prices inserted without it, as CatalogLoader does, drop what is cached for their Products instead.
  */
 
 @Service
-public class PriceManagement {
+public class PriceManagement implements MeterBinder {
     private final PriceRepository priceRepository;
+    private final ProductRepository productRepository;
+    private final Cache<Long, Price> pricesById;
+    private final Cache<Long, Price> currentPricesByProductId;
+    private final Cache<Long, NavigableMap<LocalDateTime, Price>> priceHistoriesByProductId;
 
-    public PriceManagement(@Autowired PriceRepository priceRepository) {
+    public PriceManagement(@Autowired PriceRepository priceRepository, @Autowired ProductRepository productRepository,
+                           @Value("${prices.cache.maximum-size:10000}") long cacheMaximumSize,
+                           @Value("${prices.cache.expire-after-write:10m}") Duration cacheExpireAfterWrite) {
         this.priceRepository = priceRepository;
+        this.productRepository = productRepository;
+        this.pricesById = Caffeine.newBuilder().maximumSize(cacheMaximumSize).expireAfterWrite(cacheExpireAfterWrite).recordStats().build();
+        this.currentPricesByProductId = Caffeine.newBuilder().maximumSize(cacheMaximumSize).expireAfterWrite(cacheExpireAfterWrite).recordStats().build();
+        this.priceHistoriesByProductId = Caffeine.newBuilder().maximumSize(cacheMaximumSize).expireAfterWrite(cacheExpireAfterWrite).recordStats().build();
     }
 
+    /**
+     * @return the Prices with the given ids that exist, keyed by id. Only the ids that are not cached are looked up, in a single query.
+     */
+    public Map<Long, Price> getPricesById(Collection<Long> ids) {
+        return pricesById.getAll(ids, this::findPricesById);
+    }
+
+    /**
+     * @return the newest Price of the Product, if it has one
+     */
+    public Optional<Price> getCurrentPrice(long productId) {
+        return Optional.ofNullable(currentPricesByProductId.get(productId, priceRepository::findTopByProductIdOrderByCreationDateTimeDesc));
+    }
+
+    /**
+     * @return the Price of the Product that was in effect at the given time, i.e. its newest Price created at or before then, if any
+     */
+    public Optional<Price> getPriceAt(long productId, LocalDateTime at) {
+        Map.Entry<LocalDateTime, Price> effectivePrice = priceHistoriesByProductId.get(productId, this::findPriceHistory).floorEntry(at);
+        return effectivePrice == null ? Optional.empty() : Optional.of(effectivePrice.getValue());
+    }
+
+    /**
+     * @return whether the Price with the given id was the one in effect for the Product at the given time
+     */
+    public boolean isPriceEffectiveAt(long productId, long priceId, LocalDateTime at) {
+        return getPriceAt(productId, at).map(effectivePrice -> effectivePrice.getId() == priceId).orElse(false);
+    }
+
+    /**
+     * Drops the cached current Price and Price history of each of the Products, once Prices have been saved for them elsewhere
+     */
+    public void forgetPricesOf(Collection<Long> productIds) {
+        currentPricesByProductId.invalidateAll(productIds);
+        priceHistoriesByProductId.invalidateAll(productIds);
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry meterRegistry) {
+        CaffeineCacheMetrics.monitor(meterRegistry, pricesById, "prices.by-id");
+        CaffeineCacheMetrics.monitor(meterRegistry, currentPricesByProductId, "prices.current-by-product-id");
+        CaffeineCacheMetrics.monitor(meterRegistry, priceHistoriesByProductId, "prices.history-by-product-id");
+    }
+
+    public CacheStats getPricesByIdCacheStats() {
+        return pricesById.stats();
+    }
+
+    public CacheStats getCurrentPricesCacheStats() {
+        return currentPricesByProductId.stats();
+    }
+
+    @Transactional
     public Price getExistingOrSaveUpdatedPrice(Product updatedProduct, Product matchingProduct) {
 
         Optional<Price> optUpdatedPrice = updatedProduct.getCurrentPrice();
@@ -30,10 +123,30 @@ public class PriceManagement {
         }
     }
 
+    @Transactional
     public Optional<Price> saveNewProductPrice(Product product) {
         return product.getCurrentPrice().map(price -> savePrice(Price.createPrice(product, price.getAmount(), price.getCurrency())));
     }
 
+    private Map<Long, Price> findPricesById(Iterable<? extends Long> ids) {
+        List<Long> idsToFind = new ArrayList<>();
+        ids.forEach(idsToFind::add);
+        return priceRepository.findAllById(idsToFind).stream().collect(Collectors.toMap(Price::getId, Function.identity()));
+    }
+
+    /*
+    Of Prices created at the same moment, the one with the higher id (i.e. saved last) is kept, as updateCurrentPriceIfNewer would make it current.
+     */
+    private NavigableMap<LocalDateTime, Price> findPriceHistory(long productId) {
+        NavigableMap<LocalDateTime, Price> priceHistory = new ConcurrentSkipListMap<>();
+        priceRepository.findAllByProductIdOrderByCreationDateTime(productId).forEach(price -> addToPriceHistory(priceHistory, price));
+        return priceHistory;
+    }
+
+    private static void addToPriceHistory(NavigableMap<LocalDateTime, Price> priceHistory, Price price) {
+        priceHistory.merge(price.getCreationDateTime(), price, (price1, price2) -> price1.getId() > price2.getId() ? price1 : price2);
+    }
+
     private boolean isPriceUnchanged(@NotNull Price updatedPrice, Product matchingProduct) {
         if (updatedPrice.getAmount().equals(Price.UNSET_AMOUNT)) {
             return true;
@@ -44,7 +157,34 @@ public class PriceManagement {
         return false;
     }
 
+    /*
+    The Price insert and the move of the Product's current_price_id pointer happen in the caller's transaction, so
+    readers never see a Product pointing at a Price that does not exist or at an older Price than the latest one.
+     */
     private Price savePrice(Price price) {
-        return priceRepository.save(price);
+        Price savedPrice = priceRepository.save(price);
+        boolean isNewestPrice = productRepository.updateCurrentPriceIfNewer(savedPrice.getProduct().getId(), savedPrice.getId()) > 0;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cacheSavedPrice(savedPrice, isNewestPrice);
+                }
+            });
+        } else {
+            cacheSavedPrice(savedPrice, isNewestPrice);
+        }
+        return savedPrice;
+    }
+
+    private void cacheSavedPrice(Price savedPrice, boolean isNewestPrice) {
+        pricesById.put(savedPrice.getId(), savedPrice);
+        if (isNewestPrice) {
+            currentPricesByProductId.put(savedPrice.getProduct().getId(), savedPrice);
+        }
+        priceHistoriesByProductId.asMap().computeIfPresent(savedPrice.getProduct().getId(), (productId, priceHistory) -> {
+            addToPriceHistory(priceHistory, savedPrice);
+            return priceHistory;
+        });
     }
 }
@@ -1,31 +1,29 @@
 package com.jasonrharris.products;
 
 import com.fasterxml.jackson.annotation.JsonManagedReference;
-import org.hibernate.annotations.JoinColumnOrFormula;
-import org.hibernate.annotations.JoinFormula;
+import org.hibernate.annotations.BatchSize;
 
 import java.util.Objects;
 import java.util.Optional;
 import javax.persistence.*;
 
 @Entity
+@BatchSize(size = 100)
 public class Product {
     @Id
-    @SequenceGenerator(name= "PROD_SEQUENCE", sequenceName = "PROD_SEQUENCE_ID", initialValue=1, allocationSize = 1)
+    @SequenceGenerator(name= "PROD_SEQUENCE", sequenceName = "PROD_SEQUENCE_ID", initialValue=1, allocationSize = 50)
     @GeneratedValue(strategy=GenerationType.AUTO, generator="PROD_SEQUENCE")
     private final long id;
 
     @Column
     private final String name;
 
+    /**
+     * Denormalised pointer to the latest Price, kept up to date by {@link PriceManagement} whenever a newer Price is saved. Saving a
+     * Product never updates it, so a rename cannot point the Product back at an older Price saved concurrently.
+     */
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinFormula("(" +
-            "SELECT pc.id " +
-            "FROM Price pc " +
-            "WHERE pc.product_id = id " +
-            "ORDER BY pc.creation_date_time DESC " +
-            "LIMIT 1" +
-            ")")
+    @JoinColumn(name = "current_price_id", updatable = false)
     private final Price currentPrice;
 
     @SuppressWarnings("unused") //needed by Hibernate
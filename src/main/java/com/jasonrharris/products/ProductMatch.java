@@ -0,0 +1,30 @@
+package com.jasonrharris.products;
+
+/**
+ * A Product found by {@link ProductSearch}. Only its id and name are kept in the search index.
+ */
+public final class ProductMatch {
+    private final long id;
+    private final String name;
+
+    ProductMatch(long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductMatch{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                '}';
+    }
+}
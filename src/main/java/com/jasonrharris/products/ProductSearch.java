@@ -0,0 +1,254 @@
+package com.jasonrharris.products;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Finds Products by name from an index held in memory. Names are lower cased and split into words (runs of letters and digits).
+ * <p>
+ * Products whose names start with the query come first, found with a range of the Products kept sorted by name, so type-ahead
+ * for a short prefix only reads as many Products as it returns. Any further matches are Products with, for each word of the query,
+ * a word starting with it. They are found from the Products indexed under each word, with the words kept sorted so that those
+ * starting with a prefix are one range of them (as a prefix tree would give), and each word's Products kept sorted by name, so
+ * they are merged in name order and only read until enough matches are found.
+ * <p>
+ * The index is built, in parallel, from the product table on start up, and then kept up to date by {@link #index(long, String)}.
+ */
+@Service
+public class ProductSearch implements SmartLifecycle {
+    public static final int MAX_LIMIT = 100;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final String[] NO_WORDS = new String[0];
+    private static final int PREFIX_BITS_LENGTH = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, IndexedProduct> productsById = new ConcurrentHashMap<>();
+    private final NavigableSet<IndexedProduct> productsByName = new ConcurrentSkipListSet<>();
+    private final NavigableMap<String, NavigableSet<IndexedProduct>> productsByWord = new ConcurrentSkipListMap<>();
+    private volatile boolean running;
+
+    public ProductSearch(@Autowired JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return up to `limit` Products: those whose names start with the query, then the other Products with a word starting with
+     * each word of the query, each ordered by name
+     */
+    public List<ProductMatch> search(String query, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        String[] queryWords = words(query);
+        if (queryWords.length == 0) {
+            throw new IllegalArgumentException("The query must contain a letter or digit");
+        }
+        String normalisedQuery = String.join(" ", queryWords);
+
+        List<ProductMatch> matches = new ArrayList<>(limit);
+        for (IndexedProduct product : productsByName.subSet(IndexedProduct.first(normalisedQuery), IndexedProduct.first(normalisedQuery + Character.MAX_VALUE))) {
+            matches.add(product.toMatch());
+            if (matches.size() == limit) {
+                return matches;
+            }
+        }
+
+        // the longest word is likely to have the fewest Products, so only its Products are read, in name order, and checked against the others
+        String longestWord = Arrays.stream(queryWords).max(Comparator.comparingInt(String::length)).orElseThrow();
+        long queryBits = prefixBits(queryWords);
+        PriorityQueue<WordCursor> cursors = new PriorityQueue<>();
+        for (NavigableSet<IndexedProduct> products : productsByWord.subMap(longestWord, longestWord + Character.MAX_VALUE).values()) {
+            WordCursor cursor = new WordCursor(products.iterator());
+            if (cursor.next()) {
+                cursors.add(cursor);
+            }
+        }
+        IndexedProduct previous = null;
+        while (matches.size() < limit && !cursors.isEmpty()) {
+            WordCursor cursor = cursors.poll();
+            IndexedProduct product = cursor.current;
+            if (cursor.next()) {
+                cursors.add(cursor);
+            }
+            // a Product with several words starting with the longest word is read once for each of them, one after the other
+            if (product != previous && (product.prefixBits & queryBits) == queryBits && product.hasWordsStartingWith(queryWords)
+                    && !product.normalisedName.startsWith(normalisedQuery)) {
+                matches.add(product.toMatch());
+            }
+            previous = product;
+        }
+        return matches;
+    }
+
+    /**
+     * Adds the Product to the index, or replaces it if it is already indexed.
+     */
+    public synchronized void index(long id, String name) {
+        IndexedProduct previous = productsById.get(id);
+        if (previous != null) {
+            productsByName.remove(previous);
+            for (String word : previous.words) {
+                productsByWord.computeIfPresent(word, (sameWord, products) -> {
+                    products.remove(previous);
+                    return products.isEmpty() ? null : products;
+                });
+            }
+        }
+        add(IndexedProduct.of(id, name));
+    }
+
+    /*
+    Used to build the index while nothing else is using it, so Products are added from many threads without taking the lock.
+     */
+    void indexAll(long[] ids, String[] names) {
+        IntStream.range(0, ids.length).parallel().forEach(i -> add(IndexedProduct.of(ids[i], names[i])));
+    }
+
+    public int size() {
+        return productsById.size();
+    }
+
+    private void add(IndexedProduct product) {
+        productsById.put(product.id, product);
+        productsByName.add(product);
+        for (String word : product.words) {
+            productsByWord.computeIfAbsent(word, newWord -> new ConcurrentSkipListSet<>()).add(product);
+        }
+    }
+
+    /*
+    A bit for each of the first one, two and three letters of each word, so most Products without a word starting with each word
+    of a query are passed over without reading their words, which would mean following several more references per Product.
+     */
+    private static long prefixBits(String[] words) {
+        long bits = 0;
+        for (String word : words) {
+            for (int length = 1; length <= Math.min(PREFIX_BITS_LENGTH, word.length()); length++) {
+                bits |= 1L << (word.substring(0, length).hashCode() & 63);
+            }
+        }
+        return bits;
+    }
+
+    static String[] words(String text) {
+        if (text == null) {
+            return NO_WORDS;
+        }
+        return Arrays.stream(NON_WORD.split(text.toLowerCase(Locale.ROOT))).filter(word -> !word.isEmpty()).toArray(String[]::new);
+    }
+
+    @Override
+    public void start() {
+        List<Long> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, name FROM product", resultSet -> {
+            ids.add(resultSet.getLong("id"));
+            names.add(resultSet.getString("name"));
+        });
+        indexAll(ids.stream().mapToLong(Long::longValue).toArray(), names.toArray(String[]::new));
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /*
+    Starts after the catalog loader (Integer.MAX_VALUE - 3), so the index is built with the Products it loads on start up. No search
+    is answered from a partly built index whatever the phase, as the web server only starts once every lifecycle bean has.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 2;
+    }
+
+    private static final class WordCursor implements Comparable<WordCursor> {
+        private final Iterator<IndexedProduct> products;
+        private IndexedProduct current;
+
+        private WordCursor(Iterator<IndexedProduct> products) {
+            this.products = products;
+        }
+
+        private boolean next() {
+            current = products.hasNext() ? products.next() : null;
+            return current != null;
+        }
+
+        @Override
+        public int compareTo(WordCursor other) {
+            return current.compareTo(other.current);
+        }
+    }
+
+    private static final class IndexedProduct implements Comparable<IndexedProduct> {
+        private final long id;
+        private final String name;
+        private final String normalisedName;
+        private final String[] words;
+        private final long prefixBits;
+
+        private IndexedProduct(long id, String name, String[] words, String normalisedName) {
+            this.id = id;
+            this.name = name;
+            this.words = words;
+            this.normalisedName = normalisedName;
+            this.prefixBits = prefixBits(words);
+        }
+
+        private static IndexedProduct of(long id, String name) {
+            String[] words = words(name);
+            return new IndexedProduct(id, name, words, String.join(" ", words));
+        }
+
+        /**
+         * @return a key that sorts before every Product with the normalised name
+         */
+        private static IndexedProduct first(String normalisedName) {
+            return new IndexedProduct(Long.MIN_VALUE, null, NO_WORDS, normalisedName);
+        }
+
+        private boolean hasWordsStartingWith(String[] prefixes) {
+            for (String prefix : prefixes) {
+                if (!hasWordStartingWith(prefix)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean hasWordStartingWith(String prefix) {
+            for (String word : words) {
+                if (word.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private ProductMatch toMatch() {
+            return new ProductMatch(id, name);
+        }
+
+        @Override
+        public int compareTo(IndexedProduct other) {
+            int byName = normalisedName.compareTo(other.normalisedName);
+            return byName != 0 ? byName : Long.compare(id, other.id);
+        }
+    }
+}
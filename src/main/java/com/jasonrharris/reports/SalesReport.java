@@ -0,0 +1,144 @@
+package com.jasonrharris.reports;
+
+import com.jasonrharris.orders.OrderArchive;
+import com.jasonrharris.products.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Reports sales with one grouped query over order_item joined to price (and order_, for the date), so the database does the summing
+ * and only one row per group is read back. Rows are passed on as they are read rather than collected, and no entities are loaded.
+ * Archived months are reported on from the archive's columns, totalled here in the same groups and order, ahead of the database's.
+ */
+@Service
+public class SalesReport implements SalesSource {
+    static final int FETCH_SIZE = 1000;
+
+    public enum Granularity {
+        HOUR, DAY, MONTH;
+
+        /**
+         * @return the start of the hour, day or month that the date time is in
+         */
+        public LocalDateTime truncate(LocalDateTime dateTime) {
+            switch (this) {
+                case HOUR:
+                    return dateTime.truncatedTo(ChronoUnit.HOURS);
+                case DAY:
+                    return dateTime.truncatedTo(ChronoUnit.DAYS);
+                default:
+                    return dateTime.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            }
+        }
+
+        public static Granularity parse(String granularity) {
+            try {
+                return valueOf(granularity.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("granularity must be hour, day or month, not " + granularity);
+            }
+        }
+    }
+
+    public enum GroupBy {
+        PRODUCT, CURRENCY;
+
+        public static GroupBy parse(String groupBy) {
+            try {
+                return valueOf(groupBy.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("groupBy must be product or currency, not " + groupBy);
+            }
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OrderArchive orderArchive;
+
+    public SalesReport(@Autowired DataSource dataSource, @Autowired OrderArchive orderArchive) {
+        this.orderArchive = orderArchive;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    @Override
+    public void streamSales(LocalDateTime from, LocalDateTime to, Granularity granularity, GroupBy groupBy, Consumer<SalesReportRow> rowConsumer) {
+        SalesSource.checkRange(from, to);
+        boolean byProduct = groupBy == GroupBy.PRODUCT;
+        OrderArchive.Tiers tiers = orderArchive.getTiers();
+        streamArchivedSales(tiers, from, to, granularity, byProduct, rowConsumer);
+        if (!tiers.hasHotBefore(to)) {
+            return;
+        }
+        jdbcTemplate.query(salesQuery(granularity, byProduct), resultSet -> {
+            rowConsumer.accept(new SalesReportRow(
+                    resultSet.getTimestamp("bucket").toLocalDateTime(),
+                    byProduct ? resultSet.getLong("product_id") : null,
+                    Currency.getInstance(resultSet.getString("currency")),
+                    resultSet.getLong("quantity"),
+                    resultSet.getBigDecimal("revenue"),
+                    resultSet.getLong("orders")));
+        }, Timestamp.valueOf(tiers.hotFrom(from)), Timestamp.valueOf(to));
+    }
+
+    /*
+    Archived months are whole, so no bucket has sales in both tiers. An Order's items are read together, so it is counted once per
+    group by remembering the last Order counted in each.
+     */
+    private static void streamArchivedSales(OrderArchive.Tiers tiers, LocalDateTime from, LocalDateTime to, Granularity granularity, boolean byProduct,
+                                            Consumer<SalesReportRow> rowConsumer) {
+        Comparator<ArchivedGroup> groupOrder = Comparator.comparing((ArchivedGroup group) -> group.bucket)
+                .thenComparingLong(group -> group.productId)
+                .thenComparing(group -> group.currency.getCurrencyCode());
+        Map<ArchivedGroup, long[]> groups = new TreeMap<>(groupOrder);
+        tiers.forEachItem(from, to, (orderId, creationDateTime, productId, quantity, priceMinorUnits, currency) -> {
+            long[] totals = groups.computeIfAbsent(new ArchivedGroup(granularity.truncate(creationDateTime), byProduct ? productId : 0L, currency),
+                    group -> new long[]{0, 0, 0, Long.MIN_VALUE});
+            totals[0] += quantity;
+            totals[1] = Math.addExact(totals[1], Math.multiplyExact(priceMinorUnits, quantity));
+            if (totals[3] != orderId) {
+                totals[2]++;
+                totals[3] = orderId;
+            }
+        });
+        groups.forEach((group, totals) -> rowConsumer.accept(new SalesReportRow(group.bucket, byProduct ? group.productId : null, group.currency,
+                totals[0], Money.ofMinorUnits(totals[1], group.currency).getAmount(), totals[2])));
+    }
+
+    private static final class ArchivedGroup {
+        private final LocalDateTime bucket;
+        private final long productId;
+        private final Currency currency;
+
+        private ArchivedGroup(LocalDateTime bucket, long productId, Currency currency) {
+            this.bucket = bucket;
+            this.productId = productId;
+            this.currency = currency;
+        }
+    }
+
+    /*
+    The granularity is one of the enum's own names, so it is safe to put straight into the SQL.
+     */
+    private static String salesQuery(Granularity granularity, boolean byProduct) {
+        String bucket = "DATE_TRUNC('" + granularity.name() + "', o.creation_date_time)";
+        String groups = bucket + (byProduct ? ", oi.product_id" : "") + ", p.currency";
+        return "SELECT " + bucket + " AS bucket" + (byProduct ? ", oi.product_id" : "") + ", p.currency, " +
+                "SUM(oi.quantity) AS quantity, SUM(oi.quantity * p.amount) AS revenue, COUNT(DISTINCT o.id) AS orders " +
+                "FROM order_ o JOIN order_item oi ON oi.order_id = o.id JOIN price p ON p.id = oi.price_id " +
+                "WHERE o.creation_date_time >= ? AND o.creation_date_time < ? " +
+                "GROUP BY " + groups + " ORDER BY " + groups;
+    }
+}
@@ -0,0 +1,68 @@
+package com.jasonrharris.reports;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Currency;
+
+/**
+ * The sales in one time bucket for one Product and Currency, or for one Currency across all Products.
+ */
+public class SalesReportRow {
+    private final LocalDateTime bucket;
+    private final Long productId;
+    private final Currency currency;
+    private final long quantity;
+    private final BigDecimal revenue;
+    private final long orders;
+
+    public SalesReportRow(LocalDateTime bucket, Long productId, Currency currency, long quantity, BigDecimal revenue, long orders) {
+        this.bucket = bucket;
+        this.productId = productId;
+        this.currency = currency;
+        this.quantity = quantity;
+        this.revenue = revenue;
+        this.orders = orders;
+    }
+
+    /**
+     * @return the start of the hour, day or month
+     */
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    public LocalDateTime getBucket() {
+        return bucket;
+    }
+
+    /**
+     * @return the Product, or null when the report is grouped by Currency only
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getProductId() {
+        return productId;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the number of units sold
+     */
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * @return the number of Orders with at least one of the items
+     */
+    public long getOrders() {
+        return orders;
+    }
+}
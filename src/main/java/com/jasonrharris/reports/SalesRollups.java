@@ -0,0 +1,294 @@
+package com.jasonrharris.reports;
+
+import com.jasonrharris.orders.OrderItem;
+import com.jasonrharris.orders.OrderWrittenListener;
+import com.jasonrharris.products.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Keeps running totals of the sales in each hour per Product and Currency, and per Currency across all Products, as each Order is
+ * written. Totals are added to LongAdders, so writers on different threads do not contend with each other or with reads.
+ * <p>
+ * The totals are flushed to the sales_rollup table periodically and on shutdown. On startup the hours from just before the last flush
+ * onwards are worked out again from the Orders, so Orders written after the last flush are not lost and none are counted twice.
+ * Reports then read one row per hour rather than every order line. The table is created and dropped with the schema (see
+ * jdbc-tables-create.sql), so it only starts empty when the Orders do.
+ */
+@Service
+public class SalesRollups implements SalesSource, OrderWrittenListener, SmartLifecycle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SalesRollups.class);
+    static final long ALL_PRODUCTS = 0L;
+    private static final Duration RETAINED_IN_MEMORY = Duration.ofDays(1);
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1, 1, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(9999, 1, 1, 0, 0);
+
+    static final String UPDATE_ROLLUP = "UPDATE sales_rollup SET quantity = quantity + ?, revenue_minor_units = revenue_minor_units + ?, orders = orders + ? " +
+            "WHERE bucket = ? AND product_id = ? AND currency = ?";
+    static final String INSERT_ROLLUP = "INSERT INTO sales_rollup (quantity, revenue_minor_units, orders, bucket, product_id, currency) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_FLUSHED_AT = "SELECT flushed_at FROM sales_rollup_flush WHERE id = 1";
+    private static final String MERGE_FLUSHED_AT = "MERGE INTO sales_rollup_flush (id, flushed_at) KEY (id) VALUES (1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SalesReport salesReport;
+    private final Duration flushInterval;
+    private final Map<RollupKey, Rollup> rollups = new ConcurrentHashMap<>();
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private ScheduledExecutorService flusher;
+    private volatile boolean running;
+
+    @Autowired
+    public SalesRollups(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, SalesReport salesReport,
+                        @Value("${reports.rollups.flush-interval:10s}") Duration flushInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.salesReport = salesReport;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Adds the Order's items to the current totals. Each Order is counted once per Product and once per Currency, however many items it has.
+     */
+    @Override
+    public void orderWritten(LocalDateTime creationDateTime, Collection<OrderItem> orderItems) {
+        LocalDateTime bucket = creationDateTime.truncatedTo(ChronoUnit.HOURS);
+        Set<RollupKey> countedKeys = new HashSet<>();
+        for (OrderItem orderItem : orderItems) {
+            Currency currency = orderItem.getPrice().getCurrency();
+            long revenueMinorUnits = orderItem.getAmountInMinorUnits();
+            RollupKey productKey = new RollupKey(bucket, orderItem.getProduct().getId(), currency);
+            RollupKey currencyKey = new RollupKey(bucket, ALL_PRODUCTS, currency);
+            rollups.computeIfAbsent(productKey, key -> new Rollup()).add(orderItem.getQuantity(), revenueMinorUnits, countedKeys.add(productKey));
+            rollups.computeIfAbsent(currencyKey, key -> new Rollup()).add(orderItem.getQuantity(), revenueMinorUnits, countedKeys.add(currencyKey));
+        }
+    }
+
+    /**
+     * Reports from the flushed hourly totals plus any not yet flushed. As totals are kept per hour, `from` and `to` are in effect
+     * rounded up to the hour.
+     */
+    @Override
+    public void streamSales(LocalDateTime from, LocalDateTime to, SalesReport.Granularity granularity, SalesReport.GroupBy groupBy, Consumer<SalesReportRow> rowConsumer) {
+        SalesSource.checkRange(from, to);
+        boolean byProduct = groupBy == SalesReport.GroupBy.PRODUCT;
+        Map<RollupKey, long[]> reportRows = new TreeMap<>();
+        flushLock.readLock().lock();
+        try {
+            String bucket = "DATE_TRUNC('" + granularity.name() + "', bucket)";
+            jdbcTemplate.query("SELECT " + bucket + " AS report_bucket, product_id, currency, SUM(quantity), SUM(revenue_minor_units), SUM(orders) " +
+                            "FROM sales_rollup WHERE bucket >= ? AND bucket < ? AND product_id " + (byProduct ? "<> " : "= ") + ALL_PRODUCTS + " " +
+                            "GROUP BY " + bucket + ", product_id, currency",
+                    resultSet -> {
+                        long[] totals = reportRows.computeIfAbsent(new RollupKey(resultSet.getTimestamp(1).toLocalDateTime(), resultSet.getLong(2),
+                                Currency.getInstance(resultSet.getString(3))), key -> new long[3]);
+                        totals[0] += resultSet.getLong(4);
+                        totals[1] += resultSet.getLong(5);
+                        totals[2] += resultSet.getLong(6);
+                    }, Timestamp.valueOf(from), Timestamp.valueOf(to));
+
+            rollups.forEach((key, rollup) -> {
+                if (!key.bucket.isBefore(from) && key.bucket.isBefore(to) && (key.productId != ALL_PRODUCTS) == byProduct) {
+                    long[] totals = reportRows.computeIfAbsent(new RollupKey(granularity.truncate(key.bucket), key.productId, key.currency), reportKey -> new long[3]);
+                    totals[0] += rollup.quantity.sum() - rollup.flushedQuantity;
+                    totals[1] += rollup.revenueMinorUnits.sum() - rollup.flushedRevenueMinorUnits;
+                    totals[2] += rollup.orders.sum() - rollup.flushedOrders;
+                }
+            });
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        reportRows.forEach((key, totals) -> rowConsumer.accept(new SalesReportRow(key.bucket, byProduct ? key.productId : null, key.currency,
+                totals[0], Money.ofMinorUnits(totals[1], key.currency).getAmount(), totals[2])));
+    }
+
+    /**
+     * Writes what has been added to each total since the last flush. If the write fails, the same amounts are written by the next flush.
+     */
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            LocalDateTime flushedAt = LocalDateTime.now();
+            Map<RollupKey, long[]> sums = new HashMap<>();
+            List<Object[]> deltas = new ArrayList<>();
+            rollups.forEach((key, rollup) -> {
+                long[] sum = {rollup.quantity.sum(), rollup.revenueMinorUnits.sum(), rollup.orders.sum()};
+                if (sum[0] != rollup.flushedQuantity || sum[1] != rollup.flushedRevenueMinorUnits || sum[2] != rollup.flushedOrders) {
+                    sums.put(key, sum);
+                    deltas.add(new Object[]{sum[0] - rollup.flushedQuantity, sum[1] - rollup.flushedRevenueMinorUnits, sum[2] - rollup.flushedOrders,
+                            Timestamp.valueOf(key.bucket), key.productId, key.currency.getCurrencyCode()});
+                }
+            });
+            transactionTemplate.executeWithoutResult(status -> {
+                addToRollupTable(deltas);
+                jdbcTemplate.update(MERGE_FLUSHED_AT, Timestamp.valueOf(flushedAt));
+            });
+            sums.forEach((key, sum) -> rollups.get(key).flushed(sum));
+
+            LocalDateTime retainedFrom = flushedAt.minus(RETAINED_IN_MEMORY);
+            rollups.entrySet().removeIf(entry -> entry.getKey().bucket.isBefore(retainedFrom) && entry.getValue().isFlushed());
+        } catch (DataAccessException | TransactionException e) {
+            LOGGER.warn("Could not flush the sales rollups, retrying in {}", flushInterval, e);
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    private void addToRollupTable(List<Object[]> deltas) {
+        int[] updated = jdbcTemplate.batchUpdate(UPDATE_ROLLUP, deltas);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                inserts.add(deltas.get(i));
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_ROLLUP, inserts);
+    }
+
+    /*
+    An Order may be created just before a flush but only written after it, so the hour before the last flush is worked out again too.
+     */
+    private void rebuild() {
+        List<LocalDateTime> lastFlushes = jdbcTemplate.query(SELECT_FLUSHED_AT, (resultSet, row) -> resultSet.getTimestamp(1).toLocalDateTime());
+        LocalDateTime rebuildFrom = lastFlushes.isEmpty() ? BEGINNING : lastFlushes.get(0).truncatedTo(ChronoUnit.HOURS).minusHours(1);
+        LocalDateTime rebuiltAt = LocalDateTime.now();
+
+        List<Object[]> rows = new ArrayList<>();
+        for (SalesReport.GroupBy groupBy : SalesReport.GroupBy.values()) {
+            salesReport.streamSales(rebuildFrom, END, SalesReport.Granularity.HOUR, groupBy, row -> rows.add(new Object[]{
+                    row.getQuantity(), Money.toMinorUnits(row.getRevenue(), row.getCurrency()), row.getOrders(), Timestamp.valueOf(row.getBucket()),
+                    row.getProductId() == null ? ALL_PRODUCTS : row.getProductId(), row.getCurrency().getCurrencyCode()}));
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM sales_rollup WHERE bucket >= ?", Timestamp.valueOf(rebuildFrom));
+            jdbcTemplate.batchUpdate(INSERT_ROLLUP, rows);
+            jdbcTemplate.update(MERGE_FLUSHED_AT, Timestamp.valueOf(rebuiltAt));
+        });
+        LOGGER.info("Rebuilt {} sales rollups from {}", rows.size(), rebuildFrom);
+    }
+
+    /*
+    Rebuilds before the web server starts taking Orders.
+     */
+    @Override
+    public synchronized void start() {
+        rollups.clear();
+        rebuild();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sales-rollup-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /*
+    Stops after the Order write-behind (Integer.MAX_VALUE - 2), so the Orders it drains on shutdown are flushed too.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 3;
+    }
+
+    private static final class RollupKey implements Comparable<RollupKey> {
+        private final LocalDateTime bucket;
+        private final long productId;
+        private final Currency currency;
+
+        private RollupKey(LocalDateTime bucket, long productId, Currency currency) {
+            this.bucket = bucket;
+            this.productId = productId;
+            this.currency = currency;
+        }
+
+        @Override
+        public int compareTo(RollupKey other) {
+            int byBucket = bucket.compareTo(other.bucket);
+            if (byBucket != 0) {
+                return byBucket;
+            }
+            int byProduct = Long.compare(productId, other.productId);
+            return byProduct != 0 ? byProduct : currency.getCurrencyCode().compareTo(other.currency.getCurrencyCode());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RollupKey rollupKey = (RollupKey) o;
+            return productId == rollupKey.productId && bucket.equals(rollupKey.bucket) && currency.equals(rollupKey.currency);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucket, productId, currency);
+        }
+    }
+
+    /*
+    The flushed amounts are only read and written while holding the flush lock.
+     */
+    private static final class Rollup {
+        private final LongAdder quantity = new LongAdder();
+        private final LongAdder revenueMinorUnits = new LongAdder();
+        private final LongAdder orders = new LongAdder();
+        private long flushedQuantity;
+        private long flushedRevenueMinorUnits;
+        private long flushedOrders;
+
+        private void add(long itemQuantity, long itemRevenueMinorUnits, boolean newOrder) {
+            quantity.add(itemQuantity);
+            revenueMinorUnits.add(itemRevenueMinorUnits);
+            if (newOrder) {
+                orders.increment();
+            }
+        }
+
+        private void flushed(long[] sum) {
+            flushedQuantity = sum[0];
+            flushedRevenueMinorUnits = sum[1];
+            flushedOrders = sum[2];
+        }
+
+        private boolean isFlushed() {
+            return quantity.sum() == flushedQuantity && revenueMinorUnits.sum() == flushedRevenueMinorUnits && orders.sum() == flushedOrders;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.jasonrharris.reports;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Somewhere sales report rows can be read from.
+ */
+public interface SalesSource {
+
+    /**
+     * Reports the sales of Orders created from `from` (inclusive) to `to` (exclusive). Revenue is always kept separate per Currency.
+     *
+     * @param rowConsumer is given each row in bucket order, then by Product (if grouped by Product) and Currency
+     */
+    void streamSales(LocalDateTime from, LocalDateTime to, SalesReport.Granularity granularity, SalesReport.GroupBy groupBy, Consumer<SalesReportRow> rowConsumer);
+
+    /**
+     * Rejects a report that does not end after it starts, so that callers can check before they start writing one out
+     */
+    static void checkRange(LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+    }
+}
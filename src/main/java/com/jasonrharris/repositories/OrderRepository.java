@@ -1,11 +1,86 @@
 package com.jasonrharris.repositories;
 
 import com.jasonrharris.orders.Order;
+import com.jasonrharris.orders.OrderHeader;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 public interface OrderRepository extends JpaRepository<Order, Long> {
-    List<Order> findAllByCreationDateTimeAfterAndCreationDateTimeBefore(LocalDateTime after, LocalDateTime before);
+    int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Loads the Orders together with their items and each item's Price and Product in a single query.
+     */
+    @EntityGraph(attributePaths = {"orderItems", "orderItems.price", "orderItems.product"})
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("SELECT DISTINCT o FROM Order_ o WHERE o.creationDateTime > :after AND o.creationDateTime < :before")
+    List<Order> findAllByCreationDateTimeAfterAndCreationDateTimeBefore(@Param("after") LocalDateTime after, @Param("before") LocalDateTime before);
+
+    /**
+     * Reads only the Orders' own rows, with their stored totals, and never the order_item table.
+     */
+    @Query("SELECT new com.jasonrharris.orders.OrderHeader(o.id, o.creationDateTime, o.buyersEmail, o.totals) FROM Order_ o " +
+            "WHERE o.creationDateTime > :after AND o.creationDateTime < :before ORDER BY o.creationDateTime, o.id")
+    List<OrderHeader> findHeadersBetween(@Param("after") LocalDateTime after, @Param("before") LocalDateTime before);
+
+    List<Order> findAllByCreationDateTimeAfterAndCreationDateTimeBeforeOrderByCreationDateTimeAscIdAsc(LocalDateTime after, LocalDateTime before, Pageable pageable);
+
+    @Query("SELECT o FROM Order_ o " +
+            "WHERE o.creationDateTime > :after AND o.creationDateTime < :before " +
+            "AND (o.creationDateTime > :cursorDateTime OR (o.creationDateTime = :cursorDateTime AND o.id > :cursorId)) " +
+            "ORDER BY o.creationDateTime, o.id")
+    List<Order> findPageAfterCursor(@Param("after") LocalDateTime after, @Param("before") LocalDateTime before,
+                                    @Param("cursorDateTime") LocalDateTime cursorDateTime, @Param("cursorId") long cursorId, Pageable pageable);
+
+    /**
+     * A page of one buyer's Orders from `retainedFrom` on, found through the buyer key index. The key is a hash, so the addresses are
+     * compared as well.
+     */
+    @Query("SELECT o FROM Order_ o WHERE o.buyerKey = :buyerKey AND LOWER(TRIM(o.buyersEmail)) = :buyersEmail AND o.creationDateTime >= :retainedFrom " +
+            "ORDER BY o.creationDateTime, o.id")
+    List<Order> findPageByBuyer(@Param("buyerKey") long buyerKey, @Param("buyersEmail") String normalisedBuyersEmail,
+                                @Param("retainedFrom") LocalDateTime retainedFrom, Pageable pageable);
+
+    /**
+     * The redundant `creationDateTime >= :cursorDateTime` lets the scan start at the cursor's position in the buyer key index.
+     */
+    @Query("SELECT o FROM Order_ o WHERE o.buyerKey = :buyerKey AND LOWER(TRIM(o.buyersEmail)) = :buyersEmail AND o.creationDateTime >= :cursorDateTime " +
+            "AND o.creationDateTime >= :retainedFrom AND (o.creationDateTime > :cursorDateTime OR (o.creationDateTime = :cursorDateTime AND o.id > :cursorId)) " +
+            "ORDER BY o.creationDateTime, o.id")
+    List<Order> findPageByBuyerAfterCursor(@Param("buyerKey") long buyerKey, @Param("buyersEmail") String normalisedBuyersEmail,
+                                           @Param("cursorDateTime") LocalDateTime cursorDateTime, @Param("cursorId") long cursorId,
+                                           @Param("retainedFrom") LocalDateTime retainedFrom, Pageable pageable);
+
+    @Query("SELECT new com.jasonrharris.orders.OrderHeader(o.id, o.creationDateTime, o.buyersEmail, o.totals) FROM Order_ o " +
+            "WHERE o.buyerKey = :buyerKey AND LOWER(TRIM(o.buyersEmail)) = :buyersEmail AND o.creationDateTime >= :retainedFrom ORDER BY o.creationDateTime, o.id")
+    List<OrderHeader> findHeaderPageByBuyer(@Param("buyerKey") long buyerKey, @Param("buyersEmail") String normalisedBuyersEmail,
+                                            @Param("retainedFrom") LocalDateTime retainedFrom, Pageable pageable);
+
+    @Query("SELECT new com.jasonrharris.orders.OrderHeader(o.id, o.creationDateTime, o.buyersEmail, o.totals) FROM Order_ o " +
+            "WHERE o.buyerKey = :buyerKey AND LOWER(TRIM(o.buyersEmail)) = :buyersEmail AND o.creationDateTime >= :cursorDateTime " +
+            "AND o.creationDateTime >= :retainedFrom AND (o.creationDateTime > :cursorDateTime OR (o.creationDateTime = :cursorDateTime AND o.id > :cursorId)) " +
+            "ORDER BY o.creationDateTime, o.id")
+    List<OrderHeader> findHeaderPageByBuyerAfterCursor(@Param("buyerKey") long buyerKey, @Param("buyersEmail") String normalisedBuyersEmail,
+                                                       @Param("cursorDateTime") LocalDateTime cursorDateTime, @Param("cursorId") long cursorId,
+                                           @Param("retainedFrom") LocalDateTime retainedFrom, Pageable pageable);
+
+    /**
+     * Must be consumed within a transaction and closed afterwards. Rows are pulled from the JDBC cursor as the Stream is read.
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("SELECT o FROM Order_ o WHERE o.creationDateTime > :after AND o.creationDateTime < :before ORDER BY o.creationDateTime, o.id")
+    Stream<Order> streamAllBetween(@Param("after") LocalDateTime after, @Param("before") LocalDateTime before);
 }
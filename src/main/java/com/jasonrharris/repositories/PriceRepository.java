@@ -1,10 +1,19 @@
 package com.jasonrharris.repositories;
 
 import com.jasonrharris.products.Price;
-import com.jasonrharris.products.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
+
 public interface PriceRepository extends JpaRepository<Price, Long> {
-    Price findTopByProductOrderByCreationDateTime(Product product);
+    /**
+     * @return the newest Price of the Product, or null if it has none
+     */
+    Price findTopByProductIdOrderByCreationDateTimeDesc(long productId);
+
+    /**
+     * @return every Price the Product has had, oldest first
+     */
+    List<Price> findAllByProductIdOrderByCreationDateTime(long productId);
 }
 
@@ -2,5 +2,22 @@ package com.jasonrharris.repositories;
 
 import com.jasonrharris.products.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {}
+public interface ProductRepository extends JpaRepository<Product, Long> {
+
+    /**
+     * Points the Product at the given Price, unless its current Price was created after it.
+     *
+     * @return the number of Products updated, so 0 if the Product already has a newer Price
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE product SET current_price_id = :priceId " +
+            "WHERE id = :productId " +
+            "AND (current_price_id IS NULL " +
+            "OR (SELECT cp.creation_date_time FROM price cp WHERE cp.id = current_price_id) <= (SELECT np.creation_date_time FROM price np WHERE np.id = :priceId))",
+            nativeQuery = true)
+    int updateCurrentPriceIfNewer(@Param("productId") long productId, @Param("priceId") long priceId);
+}
@@ -0,0 +1,3 @@
+CREATE TABLE sales_rollup (bucket TIMESTAMP NOT NULL, product_id BIGINT NOT NULL, currency VARCHAR(3) NOT NULL, quantity BIGINT NOT NULL, revenue_minor_units BIGINT NOT NULL, orders BIGINT NOT NULL, PRIMARY KEY (bucket, product_id, currency))
+CREATE TABLE sales_rollup_flush (id INT PRIMARY KEY, flushed_at TIMESTAMP NOT NULL)
+CREATE TABLE order_retention (id INT PRIMARY KEY, retained_from TIMESTAMP NOT NULL)
@@ -0,0 +1,3 @@
+DROP TABLE IF EXISTS sales_rollup
+DROP TABLE IF EXISTS sales_rollup_flush
+DROP TABLE IF EXISTS order_retention
@@ -0,0 +1,58 @@
+package com.jasonrharris;
+
+import com.jasonrharris.repositories.ProductRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ApplicationRestartTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String databaseUrl;
+    private String[] properties;
+
+    @Before
+    public void setUp() throws Exception {
+        databaseUrl = "jdbc:h2:file:" + folder.getRoot().toPath().resolve("restart");
+        properties = new String[]{
+                "--server.port=0",
+                "--spring.datasource.url=" + databaseUrl,
+                "--orders.archive.directory=" + folder.newFolder("archive"),
+                "--spring.h2.console.enabled=false"};
+    }
+
+    @Test
+    public void shouldStartAgainAgainstTheSameFileDatabase() {
+        for (int start = 1; start <= 2; start++) {
+            try (ConfigurableApplicationContext context = SpringApplication.run(Application.class, properties)) {
+                Assert.assertEquals("Products after start " + start, 2, context.getBean(ProductRepository.class).count());
+            }
+        }
+    }
+
+    @Test
+    public void shouldDropEveryTableWhenItStops() throws Exception {
+        SpringApplication.run(Application.class, properties).close();
+
+        List<String> tables = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(databaseUrl, "sa", "password");
+             ResultSet resultSet = connection.createStatement().executeQuery("SELECT table_name FROM information_schema.tables WHERE table_schema = 'PUBLIC'")) {
+            while (resultSet.next()) {
+                tables.add(resultSet.getString(1));
+            }
+        }
+        Assert.assertEquals(List.of(), tables);
+    }
+}
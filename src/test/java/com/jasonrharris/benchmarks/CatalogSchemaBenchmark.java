@@ -0,0 +1,129 @@
+package com.jasonrharris.benchmarks;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Compares reading the whole catalog (every Product with its current Price) using the original correlated
+ * 'latest price' subquery against the denormalised current_price_id column backed by the (product_id, creation_date_time) index.
+ * <p>
+ * Run with `./gradlew catalogSchemaBenchmark`, optionally passing `--args='products pricesPerProduct iterations'`.
+ */
+public class CatalogSchemaBenchmark {
+    private static final String CORRELATED_SUBQUERY_CATALOG = "SELECT p.id, p.name, pc.amount, pc.currency " +
+            "FROM product p LEFT JOIN price pc ON pc.id = (" +
+            "SELECT lp.id FROM price lp WHERE lp.product_id = p.id ORDER BY lp.creation_date_time DESC LIMIT 1)";
+
+    private static final String CURRENT_PRICE_COLUMN_CATALOG = "SELECT p.id, p.name, pc.amount, pc.currency " +
+            "FROM product p LEFT JOIN price pc ON pc.id = p.current_price_id";
+
+    public static void main(String[] args) throws SQLException {
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int pricesPerProduct = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        System.out.printf("Catalog of %d products with %d prices each, %d timed reads per schema%n", products, pricesPerProduct, iterations);
+
+        try (Connection oldSchema = DriverManager.getConnection("jdbc:h2:mem:oldCatalogSchema", "sa", "");
+             Connection newSchema = DriverManager.getConnection("jdbc:h2:mem:newCatalogSchema", "sa", "")) {
+            createSchema(oldSchema, false);
+            populate(oldSchema, products, pricesPerProduct, false);
+            createSchema(newSchema, true);
+            populate(newSchema, products, pricesPerProduct, true);
+
+            report("correlated subquery (old)", time(oldSchema, CORRELATED_SUBQUERY_CATALOG, products, iterations));
+            report("current_price_id column (new)", time(newSchema, CURRENT_PRICE_COLUMN_CATALOG, products, iterations));
+        }
+    }
+
+    /*
+    The old schema only has the index H2 creates for the product_id foreign key, as generated by Hibernate before the change.
+     */
+    private static void createSchema(Connection connection, boolean currentPricePointer) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE product (id BIGINT PRIMARY KEY, name VARCHAR(255)" + (currentPricePointer ? ", current_price_id BIGINT" : "") + ")");
+            statement.execute("CREATE TABLE price (id BIGINT PRIMARY KEY, amount DECIMAL(19, 2), creation_date_time TIMESTAMP, currency VARCHAR(255), " +
+                    "product_id BIGINT REFERENCES product(id))");
+            if (currentPricePointer) {
+                statement.execute("CREATE INDEX price_product_creation_idx ON price (product_id, creation_date_time)");
+            }
+        }
+    }
+
+    private static void populate(Connection connection, int products, int pricesPerProduct, boolean currentPricePointer) throws SQLException {
+        connection.setAutoCommit(false);
+        LocalDateTime firstPriceDateTime = LocalDateTime.of(2019, 1, 1, 0, 0);
+        long priceId = 0;
+        String productInsert = currentPricePointer ? "INSERT INTO product (id, name, current_price_id) VALUES (?, ?, ?)" : "INSERT INTO product (id, name) VALUES (?, ?)";
+        try (PreparedStatement insertProduct = connection.prepareStatement(productInsert);
+             PreparedStatement insertPrice = connection.prepareStatement("INSERT INTO price (id, amount, creation_date_time, currency, product_id) VALUES (?, ?, ?, 'GBP', ?)")) {
+            for (long productId = 1; productId <= products; productId++) {
+                insertProduct.setLong(1, productId);
+                insertProduct.setString(2, "Product " + productId);
+                if (currentPricePointer) {
+                    insertProduct.setLong(3, priceId + pricesPerProduct);
+                }
+                insertProduct.addBatch();
+                for (int i = 0; i < pricesPerProduct; i++) {
+                    insertPrice.setLong(1, ++priceId);
+                    insertPrice.setBigDecimal(2, BigDecimal.valueOf(1000 + i, 2));
+                    insertPrice.setTimestamp(3, Timestamp.valueOf(firstPriceDateTime.plusHours(i)));
+                    insertPrice.setLong(4, productId);
+                    insertPrice.addBatch();
+                }
+                if (productId % 100 == 0) {
+                    insertProduct.executeBatch();
+                    insertPrice.executeBatch();
+                }
+            }
+            insertProduct.executeBatch();
+            insertPrice.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+
+    private static long[] time(Connection connection, String catalogQuery, int expectedRows, int iterations) throws SQLException {
+        read(connection, catalogQuery, expectedRows);
+        long[] elapsedNanos = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            read(connection, catalogQuery, expectedRows);
+            elapsedNanos[i] = System.nanoTime() - start;
+        }
+        return elapsedNanos;
+    }
+
+    private static void read(Connection connection, String catalogQuery, int expectedRows) throws SQLException {
+        int rows = 0;
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(catalogQuery)) {
+            while (resultSet.next()) {
+                resultSet.getBigDecimal(3);
+                rows++;
+            }
+        }
+        if (rows != expectedRows) {
+            throw new IllegalStateException("Expected " + expectedRows + " products but read " + rows);
+        }
+    }
+
+    private static void report(String schema, long[] elapsedNanos) {
+        long total = 0;
+        long best = Long.MAX_VALUE;
+        for (long elapsed : elapsedNanos) {
+            total += elapsed;
+            best = Math.min(best, elapsed);
+        }
+        System.out.printf("%-32s mean %8.2f ms, best %8.2f ms%n", schema, total / (elapsedNanos.length * 1_000_000.0), best / 1_000_000.0);
+    }
+}
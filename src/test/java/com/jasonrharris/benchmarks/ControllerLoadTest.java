@@ -0,0 +1,229 @@
+package com.jasonrharris.benchmarks;
+
+import com.jasonrharris.Application;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
+import com.jasonrharris.products.Product;
+import com.jasonrharris.repositories.ProductRepository;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a mix of GET /products, POST /orders and GET /orders (a page of 100) against the application running embedded on a
+ * random port, at a fixed overall request rate spread over a fixed number of client threads.
+ * <p>
+ * Requests are scheduled open-loop: request n is due at start + n / rate whether or not earlier requests have finished, and its
+ * latency is measured from when it was due rather than from when a client thread got round to sending it. A slow response
+ * therefore counts against every request it holds up, correcting for coordinated omission. Latencies go into an HDR histogram
+ * per endpoint; a summary and each endpoint's percentile distribution are written to the report directory.
+ * <p>
+ * Run with `./gradlew loadTest`, optionally passing `--args='requestsPerSecond clientThreads seconds warmUpSeconds products:postOrders:getOrders'`.
+ */
+public class ControllerLoadTest {
+    private static final int PRODUCTS = 100;
+    private static final int LINES_PER_ORDER = 3;
+    private static final String ORDER_RANGE = "?after=2000-01-01T00:00:00&before=2100-01-01T00:00:00";
+
+    enum Endpoint {
+        GET_PRODUCTS("GET /products"), POST_ORDERS("POST /orders"), GET_ORDERS("GET /orders");
+
+        private final String description;
+
+        Endpoint(String description) {
+            this.description = description;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requestsPerSecond = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int clientThreads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmUpSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int[] weights = Arrays.stream((args.length > 4 ? args[4] : "40:20:40").split(":")).mapToInt(Integer::parseInt).toArray();
+        Path reportDirectory = Paths.get(System.getProperty("loadTest.reportDir", "build/reports/load-test"));
+
+        String[] loadTestProperties = {
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:controllerLoadTest",
+                "--spring.h2.console.enabled=false",
+                "--logging.level.org.hibernate.SQL=WARN",
+                "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"};
+
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext) SpringApplication.run(Application.class, loadTestProperties)) {
+            String baseUrl = "http://localhost:" + context.getWebServer().getPort() + context.getServletContext().getContextPath();
+            LoadTest loadTest = new LoadTest(baseUrl, createCatalog(context), weights);
+
+            System.out.printf("Warming up for %ds%n", warmUpSeconds);
+            loadTest.run(requestsPerSecond, clientThreads, warmUpSeconds);
+            loadTest.reset();
+
+            System.out.printf("Running %d requests/s on %d client threads for %ds%n", requestsPerSecond, clientThreads, seconds);
+            loadTest.run(requestsPerSecond, clientThreads, seconds);
+            loadTest.report(reportDirectory, String.format("%d requests/s, %d client threads, %ds, mix %s", requestsPerSecond, clientThreads, seconds, Arrays.toString(weights)), seconds);
+        }
+    }
+
+    private static List<Price> createCatalog(ServletWebServerApplicationContext context) {
+        ProductRepository productRepository = context.getBean(ProductRepository.class);
+        PriceManagement priceManagement = context.getBean(PriceManagement.class);
+        List<Price> prices = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = productRepository.save(new Product("Load Test Product " + i));
+            prices.add(priceManagement.saveNewProductPrice(new Product(product.getId(), product.getName(), Price.createPrice(product, "9.99", "GBP"))).orElseThrow());
+        }
+        return prices;
+    }
+
+    private static class LoadTest {
+        private final String baseUrl;
+        private final List<Price> prices;
+        private final int[] weights;
+        private final int totalWeight;
+        private final Map<Endpoint, Histogram> latencies = new EnumMap<>(Endpoint.class);
+        private final Map<Endpoint, AtomicLong> errors = new EnumMap<>(Endpoint.class);
+
+        private LoadTest(String baseUrl, List<Price> prices, int[] weights) {
+            this.baseUrl = baseUrl;
+            this.prices = prices;
+            this.weights = weights;
+            this.totalWeight = Arrays.stream(weights).sum();
+            for (Endpoint endpoint : Endpoint.values()) {
+                latencies.put(endpoint, new ConcurrentHistogram(3));
+                errors.put(endpoint, new AtomicLong());
+            }
+        }
+
+        private void reset() {
+            latencies.values().forEach(Histogram::reset);
+            errors.values().forEach(count -> count.set(0));
+        }
+
+        private void run(int requestsPerSecond, int clientThreads, int seconds) throws InterruptedException {
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+            long requests = (long) requestsPerSecond * seconds;
+            long start = System.nanoTime();
+            AtomicLong nextRequest = new AtomicLong();
+
+            ExecutorService clients = Executors.newFixedThreadPool(clientThreads);
+            for (int i = 0; i < clientThreads; i++) {
+                clients.execute(() -> {
+                    for (long n = nextRequest.getAndIncrement(); n < requests; n = nextRequest.getAndIncrement()) {
+                        long due = start + n * intervalNanos;
+                        for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        Endpoint endpoint = pickEndpoint();
+                        if (!send(endpoint)) {
+                            errors.get(endpoint).incrementAndGet();
+                        }
+                        latencies.get(endpoint).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+                    }
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        }
+
+        private Endpoint pickEndpoint() {
+            int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (Endpoint endpoint : Endpoint.values()) {
+                pick -= weights[endpoint.ordinal()];
+                if (pick < 0) {
+                    return endpoint;
+                }
+            }
+            throw new IllegalStateException("Weights " + Arrays.toString(weights) + " do not cover " + Endpoint.values().length + " endpoints");
+        }
+
+        private boolean send(Endpoint endpoint) {
+            try {
+                switch (endpoint) {
+                    case GET_PRODUCTS:
+                        return request("GET", "/products", null);
+                    case POST_ORDERS:
+                        return request("POST", "/orders", orderJson());
+                    default:
+                        return request("GET", "/orders" + ORDER_RANGE + "&limit=100", null);
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /*
+        HttpURLConnection sends the headers and body of a small POST in one write, and reuses connections once the response
+        has been read to the end.
+         */
+        private boolean request(String method, String path, byte[] body) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setRequestMethod(method);
+            if (body != null) {
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setDoOutput(true);
+                try (OutputStream requestBody = connection.getOutputStream()) {
+                    requestBody.write(body);
+                }
+            }
+            int status = connection.getResponseCode();
+            try (InputStream response = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (response != null) {
+                    response.readAllBytes();
+                }
+            }
+            return status < 300;
+        }
+
+        private byte[] orderJson() {
+            StringBuilder orderJson = new StringBuilder("{\"buyersEmail\":\"load@buyer.com\",\"orderItems\":[");
+            for (int i = 0; i < LINES_PER_ORDER; i++) {
+                Price price = prices.get(ThreadLocalRandom.current().nextInt(prices.size()));
+                orderJson.append(i > 0 ? "," : "").append("{\"price\":{\"id\":").append(price.getId()).append("},\"product\":{\"id\":")
+                        .append(price.getProduct().getId()).append("},\"quantity\":1}");
+            }
+            return orderJson.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private void report(Path reportDirectory, String description, int seconds) throws IOException {
+            Files.createDirectories(reportDirectory);
+            StringWriter summary = new StringWriter();
+            try (PrintWriter summaryWriter = new PrintWriter(summary)) {
+                summaryWriter.println(description);
+                summaryWriter.printf("%-14s %8s %7s %9s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+                for (Endpoint endpoint : Endpoint.values()) {
+                    Histogram histogram = latencies.get(endpoint);
+                    summaryWriter.printf("%-14s %8d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", endpoint.description, histogram.getTotalCount(),
+                            errors.get(endpoint).get(), (double) histogram.getTotalCount() / seconds, millis(histogram, 50), millis(histogram, 90),
+                            millis(histogram, 99), millis(histogram, 99.9), histogram.getMaxValue() / 1000.0);
+
+                    try (PrintStream distribution = new PrintStream(reportDirectory.resolve(endpoint.name().toLowerCase(Locale.ROOT) + ".hgrm").toFile(), StandardCharsets.UTF_8)) {
+                        histogram.outputPercentileDistribution(distribution, 1000.0);
+                    }
+                }
+            }
+            System.out.print(summary);
+            Files.writeString(reportDirectory.resolve("summary.txt"), summary.toString());
+            System.out.println("Percentile distributions (in ms) written to " + reportDirectory.toAbsolutePath());
+        }
+
+        private static double millis(Histogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.jasonrharris.benchmarks;
+
+import com.jasonrharris.Application;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
+import com.jasonrharris.products.Product;
+import com.jasonrharris.repositories.ProductRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures POST /orders throughput and the number of JDBC statements each order costs, for orders of 1, 10 and 100 lines,
+ * then the same for the same orders sent together to POST /orders/batch. The application runs embedded on a random port against its own in-memory database, with SQL logging turned off.
+ * <p>
+ * Run with `./gradlew orderWriteBenchmark`, optionally passing `--args='ordersPerSize'`.
+ */
+public class OrderWriteBenchmark {
+    private static final int[] LINES_PER_ORDER = {1, 10, 100};
+    private static final int PRODUCTS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int ordersPerSize = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        String[] benchmarkProperties = {
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:orderWriteBenchmark",
+                "--spring.h2.console.enabled=false",
+                "--spring.jpa.properties.hibernate.generate_statistics=true",
+                "--logging.level.org.hibernate.SQL=WARN",
+                "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+                "--logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"};
+
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext) SpringApplication.run(Application.class, benchmarkProperties)) {
+            URL ordersUrl = new URL("http://localhost:" + context.getWebServer().getPort() + context.getServletContext().getContextPath() + "/orders");
+            URL batchUrl = new URL(ordersUrl + "/batch");
+            List<Price> prices = createCatalog(context);
+            Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+            for (int lines : LINES_PER_ORDER) {
+                byte[] orderJson = orderJson(prices, lines);
+                postOrders(ordersUrl, orderJson, Math.max(10, ordersPerSize / 10));
+
+                statistics.clear();
+                long start = System.nanoTime();
+                postOrders(ordersUrl, orderJson, ordersPerSize);
+                double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+                System.out.printf("%3d lines/order: %8.1f orders/s, %8.1f lines/s, %6.1f statements/order%n",
+                        lines, ordersPerSize / elapsedSeconds, ordersPerSize * lines / elapsedSeconds,
+                        (double) statistics.getPrepareStatementCount() / ordersPerSize);
+            }
+
+            for (int lines : LINES_PER_ORDER) {
+                byte[] batchJson = batchJson(orderJson(prices, lines), ordersPerSize);
+                postOrders(batchUrl, batchJson, 1);
+
+                statistics.clear();
+                long start = System.nanoTime();
+                postOrders(batchUrl, batchJson, 1);
+                double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+                System.out.printf("%3d lines/order, batched: %8.1f orders/s, %8.1f lines/s, %6.1f statements/order%n",
+                        lines, ordersPerSize / elapsedSeconds, ordersPerSize * lines / elapsedSeconds,
+                        (double) statistics.getPrepareStatementCount() / ordersPerSize);
+            }
+        }
+    }
+
+    private static List<Price> createCatalog(ServletWebServerApplicationContext context) {
+        ProductRepository productRepository = context.getBean(ProductRepository.class);
+        PriceManagement priceManagement = context.getBean(PriceManagement.class);
+        List<Price> prices = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = productRepository.save(new Product("Benchmark Product " + i));
+            prices.add(priceManagement.saveNewProductPrice(new Product(product.getId(), product.getName(), Price.createPrice(product, "9.99", "GBP"))).orElseThrow());
+        }
+        return prices;
+    }
+
+    private static byte[] orderJson(List<Price> prices, int lines) {
+        StringBuilder orderJson = new StringBuilder("{\"buyersEmail\":\"benchmark@buyer.com\",\"orderItems\":[");
+        for (int i = 0; i < lines; i++) {
+            Price price = prices.get(i % prices.size());
+            if (i > 0) {
+                orderJson.append(',');
+            }
+            orderJson.append("{\"price\":{\"id\":").append(price.getId()).append("},\"product\":{\"id\":").append(price.getProduct().getId())
+                    .append("},\"quantity\":").append(1 + i / prices.size()).append('}');
+        }
+        return orderJson.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] batchJson(byte[] orderJson, int orders) {
+        String order = new String(orderJson, StandardCharsets.UTF_8);
+        StringBuilder batchJson = new StringBuilder("[");
+        for (int i = 0; i < orders; i++) {
+            batchJson.append(i > 0 ? "," : "").append(order);
+        }
+        return batchJson.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+    HttpURLConnection sends the headers and body of a small POST in one write, which avoids the Nagle / delayed ACK
+    stall of around 40ms per request seen on loopback when they go out separately.
+     */
+    private static void postOrders(URL ordersUrl, byte[] orderJson, int orders) throws IOException {
+        for (int i = 0; i < orders; i++) {
+            HttpURLConnection connection = (HttpURLConnection) ordersUrl.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream body = connection.getOutputStream()) {
+                body.write(orderJson);
+            }
+            if (connection.getResponseCode() != 200) {
+                throw new IllegalStateException("POST " + ordersUrl.getPath() + " returned " + connection.getResponseCode());
+            }
+            try (InputStream response = connection.getInputStream()) {
+                response.readAllBytes();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.jasonrharris.benchmarks;
+
+import com.jasonrharris.Application;
+import com.jasonrharris.orders.Order;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Times GET /reports/sales over a year of order lines, for each granularity grouped by product and by currency, and reports the peak
+ * heap used. The lines are inserted directly with JDBC, spread evenly over the year, into the application's own in-memory database.
+ * <p>
+ * Run with `./gradlew salesReportBenchmark`, optionally passing `--args='orderLines'`. Millions of lines need a larger heap, e.g. `-Xmx4g`.
+ */
+public class SalesReportBenchmark {
+    private static final int PRODUCTS = 1000;
+    private static final int LINES_PER_ORDER = 3;
+    private static final int INSERT_BATCH = 10_000;
+    private static final LocalDateTime YEAR_START = LocalDateTime.of(2019, 1, 1, 0, 0);
+    private static final String[] CURRENCIES = {"GBP", "EUR", "USD"};
+    private static final long REPORT_BUYER_KEY = Order.buyerKeyOf("report@buyer.com");
+
+    public static void main(String[] args) throws Exception {
+        int orderLines = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        String[] benchmarkProperties = {
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:salesReportBenchmark",
+                "--spring.h2.console.enabled=false",
+                "--logging.level.org.hibernate.SQL=WARN",
+                "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"};
+
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext) SpringApplication.run(Application.class, benchmarkProperties)) {
+            String reportUrl = "http://localhost:" + context.getWebServer().getPort() + context.getServletContext().getContextPath() +
+                    "/reports/sales?from=" + YEAR_START + "&to=" + YEAR_START.plusYears(1);
+            long start = System.nanoTime();
+            insertOrderLines(context.getBean(JdbcTemplate.class), orderLines);
+            System.out.printf("Inserted %d order lines in %.1fs%n", orderLines, (System.nanoTime() - start) / 1_000_000_000.0);
+
+            for (String groupBy : new String[]{"product", "currency"}) {
+                for (String granularity : new String[]{"month", "day", "hour"}) {
+                    String url = reportUrl + "&granularity=" + granularity + "&groupBy=" + groupBy;
+                    get(url);
+                    resetPeakHeapUsage();
+                    start = System.nanoTime();
+                    long bytes = get(url);
+                    System.out.printf("%-8s by %-5s: %7.2fs, %9d bytes, peak heap %5d MB%n", groupBy, granularity,
+                            (System.nanoTime() - start) / 1_000_000_000.0, bytes, peakHeapUsage() / (1024 * 1024));
+                }
+            }
+        }
+    }
+
+    private static void insertOrderLines(JdbcTemplate jdbcTemplate, int orderLines) {
+        List<Object[]> products = new ArrayList<>(PRODUCTS);
+        List<Object[]> prices = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            long id = 1_000_000L + i;
+            products.add(new Object[]{id, "Sales Report Product " + i});
+            prices.add(new Object[]{id, (i % 100) + 0.99, CURRENCIES[i % CURRENCIES.length], Timestamp.valueOf(YEAR_START.minusDays(1)), id});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO product (id, name) VALUES (?, ?)", products);
+        jdbcTemplate.batchUpdate("INSERT INTO price (id, amount, currency, creation_date_time, product_id) VALUES (?, ?, ?, ?, ?)", prices);
+
+        int orders = orderLines / LINES_PER_ORDER;
+        long secondsBetweenOrders = Math.max(1, 365L * 24 * 60 * 60 / Math.max(1, orders));
+        List<Object[]> orderRows = new ArrayList<>(INSERT_BATCH);
+        List<Object[]> itemRows = new ArrayList<>(INSERT_BATCH * LINES_PER_ORDER);
+        for (long order = 0; order < orders; order++) {
+            long orderId = 1_000_000L + order;
+            orderRows.add(new Object[]{orderId, Timestamp.valueOf(YEAR_START.plusSeconds(order * secondsBetweenOrders)), "report@buyer.com", "", REPORT_BUYER_KEY});
+            for (int line = 0; line < LINES_PER_ORDER; line++) {
+                long productId = 1_000_000L + ThreadLocalRandom.current().nextInt(PRODUCTS);
+                itemRows.add(new Object[]{orderId * LINES_PER_ORDER + line, productId, productId, 1 + line, orderId});
+            }
+            if (orderRows.size() == INSERT_BATCH || order == orders - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO order_ (id, creation_date_time, buyers_email, totals, buyer_key) VALUES (?, ?, ?, ?, ?)", orderRows);
+                jdbcTemplate.batchUpdate("INSERT INTO order_item (id, price_id, product_id, quantity, order_id) VALUES (?, ?, ?, ?, ?)", itemRows);
+                orderRows.clear();
+                itemRows.clear();
+            }
+        }
+    }
+
+    private static long get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (connection.getResponseCode() != 200) {
+            throw new IOException(url + " returned " + connection.getResponseCode());
+        }
+        long bytes = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream response = connection.getInputStream()) {
+            for (int read = response.read(buffer); read >= 0; read = response.read(buffer)) {
+                bytes += read;
+            }
+        }
+        return bytes;
+    }
+
+    private static void resetPeakHeapUsage() {
+        System.gc();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    private static long peakHeapUsage() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+    }
+}
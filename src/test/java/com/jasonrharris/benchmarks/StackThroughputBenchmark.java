@@ -0,0 +1,214 @@
+package com.jasonrharris.benchmarks;
+
+import com.jasonrharris.Application;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of the servlet stack (Spring MVC on Tomcat) with the reactive stack (WebFlux on Netty, with R2DBC) as the
+ * number of concurrent connections grows. Each stack runs in a new JVM, with an in-memory database holding a few hundred orders.
+ * <p>
+ * At each level of concurrency every connection sends one request after another, GET /products or GET /orders for all the orders
+ * at random, for a warm up and then for the measured period. Successful requests per second, their median and 99th percentile
+ * latencies, and the requests that failed or timed out are printed and appended, with the date and git revision, to
+ * throughput.csv in the report directory.
+ * <p>
+ * Run with `./gradlew stackThroughputBenchmark`, optionally passing `--args='seconds warmUpSeconds connections,connections,...'`.
+ * Both the client and the application hold a socket per connection, so raise the open files limit (`ulimit -n`) above the
+ * highest number of connections first.
+ */
+public class StackThroughputBenchmark {
+    private static final long START_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int ORDERS = 200;
+    private static final String ORDER_RANGE = "?after=2000-01-01T00:00:00&before=2100-01-01T00:00:00";
+    private static final String ORDER = "{\"buyersEmail\": \"load@buyer.com\", \"orderItems\": [{\"price\": {\"id\": 3}, \"product\": {\"id\": 1}, \"quantity\": 2}, {\"price\": {\"id\": 4}, \"product\": {\"id\": 2}, \"quantity\": 1}]}";
+    private static final String CSV_HEADER = "date,revision,stack,connections,seconds,requests_per_second,p50_ms,p99_ms,errors\n";
+
+    enum Stack {
+        SERVLET("servlet"), REACTIVE("reactive", "--spring.profiles.active=reactive");
+
+        private final String description;
+        private final List<String> arguments;
+
+        Stack(String description, String... arguments) {
+            this.description = description;
+            this.arguments = Arrays.asList(arguments);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int warmUpSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int[] connectionLevels = Arrays.stream((args.length > 2 ? args[2] : "1000,2500,5000,10000").split(",")).mapToInt(Integer::parseInt).toArray();
+        Path reportDirectory = Paths.get(System.getProperty("stackThroughputBenchmark.reportDir", "build/reports/stack-throughput"));
+        Files.createDirectories(reportDirectory);
+        String revision = StartupBenchmark.gitRevision();
+
+        StringBuilder report = new StringBuilder();
+        for (Stack stack : Stack.values()) {
+            RunningApplication application = RunningApplication.start(stack, reportDirectory.resolve(stack.description + ".log"));
+            try {
+                HttpClient client = HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build();
+                addOrders(client, application.baseUrl);
+                List<HttpRequest> requests = List.of(
+                        HttpRequest.newBuilder(URI.create(application.baseUrl + "/products")).timeout(REQUEST_TIMEOUT).build(),
+                        HttpRequest.newBuilder(URI.create(application.baseUrl + "/orders" + ORDER_RANGE)).timeout(REQUEST_TIMEOUT).build());
+
+                for (int connections : connectionLevels) {
+                    Result result = run(client, requests, connections, warmUpSeconds, seconds);
+                    System.out.printf("%-8s %6d connections  %8.0f requests/s  p50 %7.1fms  p99 %8.1fms  %6d errors%n", stack.description, connections,
+                            result.requestsPerSecond(), result.latencyMillis(50), result.latencyMillis(99), result.errors.get());
+                    report.append(String.join(",", LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).toString(), revision, stack.description,
+                            Integer.toString(connections), Integer.toString(seconds), String.format("%.0f", result.requestsPerSecond()),
+                            String.format("%.1f", result.latencyMillis(50)), String.format("%.1f", result.latencyMillis(99)), Long.toString(result.errors.get()))).append('\n');
+                }
+            } finally {
+                application.stop();
+            }
+        }
+
+        Path reportFile = reportDirectory.resolve("throughput.csv");
+        if (Files.notExists(reportFile)) {
+            Files.writeString(reportFile, CSV_HEADER);
+        }
+        Files.writeString(reportFile, report, StandardOpenOption.APPEND);
+        System.out.println("Appended to " + reportFile);
+    }
+
+    private static void addOrders(HttpClient client, String baseUrl) throws IOException, InterruptedException {
+        HttpRequest addOrder = HttpRequest.newBuilder(URI.create(baseUrl + "/orders")).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(ORDER)).build();
+        for (int order = 0; order < ORDERS; order++) {
+            HttpResponse<Void> response = client.send(addOrder, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("POST /orders answered " + response.statusCode());
+            }
+        }
+    }
+
+    /*
+    Every connection starts at once, and sends its next request as soon as the last has been answered. Only the requests sent
+    after the warm up and answered before the end are counted.
+     */
+    private static Result run(HttpClient client, List<HttpRequest> requests, int connections, int warmUpSeconds, int seconds) throws InterruptedException {
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmUpSeconds);
+        long measureTo = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        Result result = new Result(seconds);
+        CountDownLatch finished = new CountDownLatch(connections);
+        for (int connection = 0; connection < connections; connection++) {
+            sendNext(client, requests, measureFrom, measureTo, result, finished);
+        }
+        finished.await();
+        return result;
+    }
+
+    private static void sendNext(HttpClient client, List<HttpRequest> requests, long measureFrom, long measureTo, Result result, CountDownLatch finished) {
+        long sent = System.nanoTime();
+        if (sent >= measureTo) {
+            finished.countDown();
+            return;
+        }
+        HttpRequest request = requests.get(ThreadLocalRandom.current().nextInt(requests.size()));
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenCompleteAsync((response, failure) -> {
+            long answered = System.nanoTime();
+            if (sent >= measureFrom && answered <= measureTo) {
+                if (failure == null && response.statusCode() == 200) {
+                    result.latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(answered - sent));
+                } else {
+                    result.errors.incrementAndGet();
+                }
+            }
+            sendNext(client, requests, measureFrom, measureTo, result, finished);
+        });
+    }
+
+    private static final class Result {
+        private final Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+        private final AtomicLong errors = new AtomicLong();
+        private final int seconds;
+
+        private Result(int seconds) {
+            this.seconds = seconds;
+        }
+
+        private double requestsPerSecond() {
+            return (double) latencies.getTotalCount() / seconds;
+        }
+
+        private double latencyMillis(double percentile) {
+            return latencies.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+
+    /*
+    The application in its own JVM, with its own port, in-memory database and archive directory, and its output in the stack's log.
+     */
+    private static final class RunningApplication {
+        private final Process process;
+        private final Path archiveDirectory;
+        private final String baseUrl;
+
+        private RunningApplication(Process process, Path archiveDirectory, String baseUrl) {
+            this.process = process;
+            this.archiveDirectory = archiveDirectory;
+            this.baseUrl = baseUrl;
+        }
+
+        static RunningApplication start(Stack stack, Path log) throws IOException, InterruptedException {
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            Path archiveDirectory = Files.createTempDirectory("stack-throughput-benchmark-archive");
+            List<String> command = new ArrayList<>(Arrays.asList(ProcessHandle.current().info().command().orElse("java"),
+                    "-cp", System.getProperty("java.class.path"), Application.class.getName(),
+                    "--server.port=" + port, "--spring.datasource.url=jdbc:h2:mem:stackThroughputBenchmark", "--orders.archive.directory=" + archiveDirectory,
+                    "--spring.h2.console.enabled=false", "--logging.level.org.hibernate.SQL=WARN", "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"));
+            command.addAll(stack.arguments);
+            String baseUrl = "http://localhost:" + port + "/productAndOrderManager";
+
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+            RunningApplication application = new RunningApplication(process, archiveDirectory, baseUrl);
+            long launched = System.nanoTime();
+            while (!StartupBenchmark.isOk(new URL(baseUrl + "/products"))) {
+                if (!process.isAlive() || System.nanoTime() - launched > START_TIMEOUT_NANOS) {
+                    application.stop();
+                    throw new IllegalStateException("The " + stack.description + " stack did not answer GET /products, see " + log);
+                }
+                Thread.sleep(100);
+            }
+            return application;
+        }
+
+        void stop() throws IOException, InterruptedException {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            Files.deleteIfExists(archiveDirectory);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.jasonrharris.benchmarks;
+
+import com.jasonrharris.Application;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cold starts: the time from launching a new JVM running the application to its first successful GET /products, for the
+ * default configuration and the fast-start profile. Each start is a new process, so nothing is already loaded or warmed up.
+ * <p>
+ * The fastest, median and slowest start of each are printed and appended, with the date and git revision, to startup-times.csv in
+ * the report directory, so the effect of each change on start up can be compared with the last.
+ * <p>
+ * Run with `./gradlew startupBenchmark`, optionally passing `--args='starts'`. Any JVM options given with -PstartupJvmArgs, such as
+ * -XX:SharedArchiveFile for a class data sharing archive, are passed to every start.
+ */
+public class StartupBenchmark {
+    private static final long START_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private static final long POLL_INTERVAL_MILLIS = 5;
+    private static final String CSV_HEADER = "date,revision,mode,starts,fastest_ms,median_ms,slowest_ms,jvm_args\n";
+
+    enum Mode {
+        DEFAULT("default"), FAST_START("fast-start", "--spring.profiles.active=fast-start");
+
+        private final String description;
+        private final List<String> arguments;
+
+        Mode(String description, String... arguments) {
+            this.description = description;
+            this.arguments = Arrays.asList(arguments);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int starts = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String jvmArgs = System.getProperty("startupBenchmark.jvmArgs", "").trim();
+        Path reportDirectory = Paths.get(System.getProperty("startupBenchmark.reportDir", "build/reports/startup"));
+        Files.createDirectories(reportDirectory);
+        String revision = gitRevision();
+
+        System.out.printf("%d cold starts per mode at %s%s%n", starts, revision, jvmArgs.isEmpty() ? "" : " with " + jvmArgs);
+        StringBuilder report = new StringBuilder();
+        for (Mode mode : Mode.values()) {
+            long[] startMillis = new long[starts];
+            for (int start = 0; start < starts; start++) {
+                startMillis[start] = timeToFirstRequest(mode, jvmArgs, reportDirectory.resolve(mode.description + ".log"));
+            }
+            Arrays.sort(startMillis);
+            System.out.printf("%-10s fastest %5dms  median %5dms  slowest %5dms%n", mode.description, startMillis[0], startMillis[starts / 2], startMillis[starts - 1]);
+            report.append(String.join(",", LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).toString(), revision, mode.description, Integer.toString(starts),
+                    Long.toString(startMillis[0]), Long.toString(startMillis[starts / 2]), Long.toString(startMillis[starts - 1]), '"' + jvmArgs + '"')).append('\n');
+        }
+
+        Path reportFile = reportDirectory.resolve("startup-times.csv");
+        if (Files.notExists(reportFile)) {
+            Files.writeString(reportFile, CSV_HEADER);
+        }
+        Files.writeString(reportFile, report, StandardOpenOption.APPEND);
+        System.out.println("Appended to " + reportFile);
+    }
+
+    /*
+    Each start gets its own port and in-memory database, and its output goes to the mode's log, which is kept for the last start.
+     */
+    private static long timeToFirstRequest(Mode mode, String jvmArgs, Path log) throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Path archiveDirectory = Files.createTempDirectory("startup-benchmark-archive");
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        if (!jvmArgs.isEmpty()) {
+            command.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+        }
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), Application.class.getName(),
+                "--server.port=" + port, "--spring.datasource.url=jdbc:h2:mem:startupBenchmark", "--orders.archive.directory=" + archiveDirectory));
+        command.addAll(mode.arguments);
+        URL products = new URL("http://localhost:" + port + "/productAndOrderManager/products");
+
+        long launched = System.nanoTime();
+        Process application = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            while (!isOk(products)) {
+                if (!application.isAlive() || System.nanoTime() - launched > START_TIMEOUT_NANOS) {
+                    throw new IllegalStateException("The application did not answer GET /products, see " + log);
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launched);
+        } finally {
+            application.destroy();
+            if (!application.waitFor(30, TimeUnit.SECONDS)) {
+                application.destroyForcibly().waitFor();
+            }
+            Files.deleteIfExists(archiveDirectory);
+        }
+    }
+
+    static boolean isOk(URL url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(1000);
+            try (InputStream body = connection.getInputStream()) {
+                body.readAllBytes();
+            }
+            return connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static String gitRevision() {
+        try {
+            Process git = new ProcessBuilder("git", "describe", "--always", "--dirty").redirectErrorStream(true).start();
+            String revision = new String(git.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            return git.waitFor() == 0 && !revision.isEmpty() ? revision : "unknown";
+        } catch (IOException | InterruptedException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.jasonrharris.controllers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:fastStart")
+@ActiveProfiles("fast-start")
+@AutoConfigureMockMvc
+public class FastStartIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void shouldServeTheCatalogAndTakeOrdersWithBeansCreatedOnFirstUse() throws Exception {
+        this.mockMvc.perform(get("/products"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.name == 'Nike Revolution')]").exists());
+        this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON)
+                .content("{\"buyersEmail\": \"fast@start.com\", \"orderItems\": [{\"price\": {\"id\": 3}, \"product\": {\"id\": 1}, \"quantity\": 2}]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalAmount").value(91.9));
+        this.mockMvc.perform(get("/products/search").param("q", "reebok"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(2));
+    }
+
+    @Test
+    public void shouldLeaveOutTheSwaggerDocs() throws Exception {
+        this.mockMvc.perform(get("/v2/api-docs")).andExpect(status().isNotFound());
+    }
+}
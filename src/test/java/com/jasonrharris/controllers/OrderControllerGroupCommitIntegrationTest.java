@@ -0,0 +1,94 @@
+package com.jasonrharris.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonrharris.orders.Order;
+import com.jasonrharris.orders.OrderWriter;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
+import com.jasonrharris.products.Product;
+import com.jasonrharris.repositories.OrderRepository;
+import com.jasonrharris.repositories.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"orders.group-commit.enabled=true", "orders.group-commit.max-wait=20ms", "spring.datasource.url=jdbc:h2:mem:groupCommit"})
+@AutoConfigureMockMvc
+public class OrderControllerGroupCommitIntegrationTest {
+    private static final int CONCURRENT_ORDERS = 8;
+
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private PriceManagement priceManagement;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper mapper;
+
+    private Price savedPrice;
+
+    @Before
+    public void setUp() {
+        Product savedProduct = productRepository.save(new Product("Group Commit Product"));
+        savedPrice = priceManagement.saveNewProductPrice(new Product(savedProduct.getId(), savedProduct.getName(),
+                Price.createPrice(savedProduct, "12.50", "GBP"))).orElseThrow();
+    }
+
+    @Test
+    public void shouldCommitConcurrentOrdersBeforeAnsweringEach() throws Exception {
+        long groupCommits = meterRegistry.timer(OrderWriter.ADD_ORDER_PHASE_TIMER, "phase", "group-commit").count();
+        ExecutorService requests = Executors.newFixedThreadPool(CONCURRENT_ORDERS);
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_ORDERS; i++) {
+                responses.add(requests.submit(() -> this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON).content(orderJSON(savedPrice.getId(), savedPrice.getProduct().getId())))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.totalAmount").value(25.0))
+                        .andReturn().getResponse().getContentAsString()));
+            }
+            for (Future<String> response : responses) {
+                Order committedOrder = mapper.readValue(response.get(), Order.class);
+                Assert.assertEquals(1, committedOrder.getOrderItems().size());
+                Assert.assertEquals("grouped@buyer.com", orderRepository.findById(committedOrder.getId()).orElseThrow().getBuyersEmail());
+            }
+        } finally {
+            requests.shutdown();
+        }
+        Assert.assertEquals(groupCommits + CONCURRENT_ORDERS, meterRegistry.timer(OrderWriter.ADD_ORDER_PHASE_TIMER, "phase", "group-commit").count());
+    }
+
+    @Test
+    public void shouldRejectAnOrderWithAnUnknownPrice() throws Exception {
+        this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON).content(orderJSON(Long.MAX_VALUE, savedPrice.getProduct().getId())))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("REJECTED"));
+    }
+
+    private String orderJSON(long priceId, long productId) {
+        return "{\"buyersEmail\": \"grouped@buyer.com\", \"orderItems\": [{\"price\": {\"id\": " + priceId + "}, \"product\": {\"id\": " + productId + "}, \"quantity\": 2}]}";
+    }
+}
@@ -5,14 +5,26 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.jasonrharris.orders.Order;
+import com.jasonrharris.orders.OrderArchive;
+import com.jasonrharris.orders.OrderBatchResult;
 import com.jasonrharris.orders.OrderItem;
+import com.jasonrharris.orders.OrderPage;
+import com.jasonrharris.orders.OrderWriter;
+import com.jasonrharris.products.Catalog;
+import com.jasonrharris.products.Money;
 import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
 import com.jasonrharris.products.Product;
 import com.jasonrharris.repositories.OrderItemRepository;
 import com.jasonrharris.repositories.OrderRepository;
 import com.jasonrharris.repositories.PriceRepository;
 import com.jasonrharris.repositories.ProductRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.hamcrest.number.BigDecimalCloseTo;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -20,20 +32,30 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import javax.persistence.EntityManagerFactory;
+
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
 
+import static org.hamcrest.Matchers.contains;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -41,6 +63,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @SpringBootTest
 @AutoConfigureMockMvc
 public class OrderControllerIntegrationTest {
+    private static final int MAX_STATEMENTS_PER_ORDER_LISTING = 3;
+
     @Autowired
     private OrderItemRepository orderItemRepository;
     @Autowired
@@ -51,6 +75,21 @@ public class OrderControllerIntegrationTest {
     @Autowired
     private PriceRepository priceRepository;
 
+    @Autowired
+    private PriceManagement priceManagement;
+
+    @Autowired
+    private Catalog catalog;
+
+    @Autowired
+    private OrderArchive orderArchive;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -139,6 +178,374 @@ public class OrderControllerIntegrationTest {
         Assert.assertTrue(earliestDateFound);
     }
 
+    @Test
+    public void shouldPageThroughABuyersOrdersWhateverTheCaseOfTheirEmailAddress() throws Exception {
+        String buyer = "History." + UUID.randomUUID() + "@Buyer.com";
+        LocalDateTime firstOrderDateTime = LocalDateTime.of(2002, 6, 1, 9, 0);
+        List<Long> savedOrderIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String buyersEmail = i == 1 ? " " + buyer.toUpperCase() : buyer;
+            savedOrderIds.add(orderRepository.save(new Order(0L, firstOrderDateTime.plusHours(i), buyersEmail, Collections.emptySet())).getId());
+        }
+        orderRepository.save(new Order(0L, firstOrderDateTime, "other." + buyer, Collections.emptySet()));
+
+        MvcResult firstPageResult = this.mockMvc.perform(get("/orders").param("buyer", buyer.toLowerCase()).param("limit", "2"))
+                .andExpect(status().isOk()).andReturn();
+        OrderPage firstPage = mapper.readValue(firstPageResult.getResponse().getContentAsString(), OrderPage.class);
+        MvcResult lastPageResult = this.mockMvc.perform(get("/orders").param("buyer", buyer).param("limit", "2").param("cursor", firstPage.getNextCursor()))
+                .andExpect(status().isOk()).andReturn();
+        OrderPage lastPage = mapper.readValue(lastPageResult.getResponse().getContentAsString(), OrderPage.class);
+
+        List<Long> pagedOrderIds = new ArrayList<>();
+        firstPage.getOrders().forEach(order -> pagedOrderIds.add(order.getId()));
+        lastPage.getOrders().forEach(order -> pagedOrderIds.add(order.getId()));
+        Assert.assertEquals(savedOrderIds, pagedOrderIds);
+        Assert.assertNull(lastPage.getNextCursor());
+
+        this.mockMvc.perform(get("/orders").param("buyer", buyer).param("view", "header"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orderHeaders.length()").value(3))
+                .andExpect(jsonPath("$.orderHeaders[0].id").value(savedOrderIds.get(0)))
+                .andExpect(jsonPath("$.orderHeaders[0].orderItems").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    public void shouldStopReadingDetachedMonthsAtOnceAndThenPurgeThem() throws Exception {
+        YearMonth firstMonth = firstMonthStillInTheDatabase();
+        Order detachedOrder = orderRepository.save(new Order(0L, firstMonth.plusMonths(2).atDay(10).atTime(9, 0), "detached@buyer.com", Collections.emptySet()));
+        OrderItem detachedOrderItem = orderItemRepository.save(new OrderItem(savedPrice1, savedProduct1, 1, detachedOrder));
+        Order retainedOrder = orderRepository.save(new Order(0L, firstMonth.plusMonths(4).atDay(1).atStartOfDay(), "retained@buyer.com", Collections.emptySet()));
+
+        this.mockMvc.perform(delete("/orders/months").param("before", firstMonth.plusMonths(4).toString()))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$[?(@.month == '" + firstMonth.plusMonths(4) + "')].detached").value(contains(false)));
+
+        this.mockMvc.perform(get("/orders").param("after", firstMonth.atDay(1).atStartOfDay().toString()).param("before", firstMonth.plusMonths(5).atDay(1).atStartOfDay().toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(retainedOrder.getId()));
+        this.mockMvc.perform(get("/orders").param("buyer", "detached@buyer.com"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orders.length()").value(0));
+
+        long purgeDeadline = System.currentTimeMillis() + 5000;
+        while (orderRepository.existsById(detachedOrder.getId()) && System.currentTimeMillis() < purgeDeadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(orderRepository.existsById(detachedOrder.getId()));
+        Assert.assertFalse(orderItemRepository.existsById(detachedOrderItem.getId()));
+        Assert.assertTrue(orderRepository.existsById(retainedOrder.getId()));
+    }
+
+    @Test
+    public void shouldReadArchivedOrdersAheadOfThoseInTheDatabase() throws Exception {
+        YearMonth firstMonth = firstMonthStillInTheDatabase();
+        String buyer = "Archived." + UUID.randomUUID() + "@Buyer.com";
+        Order firstArchivedOrder = orderRepository.save(new Order(0L, firstMonth.plusMonths(2).atDay(10).atTime(9, 0), buyer, Collections.emptySet()));
+        orderItemRepository.save(new OrderItem(savedPrice1, savedProduct1, 2, firstArchivedOrder));
+        Order secondArchivedOrder = orderRepository.save(new Order(0L, firstMonth.plusMonths(3).atDay(10).atTime(9, 0), "other." + buyer, Collections.emptySet()));
+        orderItemRepository.save(new OrderItem(savedPrice2, savedProduct2, 1, secondArchivedOrder));
+        Order hotOrder = orderRepository.save(new Order(0L, firstMonth.plusMonths(5).atDay(1).atTime(9, 0), buyer.toUpperCase(), Collections.emptySet()));
+
+        this.mockMvc.perform(post("/orders/archive").param("before", firstMonth.plusMonths(5).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[-1:].until").value(contains(firstMonth.plusMonths(5).toString())));
+
+        String after = firstMonth.plusMonths(2).atDay(1).atStartOfDay().toString();
+        String before = firstMonth.plusMonths(6).atDay(1).atStartOfDay().toString();
+        this.mockMvc.perform(get("/orders").param("after", after).param("before", before))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains((int) firstArchivedOrder.getId(), (int) secondArchivedOrder.getId(), (int) hotOrder.getId())))
+                .andExpect(jsonPath("$[0].orderItems[0].quantity").value(2))
+                .andExpect(jsonPath("$[0].orderItems[0].price.id").value(savedPrice1.getId()))
+                .andExpect(jsonPath("$[0].totalAmount").value(41.0));
+        this.mockMvc.perform(get("/orders").param("after", after).param("before", before).param("view", "header"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains((int) firstArchivedOrder.getId(), (int) secondArchivedOrder.getId(), (int) hotOrder.getId())))
+                .andExpect(jsonPath("$[1].totals[0].amount").value(40.5));
+
+        MvcResult firstPageResult = this.mockMvc.perform(get("/orders").param("after", after).param("before", before).param("limit", "2"))
+                .andExpect(status().isOk()).andReturn();
+        OrderPage firstPage = mapper.readValue(firstPageResult.getResponse().getContentAsString(), OrderPage.class);
+        this.mockMvc.perform(get("/orders").param("after", after).param("before", before).param("limit", "2").param("cursor", firstPage.getNextCursor()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orders[*].id").value(contains((int) hotOrder.getId())))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        MvcResult firstBuyersPageResult = this.mockMvc.perform(get("/orders").param("buyer", buyer).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orders[0].id").value(firstArchivedOrder.getId())).andReturn();
+        OrderPage firstBuyersPage = mapper.readValue(firstBuyersPageResult.getResponse().getContentAsString(), OrderPage.class);
+        this.mockMvc.perform(get("/orders").param("buyer", buyer).param("limit", "1").param("cursor", firstBuyersPage.getNextCursor()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orders[0].id").value(hotOrder.getId()));
+
+        this.mockMvc.perform(get("/reports/sales").param("from", after).param("to", before).param("granularity", "month"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.productId == " + savedProduct1.getId() + ")].quantity").value(contains(2)))
+                .andExpect(jsonPath("$[?(@.productId == " + savedProduct2.getId() + ")].revenue").value(contains(40.5)));
+    }
+
+    @Test
+    public void shouldExportOrderLinesAsCsvFromTheArchiveAndTheDatabase() throws Exception {
+        YearMonth firstMonth = firstMonthStillInTheDatabase();
+        Product quotedProduct = productRepository.saveAndFlush(new Product("Mug, \"Large\""));
+        Price quotedPrice = priceRepository.saveAndFlush(Price.createPrice(quotedProduct, "3.05", "GBP"));
+        Order archivedOrder = orderRepository.save(new Order(0L, firstMonth.plusMonths(1).atDay(10).atTime(9, 0), "exporter@buyer.com", Collections.emptySet()));
+        OrderItem archivedItem = orderItemRepository.save(new OrderItem(savedPrice1, savedProduct1, 2, archivedOrder));
+        Order hotOrder = orderRepository.save(new Order(0L, firstMonth.plusMonths(3).atDay(1).atTime(9, 0), "exporter@buyer.com", Collections.emptySet()));
+        OrderItem hotItem = orderItemRepository.save(new OrderItem(quotedPrice, quotedProduct, 3, hotOrder));
+        Order orderWithoutItems = orderRepository.save(new Order(0L, firstMonth.plusMonths(3).atDay(2).atTime(9, 0, 30), "empty@buyer.com", Collections.emptySet()));
+        this.mockMvc.perform(post("/orders/archive").param("before", firstMonth.plusMonths(2).toString()))
+                .andExpect(status().isOk());
+
+        String after = firstMonth.plusMonths(1).atDay(1).atStartOfDay().toString();
+        String before = firstMonth.plusMonths(4).atDay(1).atStartOfDay().toString();
+        MvcResult csvResult = this.mockMvc.perform(get("/orders/export.csv").param("after", after).param("before", before))
+                .andExpect(status().isOk()).andReturn();
+
+        Assert.assertEquals(OrderController.TEXT_CSV_VALUE, csvResult.getResponse().getContentType());
+        String expectedCsv = "order_id,creation_date_time,buyers_email,item_id,product_id,product_name,quantity,price_id,unit_price,currency,line_total\n" +
+                archivedOrder.getId() + "," + firstMonth.plusMonths(1).atDay(10) + "T09:00:00,exporter@buyer.com," + archivedItem.getId() + "," + savedProduct1.getId() +
+                ",Product 1,2," + savedPrice1.getId() + ",20.50,GBP,41.00\n" +
+                hotOrder.getId() + "," + firstMonth.plusMonths(3).atDay(1) + "T09:00:00,exporter@buyer.com," + hotItem.getId() + "," + quotedProduct.getId() +
+                ",\"Mug, \"\"Large\"\"\",3," + quotedPrice.getId() + ",3.05,GBP,9.15\n" +
+                orderWithoutItems.getId() + "," + firstMonth.plusMonths(3).atDay(2) + "T09:00:30,empty@buyer.com,,,,,,,,\n";
+        Assert.assertEquals(expectedCsv, csvResult.getResponse().getContentAsString());
+
+        MvcResult gzippedResult = this.mockMvc.perform(get("/orders/export.csv").param("after", after).param("before", before).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip")).andReturn();
+        try (GZIPInputStream gunzipped = new GZIPInputStream(new ByteArrayInputStream(gzippedResult.getResponse().getContentAsByteArray()))) {
+            Assert.assertEquals(expectedCsv, new String(gunzipped.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /*
+    Detaching or archiving moves the start of the database's months for every later test, so each test picks months after it.
+     */
+    private YearMonth firstMonthStillInTheDatabase() {
+        YearMonth hotFrom = YearMonth.from(orderArchive.getTiers().getHotFrom());
+        YearMonth earliest = YearMonth.of(1995, 1);
+        return hotFrom.isAfter(earliest) ? hotFrom : earliest;
+    }
+
+    @Test
+    public void shouldPageThroughOrdersBetweenDatesUsingTheNextCursor() throws Exception {
+        LocalDateTime firstOrderDateTime = LocalDateTime.of(2001, 3, 1, 9, 0);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            orders.add(new Order(0L, firstOrderDateTime.plusHours(i / 2), "pager@gamil.com", Collections.emptySet()));
+        }
+        List<Long> savedOrderIds = new ArrayList<>();
+        orderRepository.saveAll(orders).forEach(order -> savedOrderIds.add(order.getId()));
+
+        String after = firstOrderDateTime.minusDays(1).format(DateTimeFormatter.ISO_DATE_TIME);
+        String before = firstOrderDateTime.plusDays(1).format(DateTimeFormatter.ISO_DATE_TIME);
+
+        List<Long> pagedOrderIds = new ArrayList<>();
+        String cursor = null;
+        int pageCount = 0;
+        do {
+            MvcResult pageResult = this.mockMvc.perform(get("/orders").
+                    param("after", after).
+                    param("before", before).
+                    param("limit", "2").
+                    param("cursor", cursor)).
+                    andExpect(status().isOk()).andReturn();
+
+            OrderPage page = mapper.readValue(pageResult.getResponse().getContentAsString(), OrderPage.class);
+            Assert.assertTrue(page.getOrders().size() <= 2);
+            page.getOrders().forEach(order -> pagedOrderIds.add(order.getId()));
+            cursor = page.getNextCursor();
+            pageCount++;
+        } while (cursor != null);
+
+        Assert.assertEquals(3, pageCount);
+        Assert.assertEquals(savedOrderIds, pagedOrderIds);
+    }
+
+    @Test
+    public void shouldRejectAPageLimitOutOfRangeOrACursorItDidNotReturn() throws Exception {
+        String after = LocalDateTime.of(2001, 3, 1, 0, 0).format(DateTimeFormatter.ISO_DATE_TIME);
+        String before = LocalDateTime.of(2001, 4, 1, 0, 0).format(DateTimeFormatter.ISO_DATE_TIME);
+
+        this.mockMvc.perform(get("/orders").param("after", after).param("before", before).param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("limit must be between 1 and " + OrderController.MAX_PAGE_SIZE));
+        this.mockMvc.perform(get("/orders").param("buyer", "pager@gamil.com").param("limit", String.valueOf(OrderController.MAX_PAGE_SIZE + 1)))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/orders").param("after", after).param("before", before).param("limit", "2").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid order cursor not-a-cursor"));
+    }
+
+    @Test
+    public void shouldStreamOrdersBetweenDatesAsNewlineDelimitedJson() throws Exception {
+        LocalDateTime firstOrderDateTime = LocalDateTime.of(2002, 6, 1, 9, 0);
+        OrderItem orderItem = orderItemRepository.save(new OrderItem(0L, savedPrice1, savedProduct1, 3, null));
+        List<Order> savedOrders = orderRepository.saveAll(Arrays.asList(
+                new Order(0L, firstOrderDateTime, "streamer@gamil.com", Collections.singleton(orderItem)),
+                new Order(0L, firstOrderDateTime.plusMinutes(1), "streamer@gamil.com", Collections.emptySet())));
+
+        MvcResult streamResult = this.mockMvc.perform(get("/orders").
+                accept(OrderController.APPLICATION_NDJSON_VALUE).
+                param("after", firstOrderDateTime.minusDays(1).format(DateTimeFormatter.ISO_DATE_TIME)).
+                param("before", firstOrderDateTime.plusDays(1).format(DateTimeFormatter.ISO_DATE_TIME))).
+                andExpect(status().isOk()).andReturn();
+
+        Assert.assertEquals(OrderController.APPLICATION_NDJSON_VALUE, streamResult.getResponse().getContentType());
+
+        String[] lines = streamResult.getResponse().getContentAsString().split("\n");
+        Assert.assertEquals(savedOrders.size(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            Assert.assertEquals(savedOrders.get(i).getId(), mapper.readValue(lines[i], Order.class).getId());
+        }
+    }
+
+    @Test
+    public void shouldListOrdersBetweenDatesWithABoundedNumberOfStatements() throws Exception {
+        LocalDateTime firstOrderDateTime = LocalDateTime.of(2003, 4, 1, 9, 0);
+        for (int i = 0; i < 20; i++) {
+            Order order = orderRepository.save(new Order(0L, firstOrderDateTime.plusMinutes(i), "counter@gamil.com", new HashSet<>()));
+            for (int j = 0; j < 3; j++) {
+                Product product = productRepository.save(new Product("Statement Count Product " + i + "-" + j));
+                Price price = priceRepository.save(Price.createPrice(product, "1" + j + ".00", "GBP"));
+                orderItemRepository.save(new OrderItem(0L, price, product, 2, order));
+                priceManagement.saveNewProductPrice(new Product(product.getId(), product.getName(), Price.createPrice(product, "2" + j + ".00", "GBP")));
+            }
+        }
+
+        // bring the catalog up to date first, so its rebuild after the Products and Prices saved for the test is not counted
+        catalog.getSnapshot();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        boolean statisticsWereEnabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            this.mockMvc.perform(get("/orders").
+                    param("after", firstOrderDateTime.minusDays(1).format(DateTimeFormatter.ISO_DATE_TIME)).
+                    param("before", firstOrderDateTime.plusDays(1).format(DateTimeFormatter.ISO_DATE_TIME))).
+                    andExpect(status().isOk()).
+                    andExpect(jsonPath("$.length()").value(20)).
+                    andExpect(jsonPath("$[0].orderItems.length()").value(3));
+
+            Assert.assertTrue("Listing 20 orders took " + statistics.getPrepareStatementCount() + " statements",
+                    statistics.getPrepareStatementCount() <= MAX_STATEMENTS_PER_ORDER_LISTING);
+        } finally {
+            statistics.setStatisticsEnabled(statisticsWereEnabled);
+        }
+    }
+
+    @Test
+    public void shouldListOrderHeadersWithTheirStoredTotalsWithoutReadingTheirItems() throws Exception {
+        LocalDateTime before = LocalDateTime.now().plusMinutes(1);
+        MvcResult created = this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON)
+                .content(minimalOrderJSON("header@now.com", savedPrice2.getId(), savedProduct2.getId(), 2))).andExpect(status().isOk()).andReturn();
+        long orderId = mapper.readValue(created.getResponse().getContentAsString(), Order.class).getId();
+
+        Order storedOrder = orderRepository.findById(orderId).orElseThrow();
+        Assert.assertEquals(List.of(Money.of(savedPrice2.getAmount().multiply(new BigDecimal(2)), savedPrice2.getCurrency())), storedOrder.getTotals());
+
+        // bring the catalog up to date first, so its rebuild after the Products and Prices saved for the test is not counted
+        catalog.getSnapshot();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        boolean statisticsWereEnabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            MvcResult headersResult = this.mockMvc.perform(get("/orders").
+                    param("after", before.minusHours(1).format(DateTimeFormatter.ISO_DATE_TIME)).
+                    param("before", before.format(DateTimeFormatter.ISO_DATE_TIME)).
+                    param("view", "header")).
+                    andExpect(status().isOk()).andReturn();
+
+            List<Map<String, Object>> headers = mapper.readValue(headersResult.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            Map<String, Object> header = headers.stream().filter(orderHeader -> ((Number) orderHeader.get("id")).longValue() == orderId).findFirst().orElseThrow();
+            Assert.assertEquals("header@now.com", header.get("buyersEmail"));
+            Assert.assertFalse(header.containsKey("orderItems"));
+            Assert.assertEquals(81.0, ((Number) header.get("totalAmount")).doubleValue(), 0.001);
+
+            Assert.assertEquals(1, statistics.getPrepareStatementCount());
+            Assert.assertEquals(0, statistics.getEntityLoadCount());
+            Assert.assertEquals(0, statistics.getCollectionFetchCount());
+        } finally {
+            statistics.setStatisticsEnabled(statisticsWereEnabled);
+        }
+    }
+
+    @Test
+    public void shouldAddABatchOfOrdersAndRejectOnlyTheInvalidOnes() throws Exception {
+        String batchJSON = "[" +
+                minimalOrderJSON("batch1@now.com", savedPrice1.getId(), savedProduct1.getId(), 2) + "," +
+                minimalOrderJSON("batch2@now.com", Long.MAX_VALUE, savedProduct1.getId(), 1) + "," +
+                minimalOrderJSON("batch3@now.com", savedPrice2.getId(), savedProduct2.getId(), 1) + "," +
+                minimalOrderJSON("batch4@now.com", savedPrice2.getId(), savedProduct1.getId(), 1) +
+                "]";
+
+        MvcResult batchResult = this.mockMvc.perform(post("/orders/batch").contentType(APPLICATION_JSON)
+                .content(batchJSON)).andExpect(status().isOk()).andReturn();
+
+        List<OrderBatchResult> results = mapper.readValue(batchResult.getResponse().getContentAsString(), new TypeReference<>() {
+        });
+
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(OrderBatchResult.Status.CREATED, results.get(0).getStatus());
+        Assert.assertEquals(OrderBatchResult.Status.REJECTED, results.get(1).getStatus());
+        Assert.assertEquals(OrderBatchResult.Status.CREATED, results.get(2).getStatus());
+        Assert.assertEquals(OrderBatchResult.Status.REJECTED, results.get(3).getStatus());
+        Assert.assertNull(results.get(1).getOrderId());
+
+        Order firstOrder = orderRepository.findById(results.get(0).getOrderId()).orElseThrow();
+        Assert.assertEquals("batch1@now.com", firstOrder.getBuyersEmail());
+        Assert.assertThat(firstOrder.getTotalAmount(), amountMatcher(savedPrice1.getAmount().multiply(new BigDecimal(2))));
+        Assert.assertThat(orderRepository.findById(results.get(2).getOrderId()).orElseThrow().getTotalAmount(), amountMatcher(savedPrice2.getAmount()));
+    }
+
+    @Test
+    public void shouldAddTheOrdersBeforeOneThatCannotBeReadAndRejectIt() throws Exception {
+        String batchJSON = "[" +
+                minimalOrderJSON("readable@now.com", savedPrice1.getId(), savedProduct1.getId(), 1) + "," +
+                "{\"buyersEmail\": \"unreadable@now.com\", \"orderItems\": \"not a list\"}," +
+                minimalOrderJSON("unread@now.com", savedPrice2.getId(), savedProduct2.getId(), 1) +
+                "]";
+
+        MvcResult batchResult = this.mockMvc.perform(post("/orders/batch").contentType(APPLICATION_JSON)
+                .content(batchJSON)).andExpect(status().isBadRequest()).andReturn();
+
+        List<OrderBatchResult> results = mapper.readValue(batchResult.getResponse().getContentAsString(), new TypeReference<>() {
+        });
+
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(OrderBatchResult.Status.CREATED, results.get(0).getStatus());
+        Assert.assertEquals("readable@now.com", orderRepository.findById(results.get(0).getOrderId()).orElseThrow().getBuyersEmail());
+        Assert.assertEquals(OrderBatchResult.Status.REJECTED, results.get(1).getStatus());
+        Assert.assertEquals(1, results.get(1).getIndex());
+        Assert.assertTrue(results.get(1).getError(), results.get(1).getError().startsWith("The Order could not be read"));
+
+        this.mockMvc.perform(post("/orders/batch").contentType(OrderController.APPLICATION_NDJSON_VALUE)
+                .content(minimalOrderJSON("line@now.com", savedPrice1.getId(), savedProduct1.getId(), 1).replace("\n", "") + "\n{\"buyersEmail\": \n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].status").value("REJECTED"));
+    }
+
+    @Test
+    public void shouldAddABatchOfOrdersSentAsNewlineDelimitedJson() throws Exception {
+        String batchNdjson = minimalOrderJSON("line1@now.com", savedPrice1.getId(), savedProduct1.getId(), 1).replace("\n", "") + "\n" +
+                minimalOrderJSON("line2@now.com", savedPrice2.getId(), savedProduct2.getId(), 3).replace("\n", "") + "\n";
+
+        this.mockMvc.perform(post("/orders/batch").contentType(OrderController.APPLICATION_NDJSON_VALUE)
+                .content(batchNdjson)).andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].index").value(1));
+    }
+
     @Test
     public void shouldCreateOrder() throws Exception {
 
@@ -170,6 +577,52 @@ public class OrderControllerIntegrationTest {
                 .andExpect(jsonPath("$.totalAmount").value(amountMatcher(expectedTotalAmount), BigDecimal.class));
     }
 
+    @Test
+    public void shouldRejectAnOrderAtAPriceThatIsNoLongerInEffect() throws Exception {
+        Price newerPrice = priceManagement.saveNewProductPrice(new Product(savedProduct1.getId(), savedProduct1.getName(),
+                Price.createPrice(savedProduct1, "21.50", "GBP"))).orElseThrow();
+
+        this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON)
+                .content(minimalOrderJSON("outdated@now.com", savedPrice1.getId(), savedProduct1.getId(), 1)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("REJECTED"));
+        this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON)
+                .content(minimalOrderJSON("current@now.com", newerPrice.getId(), savedProduct1.getId(), 1)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldRejectAnOrderWithAQuantityOfZero() throws Exception {
+        this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON)
+                .content(minimalOrderJSON("nothing@now.com", savedPrice1.getId(), savedProduct1.getId(), 0)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("REJECTED"));
+    }
+
+    @Test
+    public void shouldRejectAnOrderWithoutItems() throws Exception {
+        this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON).content("{\"buyersEmail\": \"empty@now.com\", \"orderItems\": []}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("REJECTED"));
+        this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON).content("{\"buyersEmail\": \"empty@now.com\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("REJECTED"));
+    }
+
+    @Test
+    public void shouldPriceAnOrderFromItsStoredPricesWhateverAmountIsSent() throws Exception {
+        String underpricedOrderJSON = minimalOrderJSON("underpriced@now.com", savedPrice1.getId(), savedProduct1.getId(), 2)
+                .replace("{\"id\":" + savedPrice1.getId() + "}", "{\"id\":" + savedPrice1.getId() + ", \"amount\": 0.01, \"currency\": \"GBP\"}");
+
+        MvcResult mvcResult = this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON)
+                .content(underpricedOrderJSON)).andExpect(status().isOk()).andReturn();
+
+        Order savedOrder = mapper.readValue(mvcResult.getResponse().getContentAsString(), Order.class);
+        BigDecimal expectedTotalAmount = savedPrice1.getAmount().multiply(new BigDecimal(2));
+        Assert.assertThat(savedOrder.getTotalAmount(), amountMatcher(expectedTotalAmount));
+        Assert.assertThat(orderRepository.findById(savedOrder.getId()).orElseThrow().getTotalAmount(), amountMatcher(expectedTotalAmount));
+    }
+
     @Test
     public void shouldCreateOrderFromMinimalJSONAndReturnPopulatedOrderData() throws Exception {
         String newOrderJSON = "{\n" +
@@ -199,6 +652,45 @@ public class OrderControllerIntegrationTest {
 
     }
 
+    @Test
+    public void shouldPublishMetricsForEachRequest() throws Exception {
+        DistributionSummary addOrderStatements = meterRegistry.summary("hibernate.request.statements", "handler", "OrderController.addOrder");
+        Timer priceResolution = meterRegistry.timer(OrderWriter.ADD_ORDER_PHASE_TIMER, "phase", "price-resolution");
+        long addOrderRequests = addOrderStatements.count();
+        double addOrderStatementTotal = addOrderStatements.totalAmount();
+        long priceResolutions = priceResolution.count();
+
+        this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON)
+                .content(minimalOrderJSON("metrics@now.com", savedPrice1.getId(), savedProduct1.getId(), 1))).andExpect(status().isOk());
+
+        Assert.assertEquals(addOrderRequests + 1, addOrderStatements.count());
+        Assert.assertTrue(addOrderStatements.totalAmount() > addOrderStatementTotal);
+        Assert.assertEquals(priceResolutions + 1, priceResolution.count());
+
+        this.mockMvc.perform(get("/orders").param("after", LocalDateTime.now().minusHours(1).toString()).param("before", LocalDateTime.now().plusHours(1).toString()))
+                .andExpect(status().isOk());
+        Assert.assertTrue(meterRegistry.summary("hibernate.request.entities.loaded", "handler", "OrderController.getProducts").totalAmount() > 0);
+
+        String scrape = this.mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        Assert.assertTrue(scrape.contains("hibernate_request_statements_count{handler=\"OrderController.addOrder\",}"));
+        Assert.assertTrue(scrape.contains("orders_add_phase_seconds_bucket{phase=\"item-save\""));
+        Assert.assertTrue(scrape.contains("http_server_requests_seconds_bucket"));
+        Assert.assertTrue(scrape.contains("cache_gets_total{cache=\"prices.by-id\""));
+    }
+
+    private String minimalOrderJSON(String buyersEmail, long priceId, long productId, int quantity) {
+        return "{\n" +
+                "  \"buyersEmail\": \"" + buyersEmail + "\",\n" +
+                "  \"orderItems\": [\n" +
+                "    {\n" +
+                "      \"price\": {\"id\":" + priceId + "},\n" +
+                "      \"product\": {\"id\": " + productId + "},\n" +
+                "      \"quantity\": " + quantity + "\n" +
+                "    }\n" +
+                "  ]\n" +
+                "}";
+    }
+
     private void checkForDateThatIsTooLate(LocalDateTime latestOrderDateTime, LocalDateTime afterLatestOrderDateTime, Order order) {
         if (order.getCreationDateTime().isEqual(afterLatestOrderDateTime) || order.getCreationDateTime().isAfter(latestOrderDateTime)){
             throw new AssertionError("An Order with a date that is too late is in the search results");
@@ -0,0 +1,90 @@
+package com.jasonrharris.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonrharris.orders.Order;
+import com.jasonrharris.orders.OrderStatus;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
+import com.jasonrharris.products.Product;
+import com.jasonrharris.repositories.OrderRepository;
+import com.jasonrharris.repositories.ProductRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.Matchers.endsWith;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"orders.write-behind.enabled=true", "spring.datasource.url=jdbc:h2:mem:writeBehind"})
+@AutoConfigureMockMvc
+public class OrderControllerWriteBehindIntegrationTest {
+    private static final long STATUS_TIMEOUT_MILLIS = 10_000;
+
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private PriceManagement priceManagement;
+    @Autowired
+    private MockMvc mockMvc;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Price savedPrice;
+
+    @Before
+    public void setUp() {
+        Product savedProduct = productRepository.save(new Product("Write Behind Product"));
+        savedPrice = priceManagement.saveNewProductPrice(new Product(savedProduct.getId(), savedProduct.getName(),
+                Price.createPrice(savedProduct, "12.50", "GBP"))).orElseThrow();
+    }
+
+    @Test
+    public void shouldAcceptAnOrderAndWriteItBehind() throws Exception {
+        MvcResult acceptedResult = this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON).content(orderJSON(savedPrice.getId(), savedPrice.getProduct().getId())))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value("QUEUED"))
+                .andReturn();
+        long orderId = mapper.readValue(acceptedResult.getResponse().getContentAsString(), OrderStatus.class).getOrderId();
+        Assert.assertThat(acceptedResult.getResponse().getHeader("Location"), endsWith("/orders/" + orderId + "/status"));
+
+        long deadline = System.currentTimeMillis() + STATUS_TIMEOUT_MILLIS;
+        OrderStatus.Status status;
+        do {
+            MvcResult statusResult = this.mockMvc.perform(get("/orders/" + orderId + "/status")).andExpect(status().isOk()).andReturn();
+            status = mapper.readValue(statusResult.getResponse().getContentAsString(), OrderStatus.class).getStatus();
+        } while (status == OrderStatus.Status.QUEUED && System.currentTimeMillis() < deadline);
+
+        Assert.assertEquals(OrderStatus.Status.WRITTEN, status);
+        Order writtenOrder = orderRepository.findById(orderId).orElseThrow();
+        Assert.assertEquals("async@buyer.com", writtenOrder.getBuyersEmail());
+    }
+
+    @Test
+    public void shouldRejectAnOrderWithAnUnknownPrice() throws Exception {
+        this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON).content(orderJSON(Long.MAX_VALUE, savedPrice.getProduct().getId())))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("REJECTED"))
+                .andExpect(jsonPath("$.orderId").doesNotExist());
+    }
+
+    @Test
+    public void shouldNotFindTheStatusOfAnUnknownOrder() throws Exception {
+        this.mockMvc.perform(get("/orders/" + Long.MAX_VALUE + "/status")).andExpect(status().isNotFound());
+    }
+
+    private String orderJSON(long priceId, long productId) {
+        return "{\"buyersEmail\": \"async@buyer.com\", \"orderItems\": [{\"price\": {\"id\": " + priceId + "}, \"product\": {\"id\": " + productId + "}, \"quantity\": 2}]}";
+    }
+}
@@ -9,7 +9,9 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.jasonrharris.orders.Order;
 import com.jasonrharris.orders.OrderItem;
 import com.jasonrharris.products.Price;
+import com.jasonrharris.products.PriceManagement;
 import com.jasonrharris.products.Product;
+import com.jasonrharris.products.ProductSearch;
 import com.jasonrharris.repositories.OrderItemRepository;
 import com.jasonrharris.repositories.OrderRepository;
 import com.jasonrharris.repositories.PriceRepository;
@@ -21,19 +23,27 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.EntityNotFoundException;
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -49,6 +59,12 @@ public class ProductControllerIntegrationTest {
     @Autowired
     private PriceRepository priceRepository;
 
+    @Autowired
+    private PriceManagement priceManagement;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Autowired
     private OrderItemRepository orderItemRepository;
     @Autowired
@@ -62,7 +78,7 @@ public class ProductControllerIntegrationTest {
     @org.junit.Before
     public void setUp() {
         Product initialProduct = productRepository.saveAndFlush(new Product(INITIAL_PRODUCT_NAME));
-        priceRepository.save(Price.createPrice(initialProduct, "20.20", "GBP"));
+        priceManagement.saveNewProductPrice(new Product(initialProduct.getId(), initialProduct.getName(), Price.createPrice(initialProduct, "20.20", "GBP")));
         initialProductWithPrice = productRepository.findById(initialProduct.getId()).orElseThrow(() -> new AssertionError("Initial Product ought to be persisted"));
     }
 
@@ -71,6 +87,33 @@ public class ProductControllerIntegrationTest {
         Assert.assertTrue(initialProductWithPrice.getCurrentPrice().isPresent());
     }
 
+    @Test
+    public void shouldKeepTheNewestPriceAsTheCurrentPrice() {
+        Price olderPrice = initialProductWithPrice.getCurrentPrice().orElseThrow();
+        Price newerPrice = priceManagement.saveNewProductPrice(new Product(initialProductWithPrice.getId(), INITIAL_PRODUCT_NAME,
+                Price.createPrice(initialProductWithPrice, "25.25", "GBP"))).orElseThrow();
+
+        int updatedProducts = transactionTemplate.execute(status -> productRepository.updateCurrentPriceIfNewer(initialProductWithPrice.getId(), olderPrice.getId()));
+
+        Assert.assertEquals(0, updatedProducts);
+        Assert.assertEquals(newerPrice, productRepository.findById(initialProductWithPrice.getId()).orElseThrow().getCurrentPrice().orElseThrow());
+    }
+
+    @Test
+    public void shouldGetThePriceInEffectAtAGivenTime() throws Exception {
+        Price olderPrice = initialProductWithPrice.getCurrentPrice().orElseThrow();
+        Price newerPrice = priceManagement.saveNewProductPrice(new Product(initialProductWithPrice.getId(), INITIAL_PRODUCT_NAME,
+                Price.createPrice(initialProductWithPrice, "25.25", "GBP"))).orElseThrow();
+        String priceUrl = "/products/" + initialProductWithPrice.getId() + "/price";
+
+        this.mockMvc.perform(get(priceUrl).param("at", olderPrice.getCreationDateTime().toString()))
+                .andExpect(status().isOk()).andExpect(jsonPath("$.id").value(olderPrice.getId()));
+        this.mockMvc.perform(get(priceUrl))
+                .andExpect(status().isOk()).andExpect(jsonPath("$.id").value(newerPrice.getId()));
+        this.mockMvc.perform(get(priceUrl).param("at", olderPrice.getCreationDateTime().minusSeconds(1).toString()))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void shouldReturnExistingProducts() throws Exception {
         //as order of tests can't be controlled, the expected number of products is variable
@@ -98,6 +141,122 @@ public class ProductControllerIntegrationTest {
         }
     }
 
+    @Test
+    public void shouldAnswerAnUnchangedCatalogWithNotModified() throws Exception {
+        String eTag = this.mockMvc.perform(get("/products")).andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        Assert.assertNotNull(eTag);
+
+        this.mockMvc.perform(get("/products").header(HttpHeaders.IF_NONE_MATCH, eTag)).andExpect(status().isNotModified());
+
+        productRepository.saveAndFlush(new Product("Catalog Change"));
+
+        String changedETag = this.mockMvc.perform(get("/products").header(HttpHeaders.IF_NONE_MATCH, eTag)).andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.name == 'Catalog Change')]").exists())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        Assert.assertNotEquals(eTag, changedETag);
+    }
+
+    @Test
+    public void shouldServeTheSameCatalogGzipped() throws Exception {
+        MvcResult plainResult = this.mockMvc.perform(get("/products")).andExpect(status().isOk()).andReturn();
+        MvcResult gzippedResult = this.mockMvc.perform(get("/products").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+
+        try (GZIPInputStream gunzipped = new GZIPInputStream(new ByteArrayInputStream(gzippedResult.getResponse().getContentAsByteArray()))) {
+            Assert.assertArrayEquals(plainResult.getResponse().getContentAsByteArray(), gunzipped.readAllBytes());
+        }
+        Assert.assertNotEquals(plainResult.getResponse().getHeader(HttpHeaders.ETAG), gzippedResult.getResponse().getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void shouldSearchForProductsAsTheyAreAddedAndRenamed() throws Exception {
+        this.mockMvc.perform(get("/products/search").param("q", "nike rev"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].name").value("Nike Revolution"));
+
+        String addedProduct = this.mockMvc.perform(post("/products").contentType(APPLICATION_JSON).content("{\"name\": \"Searchable Trail Runner\"}"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        long id = new ObjectMapper().readValue(addedProduct, Product.class).getId();
+        this.mockMvc.perform(get("/products/search").param("q", "trail searchable").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(id));
+
+        this.mockMvc.perform(put("/products/" + id).contentType(APPLICATION_JSON).content("{\"name\": \"Searchable Road Runner\"}"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(get("/products/search").param("q", "searchable trail"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    public void shouldRejectASearchLimitOutOfRangeOrAQueryWithoutLettersOrDigits() throws Exception {
+        for (int limit : new int[]{0, ProductSearch.MAX_LIMIT + 1}) {
+            this.mockMvc.perform(get("/products/search").param("q", "nike").param("limit", String.valueOf(limit)))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.error").value("limit must be between 1 and " + ProductSearch.MAX_LIMIT));
+        }
+        this.mockMvc.perform(get("/products/search").param("q", "!!! -"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("The query must contain a letter or digit"));
+    }
+
+    @Test
+    public void shouldLoadProductsWithTheirPriceHistoriesInBulk() throws Exception {
+        String csv = "name,amount,currency,creation_date_time\n" +
+                "\"Bulk Loaded Boot, Walking\",50.00,GBP,2019-09-17T10:00:00,45.00,GBP,2019-09-20T10:00:00\n" +
+                "\n" +
+                "Bulk Loaded Sandal\n";
+        this.mockMvc.perform(post("/products/bulk").contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products").value(2))
+                .andExpect(jsonPath("$.prices").value(2));
+        String ndjson = "{\"name\": \"Bulk Loaded Slipper\", \"prices\": [{\"amount\": 12.5, \"currency\": \"EUR\", \"creationDateTime\": \"2019-09-18T10:00:00\"}]}\n";
+        this.mockMvc.perform(post("/products/bulk").contentType(OrderController.APPLICATION_NDJSON_VALUE).content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products").value(1));
+
+        this.mockMvc.perform(get("/products"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.name == 'Bulk Loaded Boot, Walking')].currentPrice.amount").value(contains(45.0)))
+                .andExpect(jsonPath("$[?(@.name == 'Bulk Loaded Slipper')].currentPrice.currency").value(contains("EUR")))
+                .andExpect(jsonPath("$[?(@.name == 'Bulk Loaded Sandal')].currentPrice").value(contains(nullValue())));
+        String found = this.mockMvc.perform(get("/products/search").param("q", "bulk loaded boot"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Bulk Loaded Boot, Walking"))
+                .andReturn().getResponse().getContentAsString();
+        long bootId = new ObjectMapper().readTree(found).get(0).get("id").asLong();
+        this.mockMvc.perform(get("/products/" + bootId + "/price").param("at", "2019-09-18T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.amount").value(50.0));
+
+        Product addedAfterwards = productRepository.saveAndFlush(new Product("Added After A Bulk Load"));
+        Assert.assertNotEquals(bootId, addedAfterwards.getId());
+    }
+
+    @Test
+    public void shouldStopABulkLoadAtAnInvalidLineAndCountTheChunksAlreadyLoaded() throws Exception {
+        // the default chunk is 1000 lines, so the first chunk is loaded before the invalid line in the second
+        StringBuilder csv = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            csv.append("Partly Loaded Product ").append(i).append(",10.00,GBP,2019-09-17T10:00:00\n");
+        }
+        csv.append("Unloadable Product,ten pounds,GBP,2019-09-17T10:00:00\n");
+
+        this.mockMvc.perform(post("/products/bulk").contentType("text/csv").content(csv.toString()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.products").value(1000))
+                .andExpect(jsonPath("$.prices").value(1000))
+                .andExpect(jsonPath("$.error").value(startsWith("Line 1001 is not a valid Product")));
+        this.mockMvc.perform(get("/products/search").param("q", "unloadable product"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
     @Test
     public void shouldCreateANewProduct() throws Exception {
 
@@ -0,0 +1,99 @@
+package com.jasonrharris.controllers;
+
+import com.jasonrharris.orders.Order;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.main.web-application-type=reactive", "spring.datasource.url=jdbc:h2:mem:reactive"})
+@ActiveProfiles("reactive")
+public class ReactiveIntegrationTest {
+    private static final String BASE_PATH = "/productAndOrderManager";
+    private static final String ORDER_RANGE = "?after=2000-01-01T00:00:00&before=2100-01-01T00:00:00";
+
+    @Autowired
+    private WebTestClient webTestClient;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void shouldServeTheCatalogSearchAndPricesUnderTheContextPath() {
+        String eTag = webTestClient.get().uri(BASE_PATH + "/products").exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .expectBody().jsonPath("$[?(@.name == 'Nike Revolution')]").exists()
+                .returnResult().getResponseHeaders().getETag();
+
+        webTestClient.get().uri(BASE_PATH + "/products").header(HttpHeaders.IF_NONE_MATCH, eTag).exchange()
+                .expectStatus().isNotModified();
+        webTestClient.get().uri(BASE_PATH + "/products/search?q=reebok").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$[0].id").isEqualTo(2);
+        webTestClient.get().uri(BASE_PATH + "/products/1/price").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.amount").isEqualTo(45.95);
+        webTestClient.get().uri(BASE_PATH + "/products/1/price?at=2000-01-01T00:00:00").exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void shouldAddOrdersAndStreamThemFromTheDatabase() {
+        long orderId = webTestClient.post().uri(BASE_PATH + "/orders").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"buyersEmail\": \"reactive@buyer.com\", \"orderItems\": [{\"price\": {\"id\": 3}, \"product\": {\"id\": 1}, \"quantity\": 2}, {\"price\": {\"id\": 4}, \"product\": {\"id\": 2}, \"quantity\": 1}]}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Order.class).returnResult().getResponseBody().getId();
+
+        List<Order> orders = webTestClient.get().uri(BASE_PATH + "/orders" + ORDER_RANGE).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBodyList(Order.class).returnResult().getResponseBody();
+        Order order = orders.stream().filter(readOrder -> readOrder.getId() == orderId).findFirst().orElseThrow();
+        Assert.assertEquals("reactive@buyer.com", order.getBuyersEmail());
+        Assert.assertEquals(2, order.getOrderItems().size());
+        Assert.assertEquals(0, order.getTotalAmount().compareTo(new BigDecimal("166.85")));
+
+        // the totals stored with the Order are served, not worked out again from its Prices
+        jdbcTemplate.update("UPDATE order_ SET totals = 'GBP:100' WHERE id = ?", orderId);
+        Order storedOrder = webTestClient.get().uri(BASE_PATH + "/orders" + ORDER_RANGE).exchange()
+                .expectBodyList(Order.class).returnResult().getResponseBody().stream()
+                .filter(readOrder -> readOrder.getId() == orderId).findFirst().orElseThrow();
+        Assert.assertEquals(0, storedOrder.getTotalAmount().compareTo(BigDecimal.ONE));
+
+        String lines = webTestClient.get().uri(BASE_PATH + "/orders" + ORDER_RANGE).accept(MediaType.parseMediaType(OrderController.APPLICATION_NDJSON_VALUE)).exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+        Assert.assertEquals(orders.size(), lines.split("\n").length);
+        Assert.assertTrue(lines.contains("\"id\":" + orderId + ","));
+
+        webTestClient.get().uri(BASE_PATH + "/orders/" + orderId + "/status").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.status").isEqualTo("WRITTEN");
+    }
+
+    @Test
+    public void shouldRejectInvalidOrdersAndRequests() {
+        webTestClient.post().uri(BASE_PATH + "/orders").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"buyersEmail\": \"reactive@buyer.com\", \"orderItems\": [{\"price\": {\"id\": 2}, \"product\": {\"id\": 1}, \"quantity\": 1}]}")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.status").isEqualTo("REJECTED");
+        webTestClient.get().uri(BASE_PATH + "/orders?after=2000-01-01T00:00:00").exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri(BASE_PATH + "/orders/999999/status").exchange()
+                .expectStatus().isNotFound();
+    }
+}
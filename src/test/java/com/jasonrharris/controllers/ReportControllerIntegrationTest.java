@@ -0,0 +1,190 @@
+package com.jasonrharris.controllers;
+
+import com.jasonrharris.orders.Order;
+import com.jasonrharris.orders.OrderItem;
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.Product;
+import com.jasonrharris.reports.SalesRollups;
+import com.jasonrharris.repositories.OrderItemRepository;
+import com.jasonrharris.repositories.OrderRepository;
+import com.jasonrharris.repositories.PriceRepository;
+import com.jasonrharris.repositories.ProductRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ReportControllerIntegrationTest {
+    private static final LocalDateTime REPORT_DAY = LocalDateTime.of(1999, 7, 1, 0, 0);
+
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private PriceRepository priceRepository;
+    @Autowired
+    private SalesRollups salesRollups;
+    @Autowired
+    private MockMvc mockMvc;
+
+    private static Product gbpProduct;
+    private static Product eurProduct;
+
+    @Before
+    public void setUp() {
+        if (gbpProduct != null) {
+            return;
+        }
+        gbpProduct = productRepository.save(new Product("Report Product GBP"));
+        Price gbpPrice = priceRepository.save(Price.createPrice(gbpProduct, "10.00", "GBP"));
+        eurProduct = productRepository.save(new Product("Report Product EUR"));
+        Price eurPrice = priceRepository.save(Price.createPrice(eurProduct, "2.50", "EUR"));
+
+        Order morningOrder = orderRepository.save(new Order(0L, REPORT_DAY.plusHours(9), "report@buyer.com", new HashSet<>()));
+        orderItemRepository.save(new OrderItem(0L, gbpPrice, gbpProduct, 2, morningOrder));
+        orderItemRepository.save(new OrderItem(0L, eurPrice, eurProduct, 4, morningOrder));
+
+        Order afternoonOrder = orderRepository.save(new Order(0L, REPORT_DAY.plusHours(15), "report@buyer.com", new HashSet<>()));
+        orderItemRepository.save(new OrderItem(0L, gbpPrice, gbpProduct, 1, afternoonOrder));
+
+        Order nextDayOrder = orderRepository.save(new Order(0L, REPORT_DAY.plusDays(1), "report@buyer.com", new HashSet<>()));
+        orderItemRepository.save(new OrderItem(0L, gbpPrice, gbpProduct, 5, nextDayOrder));
+    }
+
+    @Test
+    public void shouldReportSalesPerDayForEachProduct() throws Exception {
+        this.mockMvc.perform(get("/reports/sales")
+                .param("from", "1999-07-01T00:00:00")
+                .param("to", "1999-07-02T00:00:00")
+                .param("granularity", "day")
+                .param("groupBy", "product"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[?(@.productId == " + gbpProduct.getId() + ")].quantity").value(3))
+                .andExpect(jsonPath("$[?(@.productId == " + gbpProduct.getId() + ")].revenue").value(30.0))
+                .andExpect(jsonPath("$[?(@.productId == " + gbpProduct.getId() + ")].orders").value(2))
+                .andExpect(jsonPath("$[?(@.productId == " + eurProduct.getId() + ")].currency").value("EUR"))
+                .andExpect(jsonPath("$[0].bucket").value("1999-07-01T00:00:00"));
+    }
+
+    @Test
+    public void shouldReportSalesPerHourForEachCurrency() throws Exception {
+        this.mockMvc.perform(get("/reports/sales")
+                .param("from", "1999-07-01T00:00:00")
+                .param("to", "1999-07-03T00:00:00")
+                .param("granularity", "HOUR")
+                .param("groupBy", "currency"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(4))
+                .andExpect(jsonPath("$[0].bucket").value("1999-07-01T09:00:00"))
+                .andExpect(jsonPath("$[0].currency").value("EUR"))
+                .andExpect(jsonPath("$[0].productId").doesNotExist())
+                .andExpect(jsonPath("$[1].currency").value("GBP"))
+                .andExpect(jsonPath("$[1].revenue").value(20.0))
+                .andExpect(jsonPath("$[3].bucket").value("1999-07-02T00:00:00"))
+                .andExpect(jsonPath("$[3].quantity").value(5));
+    }
+
+    @Test
+    public void shouldStreamOneRowPerLineAsNewlineDelimitedJson() throws Exception {
+        String report = this.mockMvc.perform(get("/reports/sales")
+                .accept(OrderController.APPLICATION_NDJSON_VALUE)
+                .param("from", "1999-07-01T00:00:00")
+                .param("to", "1999-08-01T00:00:00")
+                .param("granularity", "month"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        Assert.assertEquals(2, report.trim().split("\n").length);
+    }
+
+    @Test
+    public void shouldRejectAnUnknownGranularityOrGroupingWithABadRequest() throws Exception {
+        this.mockMvc.perform(get("/reports/sales")
+                .param("from", "1999-07-01T00:00:00")
+                .param("to", "1999-07-02T00:00:00")
+                .param("granularity", "week"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("granularity must be hour, day or month, not week"));
+        this.mockMvc.perform(get("/reports/sales/rollups")
+                .param("from", "1999-07-01T00:00:00")
+                .param("to", "1999-07-02T00:00:00")
+                .param("groupBy", "buyer"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("groupBy must be product or currency, not buyer"));
+    }
+
+    @Test
+    public void shouldRejectAReportThatDoesNotEndAfterItStartsWithABadRequest() throws Exception {
+        for (String path : new String[]{"/reports/sales", "/reports/sales/rollups"}) {
+            this.mockMvc.perform(get(path)
+                    .param("from", "1999-07-02T00:00:00")
+                    .param("to", "1999-07-02T00:00:00"))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.error").value("from must be before to"));
+        }
+        this.mockMvc.perform(get("/reports/sales")
+                .accept(OrderController.APPLICATION_NDJSON_VALUE)
+                .param("from", "1999-07-02T00:00:00")
+                .param("to", "1999-07-01T00:00:00"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("from must be before to"));
+    }
+
+    @Test
+    public void shouldReportTodaysSalesFromTheRollupsWhetherOrNotTheyHaveBeenFlushed() throws Exception {
+        Product product = productRepository.save(new Product("Rollup Product"));
+        Price price = priceRepository.save(Price.createPrice(product, "3.25", "USD"));
+        for (int quantity = 1; quantity <= 2; quantity++) {
+            this.mockMvc.perform(post("/orders").contentType(APPLICATION_JSON).content("{\"buyersEmail\":\"rollup@buyer.com\",\"orderItems\":[" +
+                    "{\"price\":{\"id\":" + price.getId() + "},\"product\":{\"id\":" + product.getId() + "},\"quantity\":" + quantity + "}]}"))
+                    .andExpect(status().isOk());
+        }
+        expectTodaysRollup(product, 3, 9.75, 2);
+
+        salesRollups.flush();
+        expectTodaysRollup(product, 3, 9.75, 2);
+
+        Order unseenOrder = orderRepository.save(new Order(0L, LocalDateTime.now(), "unseen@buyer.com", new HashSet<>()));
+        orderItemRepository.save(new OrderItem(0L, price, product, 4, unseenOrder));
+        salesRollups.stop();
+        salesRollups.start();
+        expectTodaysRollup(product, 7, 22.75, 3);
+    }
+
+    private void expectTodaysRollup(Product product, int quantity, double revenue, int orders) throws Exception {
+        LocalDateTime today = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS);
+        String productRow = "$[?(@.productId == " + product.getId() + ")]";
+        this.mockMvc.perform(get("/reports/sales/rollups")
+                .param("from", today.format(DateTimeFormatter.ISO_DATE_TIME))
+                .param("to", today.plusDays(1).format(DateTimeFormatter.ISO_DATE_TIME))
+                .param("granularity", "day"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath(productRow + ".quantity").value(quantity))
+                .andExpect(jsonPath(productRow + ".revenue").value(revenue))
+                .andExpect(jsonPath(productRow + ".orders").value(orders))
+                .andExpect(jsonPath(productRow + ".currency").value("USD"));
+    }
+}
@@ -0,0 +1,35 @@
+package com.jasonrharris.converters;
+
+import com.jasonrharris.products.Money;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Currency;
+import java.util.List;
+
+public class MoneyListConverterTest {
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency JPY = Currency.getInstance("JPY");
+
+    private final MoneyListConverter converter = new MoneyListConverter();
+
+    @Test
+    public void shouldStoreEachAmountInMinorUnits() {
+        List<Money> totals = List.of(Money.ofMinorUnits(3050L, EUR), Money.ofMinorUnits(-1500L, JPY));
+
+        Assert.assertEquals("EUR:3050;JPY:-1500", converter.convertToDatabaseColumn(totals));
+        Assert.assertEquals(totals, converter.convertToEntityAttribute("EUR:3050;JPY:-1500"));
+    }
+
+    @Test
+    public void shouldStoreNoAmountsAsAnEmptyColumn() {
+        Assert.assertEquals("", converter.convertToDatabaseColumn(List.of()));
+        Assert.assertEquals(List.of(), converter.convertToEntityAttribute(""));
+        Assert.assertNull(converter.convertToEntityAttribute(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotReadAnAmountWithoutACurrency() {
+        converter.convertToEntityAttribute("3050");
+    }
+}
@@ -0,0 +1,91 @@
+package com.jasonrharris.orders;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Currency;
+
+public class OrderArchiveSegmentTest {
+    private static final LocalDateTime FROM = LocalDateTime.of(2019, 1, 1, 0, 0);
+    private static final LocalDateTime UNTIL = LocalDateTime.of(2019, 3, 1, 0, 0);
+    private static final Currency GBP = Currency.getInstance("GBP");
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReadBackEachColumnFromTheMappedFile() throws IOException {
+        OrderArchiveSegment segment = writeSegment();
+
+        Assert.assertEquals(3, segment.orderCount());
+        Assert.assertEquals(2, segment.getItems());
+        Assert.assertEquals("2019-01", segment.getFrom());
+        Assert.assertEquals("2019-03", segment.getUntil());
+        Assert.assertEquals(LocalDateTime.of(2019, 1, 5, 10, 30, 0, 123_456_000), segment.creationDateTime(0));
+        Assert.assertEquals(" Buyer@Customer.com", segment.buyersEmail(2));
+
+        Assert.assertEquals(0, segment.itemStart(0));
+        Assert.assertEquals(2, segment.itemEnd(0));
+        Assert.assertEquals(2, segment.itemStart(1));
+        Assert.assertEquals(2, segment.itemEnd(1));
+        Assert.assertEquals(22L, segment.priceId(1));
+        Assert.assertEquals(32L, segment.productId(1));
+        Assert.assertEquals(250L, segment.priceMinorUnits(1));
+        Assert.assertEquals(4, segment.quantity(1));
+        Assert.assertEquals(EUR, segment.currency(1));
+        Assert.assertEquals(GBP, segment.currency(0));
+    }
+
+    @Test
+    public void shouldFindTheFirstOrderAfterACreationDateTimeAndId() throws IOException {
+        OrderArchiveSegment segment = writeSegment();
+        long secondOrderEpochMicros = OrderArchiveSegment.toEpochMicros(LocalDateTime.of(2019, 2, 1, 9, 0));
+
+        Assert.assertEquals(0, segment.firstOrderAfter(Long.MIN_VALUE, Long.MAX_VALUE));
+        Assert.assertEquals(1, segment.firstOrderFrom(secondOrderEpochMicros));
+        Assert.assertEquals(2, segment.firstOrderAfter(secondOrderEpochMicros, 2L));
+        Assert.assertEquals(1, segment.firstOrderAfter(secondOrderEpochMicros, 1L));
+        Assert.assertEquals(3, segment.firstOrderAfter(secondOrderEpochMicros, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldMatchABuyersOrdersIgnoringCaseAndSurroundingSpaces() throws IOException {
+        OrderArchiveSegment segment = writeSegment();
+
+        boolean[] buyerCodes = segment.buyerCodesOf("buyer@customer.com");
+
+        Assert.assertTrue(buyerCodes[segment.buyerCode(0)]);
+        Assert.assertFalse(buyerCodes[segment.buyerCode(1)]);
+        Assert.assertTrue(buyerCodes[segment.buyerCode(2)]);
+        Assert.assertNull(segment.buyerCodesOf("nobody@customer.com"));
+    }
+
+    @Test
+    public void shouldReopenAnExistingSegmentFile() throws IOException {
+        OrderArchiveSegment written = writeSegment();
+
+        OrderArchiveSegment reopened = OrderArchiveSegment.open(written.path());
+
+        Assert.assertEquals(written.getBytes(), reopened.getBytes());
+        Assert.assertEquals(3L, reopened.orderId(2));
+        Assert.assertFalse(Files.exists(written.path().resolveSibling(written.path().getFileName() + ".tmp")));
+    }
+
+    private OrderArchiveSegment writeSegment() throws IOException {
+        OrderArchiveSegment.Builder columns = new OrderArchiveSegment.Builder();
+        columns.addOrder(1L, LocalDateTime.of(2019, 1, 5, 10, 30, 0, 123_456_000), "buyer@customer.com");
+        columns.addItem(10L, 21L, 31L, 1999L, 2, GBP);
+        columns.addItem(11L, 22L, 32L, 250L, 4, EUR);
+        columns.addOrder(2L, LocalDateTime.of(2019, 2, 1, 9, 0), "other@customer.com");
+        columns.addOrder(3L, LocalDateTime.of(2019, 2, 1, 9, 0), " Buyer@Customer.com");
+        Path path = folder.getRoot().toPath().resolve("orders.segment");
+        return OrderArchiveSegment.write(path, FROM, UNTIL, columns);
+    }
+}
@@ -0,0 +1,52 @@
+package com.jasonrharris.orders;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+public class OrderCsvExportTest {
+
+    @Test
+    public void shouldWriteAmountsWithTheCurrencysFractionDigits() {
+        Assert.assertEquals("19.99,-0.05,1000,0.500", write(csv -> csv.writeAmount(1999, 2).comma().writeAmount(-5, 2).comma()
+                .writeAmount(1000, 0).comma().writeAmount(500, 3)));
+    }
+
+    @Test
+    public void shouldWriteDateTimesAsIsoWithMicrosecondsOnlyWhenThereAreAny() {
+        Assert.assertEquals("2019-01-05T10:30:00,2019-01-05T10:30:00.123456", write(csv -> csv.writeDateTime(LocalDateTime.of(2019, 1, 5, 10, 30)).comma()
+                .writeDateTime(LocalDateTime.of(2019, 1, 5, 10, 30, 0, 123_456_000))));
+    }
+
+    @Test
+    public void shouldQuoteTextOnlyWhenItNeedsItAndEncodeItAsUtf8() {
+        Assert.assertEquals("plain,\"a, \"\"quoted\"\" one\",Café €5 😀,", write(csv -> csv.writeText("plain").comma()
+                .writeText("a, \"quoted\" one").comma().writeText("Café €5 😀").comma().writeText(null)));
+    }
+
+    @Test
+    public void shouldWriteMoreLinesThanFitInTheBuffer() {
+        String written = write(csv -> {
+            for (long line = 0; line < 100_000; line++) {
+                csv.writeLong(line - 50_000).endLine();
+            }
+        });
+
+        String[] lines = written.split("\n");
+        Assert.assertEquals(100_000, lines.length);
+        Assert.assertEquals("-50000", lines[0]);
+        Assert.assertEquals("49999", lines[lines.length - 1]);
+    }
+
+    private static String write(Consumer<OrderCsvExport.CsvWriter> writing) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OrderCsvExport.CsvWriter csv = new OrderCsvExport.CsvWriter(outputStream);
+        writing.accept(csv);
+        csv.flush();
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
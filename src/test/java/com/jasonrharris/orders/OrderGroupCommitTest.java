@@ -0,0 +1,87 @@
+package com.jasonrharris.orders;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.jasonrharris.orders.OrderRowsFixture.order;
+
+public class OrderGroupCommitTest {
+    private OrderRowsFixture database;
+    private OrderGroupCommit orderGroupCommit;
+
+    @Before
+    public void setUp() {
+        database = new OrderRowsFixture();
+        orderGroupCommit = new OrderGroupCommit(database.jdbcTemplate, database.transactionTemplate, database.orderIds(), database.orderItemIds(),
+                10, Duration.ZERO, database.orderWrittenListeners());
+    }
+
+    @After
+    public void tearDown() {
+        database.makeDatabaseAvailable();
+        orderGroupCommit.stop();
+    }
+
+    @Test
+    public void shouldCommitTheOrdersThatArriveDuringACommitTogether() {
+        orderGroupCommit.start();
+        CompletableFuture<Order> first = orderGroupCommit.submit(order("first@buyer.com")).orElseThrow();
+        List<CompletableFuture<Order>> waiting = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiting.add(orderGroupCommit.submit(order("waiting@buyer.com")).orElseThrow());
+        }
+        database.makeDatabaseAvailable();
+
+        Order firstOrder = first.join();
+        waiting.forEach(CompletableFuture::join);
+
+        Assert.assertEquals(1L, firstOrder.getId());
+        Assert.assertEquals(1, firstOrder.getOrderItems().size());
+        Assert.assertEquals(0, new BigDecimal("10.00").compareTo(firstOrder.getTotalAmount()));
+        Assert.assertEquals(4, database.insertedOrders.size());
+        Assert.assertTrue("the orders were committed in " + database.transactions.get() + " transactions", database.transactions.get() <= 2);
+        Assert.assertEquals(4, database.writtenOrders.size());
+    }
+
+    @Test
+    public void shouldCommitTheOtherOrdersOfAGroupWhenOneBreaksAConstraint() {
+        database.breakConstraintWithOrderItem(2L);
+        orderGroupCommit.start();
+        CompletableFuture<Order> good = orderGroupCommit.submit(order("good@buyer.com")).orElseThrow();
+        CompletableFuture<Order> bad = orderGroupCommit.submit(order("bad@buyer.com")).orElseThrow();
+        CompletableFuture<Order> alsoGood = orderGroupCommit.submit(order("good@buyer.com")).orElseThrow();
+        database.makeDatabaseAvailable();
+
+        Assert.assertEquals(1L, good.join().getId());
+        Assert.assertEquals(3L, alsoGood.join().getId());
+        try {
+            bad.join();
+            Assert.fail("The order breaking a constraint was committed");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof DataIntegrityViolationException);
+        }
+        Assert.assertEquals(2, database.writtenOrders.size());
+    }
+
+    @Test
+    public void shouldCommitAcceptedOrdersOnStopAndRefuseLaterOnes() {
+        orderGroupCommit.start();
+        CompletableFuture<Order> accepted = orderGroupCommit.submit(order("accepted@buyer.com")).orElseThrow();
+        database.makeDatabaseAvailable();
+        orderGroupCommit.stop();
+
+        Assert.assertTrue(accepted.isDone());
+        Assert.assertEquals("accepted@buyer.com", accepted.join().getBuyersEmail());
+        Assert.assertTrue(orderGroupCommit.submit(order("late@buyer.com")).isEmpty());
+    }
+}
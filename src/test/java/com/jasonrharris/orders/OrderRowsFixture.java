@@ -0,0 +1,85 @@
+package com.jasonrharris.orders;
+
+import com.jasonrharris.products.Price;
+import com.jasonrharris.products.Product;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The mocked database that {@link OrderWriteBehind} and {@link OrderGroupCommit} insert {@link OrderRows} into. Transactions wait
+ * until the database is made available, and the Order rows inserted and the Orders passed to the listener are recorded.
+ */
+class OrderRowsFixture {
+    final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    final AtomicInteger transactions = new AtomicInteger();
+    final List<Object[]> insertedOrders = Collections.synchronizedList(new ArrayList<>());
+    final List<LocalDateTime> writtenOrders = Collections.synchronizedList(new ArrayList<>());
+    private final DataFieldMaxValueIncrementer orderSequence = mock(DataFieldMaxValueIncrementer.class);
+    private final DataFieldMaxValueIncrementer orderItemSequence = mock(DataFieldMaxValueIncrementer.class);
+    private final CountDownLatch databaseAvailable = new CountDownLatch(1);
+
+    @SuppressWarnings("unchecked")
+    OrderRowsFixture() {
+        when(orderSequence.nextLongValue()).thenReturn(1L, 51L);
+        when(orderItemSequence.nextLongValue()).thenReturn(1L, 51L);
+        doAnswer(invocation -> {
+            databaseAvailable.await();
+            transactions.incrementAndGet();
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(jdbcTemplate.batchUpdate(eq(OrderRows.INSERT_ORDER), anyList())).thenAnswer(invocation -> {
+            insertedOrders.addAll(invocation.<List<Object[]>>getArgument(1));
+            return new int[0];
+        });
+    }
+
+    SequenceIdAllocator orderIds() {
+        return new SequenceIdAllocator(orderSequence, 50);
+    }
+
+    SequenceIdAllocator orderItemIds() {
+        return new SequenceIdAllocator(orderItemSequence, 50);
+    }
+
+    List<OrderWrittenListener> orderWrittenListeners() {
+        return List.of((creationDateTime, orderItems) -> writtenOrders.add(creationDateTime));
+    }
+
+    void makeDatabaseAvailable() {
+        databaseAvailable.countDown();
+    }
+
+    /**
+     * Fails any batch of Order Items that includes the item with this id, as an item referring to a deleted Product would
+     */
+    @SuppressWarnings("unchecked")
+    void breakConstraintWithOrderItem(long orderItemId) {
+        when(jdbcTemplate.batchUpdate(eq(OrderRows.INSERT_ORDER_ITEM), anyList())).thenAnswer(invocation -> {
+            if (invocation.<List<Object[]>>getArgument(1).stream().anyMatch(item -> item[0].equals(orderItemId))) {
+                throw new DataIntegrityViolationException("Referential integrity constraint violation");
+            }
+            return new int[0];
+        });
+    }
+
+    static Order order(String buyersEmail) {
+        Product product = new Product(1L, "Test Product", null);
+        Order order = new Order(0L, null, buyersEmail, new HashSet<>());
+        order.getOrderItems().add(new OrderItem(Price.createPrice(product, "10.00", "GBP"), product, 1, order));
+        return order;
+    }
+}
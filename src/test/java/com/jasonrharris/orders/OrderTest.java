@@ -1,5 +1,6 @@
 package com.jasonrharris.orders;
 
+import com.jasonrharris.products.Money;
 import com.jasonrharris.products.Price;
 import org.junit.Assert;
 import org.junit.Test;
@@ -8,6 +9,7 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Currency;
 import java.util.Date;
 import java.util.HashSet;
 
@@ -22,4 +24,42 @@ public class OrderTest {
 
         Assert.assertEquals(order.getTotalAmount(),new BigDecimal("71.50"));
     }
+
+    @Test
+    public void shouldTotalEachCurrencySeparatelyWhenItemsAreInMoreThanOneCurrency() {
+        OrderItem orderItem = new OrderItem(1L, Price.createPrice(null, "20.50", "GBP"), null, 2, null);
+        OrderItem orderItem2 = new OrderItem(2L, Price.createPrice(null, "30.50", "EUR"), null, 1, null);
+        OrderItem orderItem3 = new OrderItem(3L, Price.createPrice(null, "1.25", "GBP"), null, 4, null);
+        Order order = new Order(1L, LocalDateTime.now(), "buyer@gamil.com",
+                new HashSet<>(Arrays.asList(orderItem, orderItem2, orderItem3)));
+
+        Assert.assertNull(order.getTotalAmount());
+        Assert.assertEquals(Arrays.asList(Money.of(new BigDecimal("30.50"), Currency.getInstance("EUR")), Money.of(new BigDecimal("46.00"), Currency.getInstance("GBP"))),
+                order.getTotals());
+    }
+
+    @Test
+    public void shouldHaveAZeroTotalAmountWithNoItems() {
+        Order order = new Order(1L, LocalDateTime.now(), "buyer@gamil.com", new HashSet<>());
+
+        Assert.assertEquals(BigDecimal.ZERO, order.getTotalAmount());
+        Assert.assertTrue(order.getTotals().isEmpty());
+    }
+
+    @Test
+    public void shouldTotalNewItemsThatAreNotYetInTheOrder() {
+        Order order = new Order(0L, LocalDateTime.now(), "buyer@gamil.com", new HashSet<>());
+        OrderItem orderItem = new OrderItem(Price.createPrice(null, "20.50", "GBP"), null, 1, order);
+        OrderItem sameOrderItem = new OrderItem(Price.createPrice(null, "20.50", "GBP"), null, 1, order);
+
+        order.updateTotalAmount(Arrays.asList(orderItem, sameOrderItem));
+
+        Assert.assertEquals(new BigDecimal("41.00"), order.getTotalAmount());
+    }
+
+    @Test
+    public void shouldKeyTheBuyerIgnoringCaseAndSurroundingSpaces() {
+        Assert.assertEquals(Order.buyerKeyOf("buyer@gamil.com"), Order.buyerKeyOf(" Buyer@Gamil.com "));
+        Assert.assertNotEquals(Order.buyerKeyOf("buyer@gamil.com"), Order.buyerKeyOf("buyer2@gamil.com"));
+    }
 }
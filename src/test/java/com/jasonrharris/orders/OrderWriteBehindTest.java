@@ -0,0 +1,100 @@
+package com.jasonrharris.orders;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.jasonrharris.orders.OrderRowsFixture.order;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class OrderWriteBehindTest {
+    private static final int QUEUE_CAPACITY = 3;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private OrderRowsFixture database;
+    private OrderWriteBehind orderWriteBehind;
+
+    @Before
+    public void setUp() {
+        database = new OrderRowsFixture();
+        orderWriteBehind = new OrderWriteBehind(database.jdbcTemplate, database.transactionTemplate, database.orderIds(), database.orderItemIds(),
+                QUEUE_CAPACITY, 10, Duration.ofMillis(10), MAX_ATTEMPTS, database.orderWrittenListeners());
+    }
+
+    @After
+    public void tearDown() {
+        database.makeDatabaseAvailable();
+        orderWriteBehind.stop();
+    }
+
+    @Test
+    public void shouldRefuseOrdersWhenTheQueueIsFullAndWriteAllAcceptedOrdersOnStop() throws Exception {
+        orderWriteBehind.start();
+
+        OrderStatus first = orderWriteBehind.submit(order("first@buyer.com")).orElseThrow();
+        while (orderWriteBehind.getQueuedCount() > 0) {
+            Thread.sleep(10); // the writer has taken the first order and is waiting for the database
+        }
+        List<Long> acceptedIds = new ArrayList<>(List.of(first.getOrderId()));
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            acceptedIds.add(orderWriteBehind.submit(order("queued@buyer.com")).orElseThrow().getOrderId());
+        }
+
+        Assert.assertTrue(orderWriteBehind.submit(order("refused@buyer.com")).isEmpty());
+        Assert.assertEquals(List.of(1L, 2L, 3L, 4L), acceptedIds);
+        Assert.assertEquals(OrderStatus.Status.QUEUED, orderWriteBehind.getStatus(4L).orElseThrow().getStatus());
+
+        database.makeDatabaseAvailable();
+        orderWriteBehind.stop();
+
+        Assert.assertEquals(QUEUE_CAPACITY + 1, database.insertedOrders.size());
+        Assert.assertTrue(orderWriteBehind.getStatus(4L).isEmpty());
+        Assert.assertTrue(orderWriteBehind.submit(order("late@buyer.com")).isEmpty());
+    }
+
+    @Test
+    public void shouldReportTheOrderThatBreaksAConstraintAsFailed() {
+        database.breakConstraintWithOrderItem(2L);
+        orderWriteBehind.start();
+        orderWriteBehind.submit(order("good@buyer.com"));
+        orderWriteBehind.submit(order("bad@buyer.com"));
+        orderWriteBehind.submit(order("good@buyer.com"));
+        database.makeDatabaseAvailable();
+        orderWriteBehind.stop();
+
+        Assert.assertEquals(OrderStatus.Status.FAILED, orderWriteBehind.getStatus(2L).orElseThrow().getStatus());
+        Assert.assertTrue(orderWriteBehind.getStatus(1L).isEmpty());
+        Assert.assertTrue(orderWriteBehind.getStatus(3L).isEmpty());
+    }
+
+    @Test
+    public void shouldFailTheOrdersOfAGroupThatCannotBeWrittenInMaxAttempts() {
+        when(database.jdbcTemplate.batchUpdate(eq(OrderRows.INSERT_ORDER), anyList())).thenThrow(new DataAccessResourceFailureException("Database unavailable"));
+        orderWriteBehind.start();
+        long orderId = orderWriteBehind.submit(order("unwritten@buyer.com")).orElseThrow().getOrderId();
+        database.makeDatabaseAvailable();
+        orderWriteBehind.stop();
+
+        Assert.assertEquals(MAX_ATTEMPTS, database.transactions.get());
+        Assert.assertEquals(OrderStatus.Status.FAILED, orderWriteBehind.getStatus(orderId).orElseThrow().getStatus());
+        Assert.assertTrue(database.writtenOrders.isEmpty());
+    }
+
+    @Test
+    public void shouldWriteTheOrdersTotalsWithIt() {
+        orderWriteBehind.start();
+        orderWriteBehind.submit(order("totals@buyer.com"));
+        database.makeDatabaseAvailable();
+        orderWriteBehind.stop();
+
+        Assert.assertEquals("GBP:1000", database.insertedOrders.get(0)[3]);
+        Assert.assertEquals(1, database.writtenOrders.size());
+    }
+}
@@ -0,0 +1,95 @@
+package com.jasonrharris.products;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class CatalogLoaderTest {
+    private static final LocalDateTime LOAD_DATE_TIME = LocalDateTime.of(2019, 10, 1, 12, 0);
+
+    @Test
+    public void shouldSplitQuotedFieldsWithCommasAndDoubledQuotes() {
+        Assert.assertEquals(Arrays.asList("Mug, \"Large\"", "3.05", "", "x"), CatalogLoader.splitCsvLine("\"Mug, \"\"Large\"\"\",3.05,,x"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAQuotedFieldThatIsNotClosed() {
+        CatalogLoader.splitCsvLine("\"Mug,3.05,GBP,");
+    }
+
+    @Test
+    public void shouldParseAProductWithItsPriceHistoryFromACsvLine() {
+        CatalogLoader.LoadedProduct product = CatalogLoader.parseCsvLine("Nike Revolution,47.95,GBP,2019-09-17T18:47:52,45.95,GBP,", LOAD_DATE_TIME);
+
+        Assert.assertEquals("Nike Revolution", product.name);
+        Assert.assertEquals(2, product.prices.size());
+        Assert.assertEquals(new BigDecimal("47.95"), product.prices.get(0).amount);
+        Assert.assertEquals(Currency.getInstance("GBP"), product.prices.get(0).currency);
+        Assert.assertEquals(LocalDateTime.of(2019, 9, 17, 18, 47, 52), product.prices.get(0).creationDateTime);
+        Assert.assertEquals(LOAD_DATE_TIME, product.prices.get(1).creationDateTime);
+        Assert.assertSame(product.prices.get(1), product.newestPrice());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectAPriceWithoutACurrency() {
+        CatalogLoader.parseCsvLine("Nike Revolution,47.95", LOAD_DATE_TIME);
+    }
+
+    @Test
+    public void shouldTakeTheLastListedOfTheNewestPricesAsTheCurrentPrice() {
+        CatalogLoader.LoadedProduct product = CatalogLoader.parseCsvLine("Reebok,2.00,GBP,2019-09-18T10:00,1.00,GBP,2019-09-17T10:00,3.00,GBP,2019-09-18T10:00", LOAD_DATE_TIME);
+
+        Assert.assertEquals(new BigDecimal("3.00"), product.newestPrice().amount);
+    }
+
+    @Test
+    public void shouldWaitForTheChunksAlreadyHandedOutWhenReadingFails() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any())).thenReturn(List.of(1L));
+        AtomicBoolean committed = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        doAnswer(invocation -> {
+            try {
+                Thread.sleep(200);
+                committed.set(true);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        CatalogLoader catalogLoader = new CatalogLoader(jdbcTemplate, transactionTemplate, new ObjectMapper(), mock(Catalog.class),
+                mock(ProductSearch.class), mock(PriceManagement.class), 1, 1, "");
+        InputStream failingInput = new SequenceInputStream(new ByteArrayInputStream("Mug,3.05,GBP,\n".getBytes(StandardCharsets.UTF_8)), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("The connection was reset");
+            }
+        });
+
+        try {
+            catalogLoader.load(failingInput, CatalogLoader.Format.CSV);
+            Assert.fail("The load did not fail with its input");
+        } catch (IOException e) {
+            Assert.assertTrue("The chunk was not committed before the load failed", committed.get());
+            Assert.assertFalse(interrupted.get());
+        }
+    }
+}
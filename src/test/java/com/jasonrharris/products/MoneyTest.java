@@ -0,0 +1,48 @@
+package com.jasonrharris.products;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+public class MoneyTest {
+    private static final Currency GBP = Currency.getInstance("GBP");
+    private static final Currency JPY = Currency.getInstance("JPY");
+
+    @Test
+    public void shouldHoldAmountsInMinorUnits() {
+        Assert.assertEquals(2050L, Money.of(new BigDecimal("20.50"), GBP).getMinorUnits());
+        Assert.assertEquals(2050L, Money.of(new BigDecimal("20.5"), GBP).getMinorUnits());
+        Assert.assertEquals(1500L, Money.of(new BigDecimal("1500"), JPY).getMinorUnits());
+    }
+
+    @Test
+    public void shouldRoundFractionsOfAMinorUnitHalfUp() {
+        Assert.assertEquals(2051L, Money.of(new BigDecimal("20.505"), GBP).getMinorUnits());
+        Assert.assertEquals(2050L, Money.of(new BigDecimal("20.504"), GBP).getMinorUnits());
+    }
+
+    @Test
+    public void shouldGiveTheAmountAtTheCurrencysScale() {
+        Assert.assertEquals(new BigDecimal("71.50"), Money.ofMinorUnits(7150L, GBP).getAmount());
+        Assert.assertEquals(new BigDecimal("7150"), Money.ofMinorUnits(7150L, JPY).getAmount());
+    }
+
+    @Test
+    public void shouldAddAndMultiply() {
+        Money price = Money.of(new BigDecimal("20.50"), GBP);
+
+        Assert.assertEquals(Money.of(new BigDecimal("71.50"), GBP), price.times(2).plus(Money.of(new BigDecimal("30.50"), GBP)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAddDifferentCurrencies() {
+        Money.of(BigDecimal.ONE, GBP).plus(Money.of(BigDecimal.ONE, JPY));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void shouldNotOverflow() {
+        Money.ofMinorUnits(Long.MAX_VALUE / 2 + 1, GBP).times(2);
+    }
+}
@@ -1,24 +1,32 @@
 package com.jasonrharris.products;
 
 import com.jasonrharris.repositories.PriceRepository;
+import com.jasonrharris.repositories.ProductRepository;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
 import static org.mockito.Mockito.*;
 
 public class PriceManagementTest {
     @Mock
     private PriceRepository priceRepository;
+    @Mock
+    private ProductRepository productRepository;
 
     private PriceManagement priceManagement;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        priceManagement = new PriceManagement(priceRepository);
+        priceManagement = new PriceManagement(priceRepository, productRepository, 100, Duration.ofMinutes(10));
     }
 
     @Test
@@ -63,4 +71,121 @@ public class PriceManagementTest {
         when(priceRepository.save(newPrice)).thenReturn(newPrice);
         Assert.assertEquals(newPrice, priceManagement.saveNewProductPrice(originalProduct).orElseThrow());
     }
+
+    @Test
+    public void shouldMoveTheCurrentPricePointerWhenSavingAPrice() {
+        Product originalProduct = new Product(7L, "Test Prod", null);
+        Price newPrice = Price.createPrice(originalProduct, "20.20", "GBP");
+        Product updatedProduct = new Product(7L, originalProduct.getName(), newPrice);
+
+        when(priceRepository.save(newPrice)).thenReturn(newPrice);
+        priceManagement.getExistingOrSaveUpdatedPrice(updatedProduct, originalProduct);
+
+        verify(productRepository).updateCurrentPriceIfNewer(7L, newPrice.getId());
+    }
+
+    @Test
+    public void shouldNotMoveTheCurrentPricePointerWhenThePriceIsUnchanged() {
+        Product originalProduct = new Product(7L, "Test Prod", null);
+        Price originalPrice = Price.createPrice(originalProduct, "20.20", "GBP");
+        originalProduct = new Product(7L, originalProduct.getName(), originalPrice);
+        Product updatedProduct = new Product(7L, originalProduct.getName(), Price.createPrice(originalProduct, "20.20", "GBP"));
+
+        Assert.assertEquals(originalPrice, priceManagement.getExistingOrSaveUpdatedPrice(updatedProduct, originalProduct));
+
+        verify(productRepository, never()).updateCurrentPriceIfNewer(anyLong(), anyLong());
+    }
+
+    @Test
+    public void shouldOnlyLookUpPricesThatAreNotCached() {
+        Product product = new Product(7L, "Test Prod", null);
+        Price price = Price.createPrice(product, "20.20", "GBP");
+
+        when(priceRepository.findAllById(List.of(price.getId()))).thenReturn(List.of(price));
+
+        Assert.assertEquals(Map.of(price.getId(), price), priceManagement.getPricesById(List.of(price.getId())));
+        Assert.assertEquals(Map.of(price.getId(), price), priceManagement.getPricesById(List.of(price.getId())));
+
+        verify(priceRepository, times(1)).findAllById(any());
+        Assert.assertEquals(1, priceManagement.getPricesByIdCacheStats().hitCount());
+        Assert.assertEquals(1, priceManagement.getPricesByIdCacheStats().missCount());
+    }
+
+    @Test
+    public void shouldWriteSavedPricesThroughToTheCaches() {
+        Product originalProduct = new Product(7L, "Test Prod", null);
+        Price newPrice = Price.createPrice(originalProduct, "20.20", "GBP");
+
+        when(priceRepository.save(newPrice)).thenReturn(newPrice);
+        when(productRepository.updateCurrentPriceIfNewer(7L, newPrice.getId())).thenReturn(1);
+        priceManagement.saveNewProductPrice(new Product(7L, originalProduct.getName(), newPrice));
+
+        Assert.assertEquals(newPrice, priceManagement.getCurrentPrice(7L).orElseThrow());
+        Assert.assertEquals(newPrice, priceManagement.getPricesById(List.of(newPrice.getId())).get(newPrice.getId()));
+        verify(priceRepository, never()).findTopByProductIdOrderByCreationDateTimeDesc(anyLong());
+        verify(priceRepository, never()).findAllById(any());
+    }
+
+    @Test
+    public void shouldNotCacheAnOlderPriceAsTheCurrentPrice() {
+        Product originalProduct = new Product(7L, "Test Prod", null);
+        Price olderPrice = Price.createPrice(originalProduct, "20.20", "GBP");
+        Price newestPrice = Price.createPrice(originalProduct, "25.20", "GBP");
+
+        when(priceRepository.save(olderPrice)).thenReturn(olderPrice);
+        when(productRepository.updateCurrentPriceIfNewer(7L, olderPrice.getId())).thenReturn(0);
+        when(priceRepository.findTopByProductIdOrderByCreationDateTimeDesc(7L)).thenReturn(newestPrice);
+        priceManagement.saveNewProductPrice(new Product(7L, originalProduct.getName(), olderPrice));
+
+        Assert.assertSame(newestPrice, priceManagement.getCurrentPrice(7L).orElseThrow());
+    }
+
+    @Test
+    public void shouldFindThePriceInEffectAtAGivenTimeFromTheCachedHistory() throws InterruptedException {
+        Product product = new Product(7L, "Test Prod", null);
+        Price olderPrice = Price.createPrice(product, "20.20", "GBP");
+        Thread.sleep(1);
+        Price newerPrice = Price.createPrice(product, "25.20", "GBP");
+
+        when(priceRepository.findAllByProductIdOrderByCreationDateTime(7L)).thenReturn(List.of(olderPrice, newerPrice));
+
+        Assert.assertTrue(priceManagement.getPriceAt(7L, olderPrice.getCreationDateTime().minusNanos(1000)).isEmpty());
+        Assert.assertSame(olderPrice, priceManagement.getPriceAt(7L, olderPrice.getCreationDateTime()).orElseThrow());
+        Assert.assertSame(olderPrice, priceManagement.getPriceAt(7L, newerPrice.getCreationDateTime().minusNanos(1000)).orElseThrow());
+        Assert.assertSame(newerPrice, priceManagement.getPriceAt(7L, LocalDateTime.now()).orElseThrow());
+
+        verify(priceRepository, times(1)).findAllByProductIdOrderByCreationDateTime(7L);
+    }
+
+    @Test
+    public void shouldAddSavedPricesToACachedPriceHistory() throws InterruptedException {
+        Product product = new Product(7L, "Test Prod", null);
+        Price olderPrice = Price.createPrice(product, "20.20", "GBP");
+        when(priceRepository.findAllByProductIdOrderByCreationDateTime(7L)).thenReturn(List.of(olderPrice));
+        Assert.assertSame(olderPrice, priceManagement.getPriceAt(7L, LocalDateTime.now()).orElseThrow());
+
+        Thread.sleep(1);
+        Price newerPrice = Price.createPrice(product, "25.20", "GBP");
+        when(priceRepository.save(newerPrice)).thenReturn(newerPrice);
+        priceManagement.saveNewProductPrice(new Product(7L, product.getName(), newerPrice));
+
+        Assert.assertSame(newerPrice, priceManagement.getPriceAt(7L, LocalDateTime.now()).orElseThrow());
+        Assert.assertSame(olderPrice, priceManagement.getPriceAt(7L, olderPrice.getCreationDateTime()).orElseThrow());
+        verify(priceRepository, times(1)).findAllByProductIdOrderByCreationDateTime(7L);
+    }
+
+    @Test
+    public void shouldLookUpThePricesOfProductsItHasBeenToldToForget() {
+        Product product = new Product(7L, "Test Prod", null);
+        Assert.assertTrue(priceManagement.getPriceAt(7L, LocalDateTime.now()).isEmpty());
+
+        Price loadedPrice = Price.createPrice(product, "20.20", "GBP");
+        when(priceRepository.findAllByProductIdOrderByCreationDateTime(7L)).thenReturn(List.of(loadedPrice));
+        when(priceRepository.findTopByProductIdOrderByCreationDateTimeDesc(7L)).thenReturn(loadedPrice);
+        priceManagement.forgetPricesOf(List.of(7L));
+
+        Assert.assertSame(loadedPrice, priceManagement.getPriceAt(7L, LocalDateTime.now()).orElseThrow());
+        Assert.assertSame(loadedPrice, priceManagement.getCurrentPrice(7L).orElseThrow());
+        verify(priceRepository, times(2)).findAllByProductIdOrderByCreationDateTime(7L);
+    }
 }
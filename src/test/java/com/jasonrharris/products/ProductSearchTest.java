@@ -0,0 +1,55 @@
+package com.jasonrharris.products;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ProductSearchTest {
+    private ProductSearch productSearch;
+
+    @Before
+    public void setUp() {
+        productSearch = new ProductSearch(null);
+        productSearch.indexAll(new long[]{1L, 2L, 3L, 4L, 5L},
+                new String[]{"Nike Revolution", "Reebok Club C 85 Vintage", "Nike Air Max", "Vintage Nike Cortez", "Red Running Shoe"});
+    }
+
+    @Test
+    public void shouldFindNamesStartingWithTheQueryFirst() {
+        Assert.assertEquals(List.of(3L, 1L, 4L), ids(productSearch.search("nik", 10)));
+    }
+
+    @Test
+    public void shouldMatchEveryWordOfTheQueryAsAPrefixOfAWordInTheName() {
+        Assert.assertEquals(List.of(4L, 2L), ids(productSearch.search("VINT", 10)));
+        Assert.assertEquals(List.of(4L), ids(productSearch.search("nike vint", 10)));
+        Assert.assertEquals(List.of(5L), ids(productSearch.search("sho, run", 10)));
+        Assert.assertEquals(List.of(), ids(productSearch.search("nike club", 10)));
+    }
+
+    @Test
+    public void shouldReturnNoMoreThanTheLimit() {
+        Assert.assertEquals(List.of(3L, 1L), ids(productSearch.search("nike", 2)));
+    }
+
+    @Test
+    public void shouldReindexARenamedProduct() {
+        productSearch.index(1L, "Adidas Samba");
+
+        Assert.assertEquals(List.of(3L, 4L), ids(productSearch.search("nike", 10)));
+        Assert.assertEquals(List.of(1L), ids(productSearch.search("samba", 10)));
+        Assert.assertEquals(5, productSearch.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotSearchWithoutALetterOrDigit() {
+        productSearch.search(" - ", 10);
+    }
+
+    private static List<Long> ids(List<ProductMatch> matches) {
+        return matches.stream().map(ProductMatch::getId).collect(Collectors.toList());
+    }
+}